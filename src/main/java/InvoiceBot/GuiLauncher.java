@@ -1,14 +1,30 @@
 package InvoiceBot;
 
+import InvoiceBot.batch.BatchProcessor;
 import InvoiceBot.gui.InvoiceBotGui;
+import InvoiceBot.llm.AdaptiveConcurrencyLimiter;
 import InvoiceBot.llm.LlmClient;
 import InvoiceBot.llm.LlmExtractor;
+import InvoiceBot.llm.LlmResponseCache;
 import InvoiceBot.llm.LlmResponseParser;
+import InvoiceBot.llm.RelevanceWindow;
+import InvoiceBot.llm.TokenEstimator;
+import InvoiceBot.parser.EscalationPredictor;
 import InvoiceBot.parser.InvoiceParser;
+import InvoiceBot.parser.PdfMemoryBudget;
+import InvoiceBot.parser.PdfTextCache;
+import InvoiceBot.parser.RuleBasedExtractor;
+import InvoiceBot.parser.TextCompactor;
+import InvoiceBot.parser.VendorTemplateStore;
+import InvoiceBot.validation.LineItemCalculator;
+import InvoiceBot.validation.TrustScoreCalculator;
 
 import javax.swing.*;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Properties;
 
 
 
@@ -47,14 +63,51 @@ public class GuiLauncher {
         });
         
         // Manuelle Dependency-Initialisierung (ohne Spring Boot)
-        // LlmClient erwartet baseUrl und modelName als Parameter (siehe Konstruktor)
-        String baseUrl = "http://127.0.0.1:1234";
-        String modelName = "meta-llama-3.1-8b-instruct";
+        // LlmClient erwartet baseUrl (ein oder mehrere Server, kommagetrennt) und modelName - aus application.properties
+        Properties config = loadConfig();
+        String baseUrl = config.getProperty("llm.base-url", "http://127.0.0.1:1234");
+        String modelName = config.getProperty("llm.model", "meta-llama-3.1-8b-instruct");
         
         LlmClient llmClient = new LlmClient(baseUrl, modelName);
+        llmClient.setConcurrencyLimiter(new AdaptiveConcurrencyLimiter(
+            Integer.parseInt(config.getProperty("llm.limiter.initial", "2")),
+            Integer.parseInt(config.getProperty("llm.limiter.min", "1")),
+            Integer.parseInt(config.getProperty("llm.limiter.max", "16"))));
+        llmClient.setResponseCache(new LlmResponseCache(
+            resolveUserHome(config.getProperty("llm.cache.dir", "${user.home}/.invoicebot/llm-cache")),
+            Long.parseLong(config.getProperty("llm.cache.max-bytes", "268435456"))));
+        llmClient.setStreamingEnabled(Boolean.parseBoolean(config.getProperty("llm.streaming", "false")));
+        llmClient.setStructuredOutputEnabled(Boolean.parseBoolean(config.getProperty("llm.structured-output", "false")));
+        llmClient.setPromptCacheEnabled(Boolean.parseBoolean(config.getProperty("llm.cache-prompt", "false")));
+        llmClient.setFastModel(config.getProperty("llm.model.fast", ""));
+        llmClient.setEscalationModel(config.getProperty("llm.model.escalation", ""));
         LlmResponseParser responseParser = new LlmResponseParser();
-        LlmExtractor extractor = new LlmExtractor(llmClient);
-        InvoiceParser parser = new InvoiceParser(extractor, responseParser, null);
+        TokenEstimator tokenEstimator = new TokenEstimator(Double.parseDouble(config.getProperty("llm.chars-per-token", "3.5")));
+        RelevanceWindow relevanceWindow = new RelevanceWindow(tokenEstimator,
+            Integer.parseInt(config.getProperty("llm.text-budget-tokens", "600")));
+        relevanceWindow.setModelBudgets(config.getProperty("llm.text-budget-tokens.per-model", ""));
+        LlmExtractor extractor = new LlmExtractor(llmClient, relevanceWindow);
+        TrustScoreCalculator trustScoreCalculator = new TrustScoreCalculator();
+        InvoiceParser parser = new InvoiceParser(extractor, responseParser, trustScoreCalculator);
+        parser.setRuleBasedExtractor(new RuleBasedExtractor());
+        parser.setTemplateStore(new VendorTemplateStore(
+            resolveUserHome(config.getProperty("templates.file", "${user.home}/.invoicebot/vendor-templates.json"))));
+        parser.setLineItemCalculator(new LineItemCalculator());
+        parser.setCombinedValidation(Boolean.parseBoolean(config.getProperty("llm.combined-validation", "false")));
+        parser.setEscalationPredictor(new EscalationPredictor());
+        parser.setSpeculativeExecution(Boolean.parseBoolean(config.getProperty("llm.speculative", "false")));
+        BatchProcessor batchProcessor = new BatchProcessor(parser, trustScoreCalculator,
+            Integer.parseInt(config.getProperty("batch.parallelism", "4")));
+        batchProcessor.setTextCompactor(new TextCompactor(tokenEstimator));
+        batchProcessor.setMemoryBudget(new PdfMemoryBudget(
+            Long.parseLong(config.getProperty("pdf.memory-budget-bytes", "0")),
+            Long.parseLong(config.getProperty("pdf.max-main-memory-bytes", "67108864"))));
+        batchProcessor.setLazyPageExtraction(Boolean.parseBoolean(config.getProperty("pdf.lazy-pages", "true")));
+        batchProcessor.setParallelPageThreshold(Integer.parseInt(config.getProperty("pdf.parallel-min-pages", "100")));
+        batchProcessor.setLayoutText(Boolean.parseBoolean(config.getProperty("pdf.layout-text", "false")));
+        batchProcessor.setTextCache(new PdfTextCache(
+            resolveUserHome(config.getProperty("pdf.text-cache.dir", "${user.home}/.invoicebot/text-cache")),
+            Long.parseLong(config.getProperty("pdf.text-cache.max-bytes", "134217728"))));
         
         // GUI starten
         SwingUtilities.invokeLater(() -> {
@@ -66,8 +119,30 @@ public class GuiLauncher {
                 e.printStackTrace();
             }
             
-            InvoiceBotGui gui = new InvoiceBotGui(parser, llmClient);
+            InvoiceBotGui gui = new InvoiceBotGui(batchProcessor, llmClient);
             gui.setVisible(true);
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Liest application.properties vom Classpath (ohne Spring: Platzhalter werden nicht aufgelöst).
+     */
+    private static Properties loadConfig() {
+        Properties config = new Properties();
+        try (InputStream in = GuiLauncher.class.getResourceAsStream("/application.properties")) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ application.properties nicht lesbar - verwende Standardwerte");
+        }
+        return config;
+    }
+
+    /**
+     * Ersetzt den Platzhalter ${user.home}, den Spring sonst selbst auflöst.
+     */
+    private static String resolveUserHome(String path) {
+        return path.replace("${user.home}", System.getProperty("user.home"));
+    }
+}
@@ -4,9 +4,9 @@ import javax.swing.SwingUtilities;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import InvoiceBot.batch.BatchProcessor;
 import InvoiceBot.gui.InvoiceBotGui;
 import InvoiceBot.llm.LlmClient;
-import InvoiceBot.parser.InvoiceParser;
 
 
 @SpringBootApplication
@@ -20,11 +20,11 @@ public class InvoiceBotApplication {
         app.setWebApplicationType(WebApplicationType.NONE);
         var context = app.run(args);
 
-        InvoiceParser parser = context.getBean(InvoiceParser.class);
+        BatchProcessor batchProcessor = context.getBean(BatchProcessor.class);
         LlmClient llmClient = context.getBean(LlmClient.class);
 
         SwingUtilities.invokeLater(() -> {
-            InvoiceBotGui gui = new InvoiceBotGui(parser, llmClient);
+            InvoiceBotGui gui = new InvoiceBotGui(batchProcessor, llmClient);
             gui.setVisible(true);
         });
     }
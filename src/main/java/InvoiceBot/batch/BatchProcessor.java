@@ -0,0 +1,342 @@
+package InvoiceBot.batch;
+
+import InvoiceBot.export.ExcelExporter.ProcessingResult;
+import InvoiceBot.model.InvoiceData;
+import InvoiceBot.parser.EInvoiceXmlParser;
+import InvoiceBot.parser.EmbeddedInvoiceExtractor;
+import InvoiceBot.parser.InvoiceParser;
+import InvoiceBot.parser.PdfMemoryBudget;
+import InvoiceBot.parser.PdfTextCache;
+import InvoiceBot.parser.PdfTextExtractor;
+import InvoiceBot.parser.TextCompactor;
+import InvoiceBot.validation.TrustScoreCalculator;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+
+/*
+Batch-Verarbeitung mehrerer Rechnungen.
+ * Führt PDF-Extraktion und LLM-Pipeline für viele Dateien parallel aus
+ * (E-Rechnungen mit eingebetteter XML und reine XRechnung-XML-Dateien kommen ohne LLM aus)
+ * und liefert die Ergebnisse in Fertigstellungs-Reihenfolge an einen Consumer.
+ * Unabhängig von Swing - die GUI ist nur ein Konsument.
+
+Batch processing of multiple invoices.
+ * Runs PDF extraction and the LLM pipeline concurrently for many files
+ * and delivers results in completion order to a consumer.
+ * Independent of Swing - the GUI is just one consumer.
+*/
+
+@Service
+public class BatchProcessor {
+
+    private final InvoiceParser parser;
+    private final TrustScoreCalculator trustScoreCalculator;
+    private final int parallelism;
+    private TextCompactor textCompactor;
+    private PdfMemoryBudget memoryBudget;
+    private PdfTextCache textCache;
+    private boolean lazyPageExtraction;
+    private int parallelPageThreshold;
+    private boolean layoutText;
+
+    public BatchProcessor(InvoiceParser parser,
+                          TrustScoreCalculator trustScoreCalculator,
+                          @Value("${batch.parallelism:4}") int parallelism) {
+        this.parser = parser;
+        this.trustScoreCalculator = trustScoreCalculator;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Optional: kompaktiert den PDF-Text vor der Pipeline (kürzere Prompts).
+     */
+    @Autowired(required = false)
+    public void setTextCompactor(TextCompactor textCompactor) {
+        this.textCompactor = textCompactor;
+    }
+
+    /**
+     * Optional: gemeinsames Speicher-Budget für das Laden der PDFs. Große Dokumente werden
+     * Temp-Datei-gestützt geladen, und es sind nur so viele PDFs gleichzeitig im Heap, wie das Budget erlaubt.
+     */
+    @Autowired(required = false)
+    public void setMemoryBudget(PdfMemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public PdfMemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Optional: Cache für extrahierten PDF-Text (Schlüssel = SHA-256 der Datei).
+     * Bei einem Treffer wird die PDF gar nicht erst mit PDFBox geöffnet.
+     */
+    @Autowired(required = false)
+    public void setTextCache(PdfTextCache textCache) {
+        this.textCache = textCache;
+    }
+
+    public PdfTextCache getTextCache() {
+        return textCache;
+    }
+
+    /**
+     * Liest PDFs seitenweise (erste, letzte, Rest) und hört auf, sobald Stufe 0 alle Felder findet.
+     */
+    @Value("${pdf.lazy-pages:false}")
+    public void setLazyPageExtraction(boolean lazyPageExtraction) {
+        this.lazyPageExtraction = lazyPageExtraction;
+    }
+
+    /**
+     * PDFs ab dieser Seitenzahl werden parallel in Seitenbereichen gelesen (0 = nie).
+     * Kleine Dokumente bleiben auf dem günstigen Ein-Thread-Pfad.
+     */
+    @Value("${pdf.parallel-min-pages:0}")
+    public void setParallelPageThreshold(int parallelPageThreshold) {
+        this.parallelPageThreshold = parallelPageThreshold;
+    }
+
+    /**
+     * Layout-bewusste Extraktion ({@link InvoiceBot.parser.LayoutTextStripper}): Tabellenzeilen mit " | "
+     * und "Bezeichnung: Wert" statt Fließtext - Beträge lassen sich ihren Spalten eindeutig zuordnen.
+     */
+    @Value("${pdf.layout-text:false}")
+    public void setLayoutText(boolean layoutText) {
+        this.layoutText = layoutText;
+    }
+
+    /**
+     * Verarbeitet alle Dateien mit der konfigurierten Parallelität.
+     * Der Consumer wird im aufrufenden Thread aufgerufen, sobald eine Datei fertig ist
+     * (Reihenfolge = Fertigstellung, nicht Eingabe). Blockiert bis alle Dateien verarbeitet sind.
+     *
+     * Processes all files with the configured parallelism. The consumer is invoked on the
+     * calling thread in completion order. Blocks until every file has been processed.
+     */
+    public void process(List<File> files, Consumer<ProcessingResult> onResult) throws InterruptedException {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.min(parallelism, files.size());
+        ExecutorService pool = Executors.newFixedThreadPool(threads, newThreadFactory());
+        CompletionService<ProcessingResult> completionService = new ExecutorCompletionService<>(pool);
+
+        System.out.println("🚀 Batch gestartet: " + files.size() + " Datei(en), Parallelität " + threads);
+
+        try {
+            // XML-Dateien zuerst einreihen: sie sind in Millisekunden fertig und
+            // sollen nicht hinter langen LLM-Aufrufen warten
+            List<File> ordered = new ArrayList<>(files);
+            ordered.sort(Comparator.comparing(file -> !isXml(file)));
+
+            Map<Future<ProcessingResult>, File> pending = new HashMap<>();
+            for (File file : ordered) {
+                pending.put(completionService.submit(() -> processFile(file)), file);
+            }
+
+            for (int i = 0; i < files.size(); i++) {
+                Future<ProcessingResult> future = completionService.take();
+                onResult.accept(unwrap(future, pending.get(future)));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Verarbeitet eine einzelne Datei: Text extrahieren, Pipeline ausführen, Trust-Score berechnen.
+     * Fehler werden im Ergebnis vermerkt statt geworfen.
+     */
+    public ProcessingResult processFile(File file) {
+        ProcessingResult result = new ProcessingResult();
+        result.setFileName(file.getName());
+        result.setFilePath(file.getAbsolutePath());
+
+        try {
+            if (isXml(file)) {
+                return processXml(file, result);
+            }
+
+            // 1. Eingebettete E-Rechnung (ZUGFeRD/Factur-X) oder PDF-Text - bekannte Dateien aus dem Cache
+            InvoiceData data = null;
+            String pdfText;
+            // Layout- und Fließtext getrennt cachen, sonst liefert ein Umschalten der Einstellung alten Text
+            String hash = textCache != null ? PdfTextCache.hash(file) + (layoutText ? "-layout" : "") : null;
+            Optional<String> cachedText = hash != null ? textCache.get(hash) : Optional.empty();
+            if (cachedText.isPresent()) {
+                // Nur Dateien ohne verwertbare E-Rechnung landen im Cache -> PDFBox komplett überspringen
+                pdfText = cachedText.get();
+                System.out.println("💾 " + file.getName() + ": Text aus dem Cache - PDFBox übersprungen");
+            } else {
+                String[] pageTexts;
+                try (PdfMemoryBudget.Lease lease = memoryBudget != null ? memoryBudget.acquire(file) : null;
+                     PDDocument doc = lease != null ? PDDocument.load(file, lease.getMemoryUsageSetting()) : PDDocument.load(file)) {
+                    data = EmbeddedInvoiceExtractor.extract(doc)
+                        .filter(embedded -> trustScoreCalculator.calculate(embedded) >= 85)
+                        .orElse(null);
+                    pageTexts = new String[doc.getNumberOfPages()];
+                    pdfText = data == null ? extractText(doc, pageTexts) : null;
+                }
+                // Erst nach dem Schließen des Dokuments (und Freigeben seines Budgets) parallel weiterlesen
+                if (data == null && pdfText == null) {
+                    pdfText = extractRemainingParallel(file, pageTexts);
+                }
+
+                // Seitenweise abgebrochene Texte nicht speichern - ein späterer Lauf bekäme sonst nie den vollen Text
+                if (hash != null && pdfText != null && PdfTextExtractor.pageCount(pdfText) >= pageTexts.length) {
+                    textCache.put(hash, pdfText);
+                }
+            }
+
+            // 2. LLM-Pipeline nur ohne strukturierte Daten ausführen
+            if (data != null) {
+                System.out.println("⚡ " + file.getName() + ": E-Rechnung gelesen - LLM übersprungen");
+            } else {
+                data = parser.parse(compact(pdfText));
+            }
+
+            // 3. Trust-Score berechnen
+            result.setData(data);
+            result.setTrustScore(trustScoreCalculator.calculate(data));
+            result.setSuccess(true);
+
+        } catch (Exception e) {
+            result.setSuccess(false);
+            result.setErrorMessage(e.getMessage());
+        }
+
+        return result;
+    }
+
+    /**
+     * @return Text oder null, wenn das Dokument noch parallel gelesen werden muss
+     *         ({@link #extractRemainingParallel}; bereits gelesene Seiten stehen in {@code pageTexts})
+     */
+    private String extractText(PDDocument doc, String[] pageTexts) throws Exception {
+        boolean parallel = parallelPageThreshold > 0 && pageTexts.length >= parallelPageThreshold;
+
+        if (lazyPageExtraction) {
+            // Abbruchkriterium auf dem Text, den die Pipeline später tatsächlich bekommt.
+            // Große Dokumente: nur erste und letzte Seite vorab, der Rest parallel
+            String text = PdfTextExtractor.extractLazily(doc, partial -> parser.isCompleteWithoutLlm(compact(partial)),
+                parallel ? 2 : Integer.MAX_VALUE, layoutText, pageTexts);
+            if (text != null) {
+                return text;
+            }
+        }
+        return parallel ? null : PdfTextExtractor.extract(doc, layoutText);
+    }
+
+    /**
+     * Liest die noch fehlenden Seiten parallel - die im Seitenweise-Durchgang gelesene erste und letzte
+     * Seite werden nicht erneut extrahiert. Jeder Teilbereich reserviert sein eigenes Speicher-Budget.
+     */
+    private String extractRemainingParallel(File file, String[] pageTexts) throws Exception {
+        int first = 1;
+        int last = pageTexts.length;
+        while (first <= last && pageTexts[first - 1] != null) {
+            first++;
+        }
+        while (last >= first && pageTexts[last - 1] != null) {
+            last--;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (int page = 1; page < first; page++) {
+            text.append(pageTexts[page - 1]);
+        }
+        if (first <= last) {
+            text.append(PdfTextExtractor.extractParallel(file, first, last, memoryBudget, layoutText));
+        }
+        for (int page = last + 1; page <= pageTexts.length; page++) {
+            text.append(pageTexts[page - 1]);
+        }
+        return text.toString();
+    }
+
+    private String compact(String text) {
+        return textCompactor != null ? textCompactor.compact(text) : text;
+    }
+
+    /**
+     * XRechnung/ZUGFeRD-XML ohne PDF: StAX-Streaming direkt in InvoiceData, kein LLM.
+     */
+    private ProcessingResult processXml(File file, ProcessingResult result) throws Exception {
+        InvoiceData data;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            data = EInvoiceXmlParser.parse(in);
+        }
+        if (data == null) {
+            result.setSuccess(false);
+            result.setErrorMessage("Keine unterstützte E-Rechnung (CII/UBL)");
+            return result;
+        }
+
+        result.setData(data);
+        result.setTrustScore(trustScoreCalculator.calculate(data));
+        result.setSuccess(true);
+        return result;
+    }
+
+    private static boolean isXml(File file) {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith(".xml");
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public InvoiceParser getParser() {
+        return parser;
+    }
+
+    private ProcessingResult unwrap(Future<ProcessingResult> future, File file) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // processFile fängt Exceptions selbst - hier landen nur Errors (z.B. OutOfMemoryError)
+            ProcessingResult result = new ProcessingResult();
+            result.setFileName(file.getName());
+            result.setFilePath(file.getAbsolutePath());
+            result.setSuccess(false);
+            result.setErrorMessage(String.valueOf(e.getCause()));
+            return result;
+        }
+    }
+
+    private static ThreadFactory newThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "invoice-batch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
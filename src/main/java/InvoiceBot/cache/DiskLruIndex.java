@@ -0,0 +1,158 @@
+package InvoiceBot.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+
+/*
+Größenbegrenzter LRU-Index über Cache-Dateien auf der Festplatte (gemeinsam für LLM- und Text-Cache).
+ * Reihenfolge = letzte Nutzung; die Änderungszeit der Datei wird bei jedem Treffer gesetzt,
+ * damit die Reihenfolge einen Neustart überlebt. Über dem Limit werden die ältesten Dateien gelöscht.
+ * Nicht thread-sicher - die Caches synchronisieren selbst.
+
+Size-bounded LRU index over cache files on disk, shared by the LLM response cache and the PDF text cache.
+ * Not thread-safe; callers synchronize.
+*/
+
+public class DiskLruIndex {
+
+    /**
+     * Schreibt den Inhalt eines Eintrags in die übergebene Temp-Datei.
+     */
+    @FunctionalInterface
+    public interface EntryWriter {
+        void write(Path tmp) throws IOException;
+    }
+
+    private final Path directory;
+    private final String suffix;
+    private final long maxBytes;
+    private final String name;
+
+    // Zugriffs-Reihenfolge: ältester Eintrag zuerst (LRU)
+    private final LinkedHashMap<Path, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * @param depth    Verzeichnistiefe der Einträge (1 = direkt im Ordner, 2 = ein Unterordner)
+     * @param maxBytes Obergrenze auf der Platte (0 = Cache deaktiviert)
+     * @param name     Name für Log-Meldungen, z.B. "LLM-Cache"
+     */
+    public DiskLruIndex(Path directory, String suffix, int depth, long maxBytes, String name) {
+        this.directory = directory;
+        this.suffix = suffix;
+        this.maxBytes = maxBytes;
+        this.name = name;
+        load(depth);
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Prüft, ob die Datei im Cache ist - und zählt das als Zugriff für die LRU-Reihenfolge.
+     */
+    public boolean contains(Path file) {
+        // get() statt containsKey(): nur get() zählt in der LinkedHashMap als Zugriff
+        return index.get(file) != null;
+    }
+
+    /**
+     * Nach einem erfolgreichen Lesen: Zugriffszeit auf der Platte aktualisieren.
+     */
+    public void touch(Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /**
+     * Schreibt einen Eintrag atomar (Temp-Datei + Umbenennen) und verdrängt danach bei Bedarf.
+     */
+    public void write(Path file, EntryWriter writer) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), "entry", ".tmp");
+        try {
+            writer.write(tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        Long previous = index.put(file, Files.size(file));
+        totalBytes += index.get(file) - (previous != null ? previous : 0);
+        evictIfNeeded();
+    }
+
+    public void remove(Path file) {
+        Long size = index.remove(file);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        deleteQuietly(file);
+    }
+
+    /** Alle Einträge, älteste zuerst (Kopie - darf während remove() durchlaufen werden). */
+    public List<Path> files() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<Path, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Path, Long> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue();
+            deleteQuietly(eldest.getKey());
+        }
+    }
+
+    private void load(int depth) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        // Bestehende Einträge nach letzter Nutzung sortiert einlesen (älteste zuerst)
+        try (Stream<Path> files = Files.walk(directory, depth)) {
+            files.filter(file -> file.toString().endsWith(suffix))
+                 .sorted(Comparator.comparingLong(DiskLruIndex::lastModified))
+                 .forEach(file -> {
+                     long size = file.toFile().length();
+                     index.put(file, size);
+                     totalBytes += size;
+                 });
+            evictIfNeeded();
+            System.out.println("💾 " + name + " geladen: " + index.size() + " Einträge, " + (totalBytes / 1024) + " KB");
+        } catch (IOException e) {
+            System.err.println("⚠️ " + name + " konnte nicht geladen werden: " + e.getMessage());
+        }
+    }
+
+    private static long lastModified(Path file) {
+        return file.toFile().lastModified();
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("⚠️ Cache-Datei konnte nicht gelöscht werden: " + file);
+        }
+    }
+}
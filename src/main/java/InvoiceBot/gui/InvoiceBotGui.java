@@ -1,9 +1,15 @@
 package InvoiceBot.gui;
 
+import InvoiceBot.batch.BatchProcessor;
+import InvoiceBot.llm.AdaptiveConcurrencyLimiter;
+import InvoiceBot.llm.EndpointBalancer;
 import InvoiceBot.llm.LlmClient;
+import InvoiceBot.llm.PrefillStats;
 import InvoiceBot.model.InvoiceData;
-import InvoiceBot.parser.InvoiceParser;
-import InvoiceBot.parser.PdfTextExtractor;
+import InvoiceBot.parser.EscalationPredictor;
+import InvoiceBot.parser.PdfMemoryBudget;
+import InvoiceBot.parser.PdfTextCache;
+import InvoiceBot.parser.SpeculativeExtractor;
 import InvoiceBot.export.ExcelExporter;
 import InvoiceBot.export.ExcelExporter.ProcessingResult;
 import InvoiceBot.validation.TrustScoreCalculator;
@@ -25,6 +31,7 @@ import java.time.format.DateTimeParseException;
 
 // Java Util Imports
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /* 
@@ -42,9 +49,8 @@ import java.util.List;
 
 public class InvoiceBotGui extends JFrame {
 
-    private final InvoiceParser parser;
+    private final BatchProcessor batchProcessor;
     private final LlmClient llmClient;
-    private final TrustScoreCalculator trustScoreCalculator;
     
     private JTextArea logArea;
     private JButton selectButton;
@@ -59,10 +65,9 @@ public class InvoiceBotGui extends JFrame {
     // Konfigurierbare Trust-Score Schwelle - nur 85%+ Rechnungen werden exportiert
     private static final int MIN_TRUST_SCORE = 85;  // Nur vollständige Rechnungen
 
-    public InvoiceBotGui(InvoiceParser parser, LlmClient llmClient) {
-        this.parser = parser;
+    public InvoiceBotGui(BatchProcessor batchProcessor, LlmClient llmClient) {
+        this.batchProcessor = batchProcessor;
         this.llmClient = llmClient;
-        this.trustScoreCalculator = new TrustScoreCalculator();
         
         initializeUI();
         checkServerConnection();
@@ -98,7 +103,7 @@ public class InvoiceBotGui extends JFrame {
         
         // File Selection
         JPanel filePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        selectButton = new JButton("📁 PDF-Dateien auswählen");
+        selectButton = new JButton("📁 Rechnungen auswählen (PDF/XML)");
         selectButton.setFont(new Font("SansSerif", Font.BOLD, 14));
         selectButton.addActionListener(e -> selectFiles());
         filePanel.add(selectButton);
@@ -167,10 +172,14 @@ public class InvoiceBotGui extends JFrame {
                     boolean reachable = get();
                     if (reachable) {
                         log("✅ LLM-Server ist erreichbar und bereit!");
+                        for (EndpointBalancer.Endpoint endpoint : llmClient.getEndpointBalancer().getEndpoints()) {
+                            log("   " + (endpoint.isHealthy() ? "🟢 " : "🔴 ") + endpoint.getBaseUrl());
+                        }
                         statusLabel.setText("✅ Server verbunden");
                         statusLabel.setForeground(new Color(0, 128, 0));
+                        checkModels();
                     } else {
-                        log("❌ LLM-Server NICHT erreichbar auf http://127.0.0.1:1234");
+                        log("❌ LLM-Server NICHT erreichbar auf " + llmClient.getEndpointBalancer().getEndpoints());
                         log("👉 Bitte starten Sie LM Studio und laden Sie ein Modell");
                         statusLabel.setText("❌ Server nicht erreichbar");
                         statusLabel.setForeground(Color.RED);
@@ -190,10 +199,33 @@ public class InvoiceBotGui extends JFrame {
         worker.execute();
     }
 
+    /**
+     * Prüft jedes konfigurierte Modell (Stufe 1 / Eskalation) und lädt es per Warm-up vor.
+     */
+    private void checkModels() {
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                log("🧠 Modelle: Stufe 1 = " + llmClient.getFastModel()
+                    + ", Stufe 2-4 = " + llmClient.getEscalationModel());
+                for (String model : llmClient.getConfiguredModels()) {
+                    if (!llmClient.isModelAvailable(model)) {
+                        log("⚠️ Modell " + model + " wird von keinem Server angeboten - bitte in LM Studio laden");
+                        continue;
+                    }
+                    log(llmClient.warmUp(model)
+                        ? "🔥 Modell " + model + " geladen"
+                        : "⚠️ Warm-up für " + model + " fehlgeschlagen");
+                }
+                return null;
+            }
+        }.execute();
+    }
+
     private void selectFiles() {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setMultiSelectionEnabled(true);
-        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("PDF-Dateien", "pdf"));
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Rechnungen (PDF, XRechnung-XML)", "pdf", "xml"));
         
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
@@ -223,18 +255,17 @@ public class InvoiceBotGui extends JFrame {
         
         SwingWorker<Void, String> worker = new SwingWorker<>() {
             @Override
-            protected Void doInBackground() {
+            protected Void doInBackground() throws InterruptedException {
                 int total = selectedFiles.length;
+                publish("⚙️ Parallelität: " + batchProcessor.getParallelism() + " Datei(en) gleichzeitig");
                 
-                for (int i = 0; i < total; i++) {
-                    File pdfFile = selectedFiles[i];
-                    int progress = (int) ((i / (double) total) * 100);
-                    setProgress(progress);
-                    
-                    publish("\n--- VERARBEITE (" + (i + 1) + "/" + total + "): " + pdfFile.getName() + " ---");
-                    
-                    ProcessingResult result = processPdf(pdfFile);
+                // Ergebnisse kommen in Fertigstellungs-Reihenfolge
+                batchProcessor.process(Arrays.asList(selectedFiles), result -> {
                     results.add(result);
+                    int done = results.size();
+                    setProgress((int) ((done / (double) total) * 100));
+                    
+                    publish("\n--- FERTIG (" + done + "/" + total + "): " + result.getFileName() + " ---");
                     
                     if (result.isSuccess()) {
                         int score = result.getTrustScore();
@@ -253,7 +284,7 @@ public class InvoiceBotGui extends JFrame {
                     } else {
                         publish("❌ FEHLER: " + result.getErrorMessage());
                     }
-                }
+                });
                 
                 setProgress(100);
                 return null;
@@ -276,42 +307,23 @@ public class InvoiceBotGui extends JFrame {
             if ("progress".equals(evt.getPropertyName())) {
                 int progress = (Integer) evt.getNewValue();
                 progressBar.setValue(progress);
-                statusLabel.setText("Verarbeite... " + progress + "%");
+                statusLabel.setText("Verarbeite... " + progress + "%" + describeLlmLoad());
             }
         });
         
         worker.execute();
     }
 
-    private ProcessingResult processPdf(File pdfFile) {
-        ProcessingResult result = new ProcessingResult();
-        result.setFileName(pdfFile.getName());
-        result.setFilePath(pdfFile.getAbsolutePath());
-        
-        try {
-            // 1. PDF-Text extrahieren
-            String pdfText = PdfTextExtractor.extract(pdfFile);
-            
-            // 2. LLM-Pipeline ausführen
-            InvoiceData data = parser.parse(pdfText);
-            
-            // 3. Trust-Score berechnen
-            int trustScore = calculateTrustScore(data);
-            
-            result.setData(data);
-            result.setTrustScore(trustScore);
-            result.setSuccess(true);
-            
-        } catch (Exception e) {
-            result.setSuccess(false);
-            result.setErrorMessage(e.getMessage());
+    /**
+     * Aktuelles Limit und Warteschlange des adaptiven LLM-Limiters (falls aktiv).
+     */
+    private String describeLlmLoad() {
+        AdaptiveConcurrencyLimiter limiter = llmClient.getConcurrencyLimiter();
+        if (limiter == null) {
+            return "";
         }
-        
-        return result;
-    }
-
-    private int calculateTrustScore(InvoiceData data) {
-        return trustScoreCalculator.calculate(data);
+        return "  |  LLM-Slots: " + limiter.getInFlight() + "/" + limiter.getLimit()
+            + ", Warteschlange: " + limiter.getQueueDepth();
     }
 
     private void finishProcessing() {
@@ -340,6 +352,37 @@ public class InvoiceBotGui extends JFrame {
         if (failedCount > 0) {
             log("   ❌ Fehlgeschlagen: " + failedCount);
         }
+        if (llmClient.getResponseCache() != null) {
+            log("   💾 LLM-Cache: " + llmClient.getResponseCache().getHits() + " Treffer, "
+                + llmClient.getResponseCache().getMisses() + " Requests an den Server");
+        }
+        PrefillStats prefill = llmClient.getPrefillStats();
+        if (prefill.getRequests() > 0) {
+            log(String.format("   ⚡ Prefix-Cache: %.0f%% der Prompt-Tokens wiederverwendet, ~%.1fs Prefill gespart",
+                prefill.getCacheRatio() * 100, prefill.getSavedMs() / 1000));
+        }
+        PdfTextCache textCache = batchProcessor.getTextCache();
+        if (textCache != null && textCache.getHits() > 0) {
+            log("   💾 Text-Cache: " + textCache.getHits() + " PDFs ohne PDFBox gelesen");
+        }
+        PdfMemoryBudget memoryBudget = batchProcessor.getMemoryBudget();
+        if (memoryBudget != null && (memoryBudget.getTempFileLoads() > 0 || memoryBudget.getWaits() > 0)) {
+            log("   💽 PDF-Speicher: " + memoryBudget.getTempFileLoads() + " mit Temp-Datei geladen, "
+                + memoryBudget.getWaits() + "× auf Budget gewartet (Spitze "
+                + memoryBudget.getPeakReservedBytes() / 1024 / 1024 + " von "
+                + memoryBudget.getBudgetBytes() / 1024 / 1024 + " MB)");
+        }
+        EscalationPredictor predictor = batchProcessor.getParser().getEscalationPredictor();
+        if (predictor != null && predictor.getPredictions() > 0) {
+            log("   ⏭️ Stufen-Vorhersage: " + predictor.getSkipped() + " Stufe-1-Aufrufe eingespart, "
+                + predictor.getHits() + " Treffer / " + predictor.getMisses() + " Fehlgriffe");
+        }
+        SpeculativeExtractor speculative = batchProcessor.getParser().getSpeculativeExtractor();
+        if (speculative != null && speculative.getRaces() > 0) {
+            log(String.format("   🏁 Spekulativ: %d Rennen (Stufe 1: %d, Stufe 2: %d), verworfene Tokens: %.0f%%",
+                speculative.getRaces(), speculative.getStage1Wins(), speculative.getStage2Wins(),
+                speculative.getWastedTokenRatio() * 100));
+        }
         
         long problematicCount = lowScoreCount + failedCount;
         
@@ -521,7 +564,7 @@ public class InvoiceBotGui extends JFrame {
     
     /**
      * Erstellt den neuen Dateinamen basierend auf den Rechnungsdaten.
-     * Format: YYYYMMDD_Unternehmensname_Rechnungsnummer.pdf
+     * Format: YYYYMMDD_Unternehmensname_Rechnungsnummer.pdf (bzw. .xml - Endung des Originals)
      */
     private String createRenamedFilename(ProcessingResult result) {
         InvoiceData data = result.getData();
@@ -541,7 +584,11 @@ public class InvoiceBotGui extends JFrame {
         }
         
         // 2. Neuen Dateinamen konstruieren
-        return String.format("%s_%s_%s.pdf", datePart, companyPart, numberPart);
+        String fileName = result.getFileName();
+        String extension = fileName != null && fileName.lastIndexOf('.') >= 0
+            ? fileName.substring(fileName.lastIndexOf('.')).toLowerCase()
+            : ".pdf";
+        return String.format("%s_%s_%s%s", datePart, companyPart, numberPart, extension);
     }
     
     /**
@@ -0,0 +1,186 @@
+package InvoiceBot.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/*
+Adaptiver Limiter für gleichzeitige Requests an den lokalen LLM-Server.
+ * LM Studio / llama.cpp haben eine feste Anzahl paralleler Slots. Zu viele Requests
+ * lassen die Latenz explodieren, zu wenige lassen Slots leer laufen.
+ * AIMD: Bei guter Latenz wird das Limit langsam erhöht (+1 pro "Runde"),
+ * bei Fehlern oder stark gestiegener Latenz multiplikativ gesenkt.
+
+Adaptive in-flight request limiter for the local LLM server.
+ * AIMD: additive increase while latency stays close to the observed no-load baseline,
+ * multiplicative decrease on errors/timeouts or when latency exceeds the tolerance.
+ * Requests above the limit wait in a FIFO queue without blocking a thread.
+*/
+
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.75;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BASELINE_DRIFT = 0.02;
+    private static final long LATENCY_SLACK_MS = 50;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final Deque<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private double baselineLatencyMs = -1;
+
+    public AdaptiveConcurrencyLimiter(@Value("${llm.limiter.initial:2}") int initialLimit,
+                                      @Value("${llm.limiter.min:1}") int minLimit,
+                                      @Value("${llm.limiter.max:16}") int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Fordert einen Slot an. Das Future wird sofort erfüllt, wenn das Limit es erlaubt,
+     * sonst sobald ein anderer Request fertig ist. Ein cancel() entfernt den Wartenden.
+     */
+    public synchronized CompletableFuture<Permit> acquire() {
+        if (waiting.isEmpty() && inFlight < currentLimit()) {
+            inFlight++;
+            return CompletableFuture.completedFuture(new Permit(inFlight));
+        }
+        CompletableFuture<Permit> future = new CompletableFuture<>();
+        waiting.addLast(future);
+        return future;
+    }
+
+    public synchronized int getLimit() {
+        return currentLimit();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueueDepth() {
+        waiting.removeIf(CompletableFuture::isDone);
+        return waiting.size();
+    }
+
+    /**
+     * Freie Slots, die sofort vergeben würden (0, solange Requests warten).
+     */
+    public synchronized int getAvailable() {
+        waiting.removeIf(CompletableFuture::isDone);
+        return waiting.isEmpty() ? Math.max(0, currentLimit() - inFlight) : 0;
+    }
+
+    private int currentLimit() {
+        return (int) Math.floor(limit);
+    }
+
+    private void release(Permit permit, long latencyMs, Outcome outcome) {
+        Map<CompletableFuture<Permit>, Permit> granted;
+
+        synchronized (this) {
+            int before = currentLimit();
+
+            switch (outcome) {
+                case DROPPED -> limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                case SUCCESS -> onLatencySample(latencyMs, permit.inFlightAtStart);
+                case IGNORED -> { }
+            }
+
+            int after = currentLimit();
+            if (after != before) {
+                System.out.println("🔧 LLM-Limit angepasst: " + before + " → " + after
+                    + " (in Arbeit: " + (inFlight - 1) + ", Warteschlange: " + waiting.size() + ")");
+            }
+
+            inFlight--;
+            granted = grantWaiting();
+        }
+
+        // Außerhalb des Locks erfüllen - Folge-Callbacks (z.B. enqueue) sollen den Limiter nicht blockieren
+        granted.forEach((future, grantedPermit) -> {
+            if (!future.complete(grantedPermit)) {
+                // Wartender hat inzwischen abgebrochen -> Slot direkt wieder freigeben
+                grantedPermit.onIgnore();
+            }
+        });
+    }
+
+    private void onLatencySample(long latencyMs, int inFlightAtStart) {
+        // Baseline = Latenz ohne Last. Niedrigere Werte sofort übernehmen, höhere nur langsam.
+        if (baselineLatencyMs < 0 || latencyMs < baselineLatencyMs) {
+            baselineLatencyMs = latencyMs;
+        } else {
+            baselineLatencyMs += (latencyMs - baselineLatencyMs) * BASELINE_DRIFT;
+        }
+
+        if (latencyMs > baselineLatencyMs * LATENCY_TOLERANCE + LATENCY_SLACK_MS) {
+            // Server stellt Requests in die Warteschlange -> zurückfahren
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else if (inFlightAtStart >= currentLimit()) {
+            // Nur erhöhen, wenn das Limit tatsächlich ausgeschöpft war
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private Map<CompletableFuture<Permit>, Permit> grantWaiting() {
+        Map<CompletableFuture<Permit>, Permit> granted = new LinkedHashMap<>();
+        while (!waiting.isEmpty() && inFlight < currentLimit()) {
+            CompletableFuture<Permit> next = waiting.pollFirst();
+            if (next.isDone()) {
+                continue; // bereits abgebrochen
+            }
+            inFlight++;
+            granted.put(next, new Permit(inFlight));
+        }
+        return granted;
+    }
+
+    private enum Outcome { SUCCESS, DROPPED, IGNORED }
+
+    /**
+     * Ein belegter Slot. Muss genau einmal über onSuccess, onDropped oder onIgnore freigegeben werden.
+     */
+    public class Permit {
+        private final long startTime = System.currentTimeMillis();
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /** Request erfolgreich - Latenz fließt in die Limit-Berechnung ein. */
+        public void onSuccess() {
+            finish(Outcome.SUCCESS);
+        }
+
+        /** Timeout, Verbindungsfehler oder Überlast (5xx/429) - Limit wird gesenkt. */
+        public void onDropped() {
+            finish(Outcome.DROPPED);
+        }
+
+        /** Abgebrochen oder nicht aussagekräftig - nur Slot freigeben. */
+        public void onIgnore() {
+            finish(Outcome.IGNORED);
+        }
+
+        private void finish(Outcome outcome) {
+            if (released.compareAndSet(false, true)) {
+                release(this, System.currentTimeMillis() - startTime, outcome);
+            }
+        }
+    }
+}
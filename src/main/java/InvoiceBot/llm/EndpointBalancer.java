@@ -0,0 +1,190 @@
+package InvoiceBot.llm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+
+/*
+Lastverteilung über mehrere OpenAI-kompatible LLM-Server.
+ * Auswahl: wenigste offene Requests, gewichtet mit der gleitenden Antwortzeit des Servers
+ * (Score = (offen + 1) × Latenz - ein doppelt so schneller Server bekommt etwa doppelt so viele Requests).
+ * Server mit Verbindungsfehlern oder Überlast (429/5xx) werden als "ungesund" markiert und erst nach
+ * erfolgreicher Probe auf /v1/models wieder verwendet. Sind alle ungesund, wird trotzdem einer versucht.
+
+Load balancing across several OpenAI-compatible LLM servers.
+ * Latency-weighted least-outstanding-requests selection; failed backends are marked unhealthy
+ * until a /v1/models probe succeeds.
+*/
+
+public class EndpointBalancer {
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final long PROBE_INTERVAL_MS = 10_000;
+
+    /**
+     * Ein LLM-Server mit seinem aktuellen Zustand.
+     */
+    public static class Endpoint {
+        private final String baseUrl;
+        private int outstanding;
+        private double latencyMs = -1;
+        private boolean healthy = true;
+        private boolean probing;
+        private long unhealthySince;
+        private long requests;
+        private long failures;
+
+        Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String getBaseUrl() { return baseUrl; }
+        public boolean isHealthy() { return healthy; }
+        public long getRequests() { return requests; }
+        public long getFailures() { return failures; }
+
+        @Override
+        public String toString() {
+            return baseUrl;
+        }
+    }
+
+    private final List<Endpoint> endpoints = new ArrayList<>();
+
+    public EndpointBalancer(List<String> baseUrls) {
+        if (baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("Mindestens ein LLM-Endpunkt erforderlich");
+        }
+        for (String baseUrl : baseUrls) {
+            endpoints.add(new Endpoint(baseUrl));
+        }
+    }
+
+    /**
+     * "http://a:1234, http://b:1234/" -> ["http://a:1234", "http://b:1234"]
+     */
+    public static List<String> parse(String baseUrls) {
+        List<String> urls = new ArrayList<>();
+        for (String url : baseUrls.split("[,;\\s]+")) {
+            String trimmed = url.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            urls.add(trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed);
+        }
+        return urls;
+    }
+
+    /**
+     * Wählt einen Server und zählt den Request als offen.
+     *
+     * @param exclude bereits fehlgeschlagene Server dieses Requests
+     * @return Server oder null, wenn alle ausgeschlossen sind
+     */
+    public synchronized Endpoint acquire(Set<Endpoint> exclude) {
+        double fallbackLatency = averageLatency();
+        Endpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.healthy || exclude.contains(endpoint)) {
+                continue;
+            }
+            double latency = endpoint.latencyMs > 0 ? endpoint.latencyMs : fallbackLatency;
+            double score = (endpoint.outstanding + 1) * latency;
+            if (score < bestScore) {
+                best = endpoint;
+                bestScore = score;
+            }
+        }
+
+        if (best == null) {
+            // Alle ungesund: der am längsten ausgefallene Server bekommt eine Chance
+            for (Endpoint endpoint : endpoints) {
+                if (!exclude.contains(endpoint) && (best == null || endpoint.unhealthySince < best.unhealthySince)) {
+                    best = endpoint;
+                }
+            }
+        }
+
+        if (best != null) {
+            best.outstanding++;
+            best.requests++;
+        }
+        return best;
+    }
+
+    /**
+     * Meldet das Ende eines Requests.
+     *
+     * @param failed Verbindungsfehler oder Überlast - der Server wird als ungesund markiert
+     */
+    public synchronized void release(Endpoint endpoint, long latencyMs, boolean failed) {
+        endpoint.outstanding = Math.max(0, endpoint.outstanding - 1);
+        if (failed) {
+            endpoint.failures++;
+            markUnhealthy(endpoint);
+            return;
+        }
+        endpoint.latencyMs = endpoint.latencyMs < 0
+            ? latencyMs
+            : endpoint.latencyMs + LATENCY_SMOOTHING * (latencyMs - endpoint.latencyMs);
+    }
+
+    public synchronized void markUnhealthy(Endpoint endpoint) {
+        if (endpoint.healthy) {
+            System.err.println("⚠️ LLM-Endpunkt ungesund: " + endpoint.baseUrl);
+        }
+        endpoint.healthy = false;
+        endpoint.probing = false;
+        endpoint.unhealthySince = System.currentTimeMillis();
+    }
+
+    public synchronized void markHealthy(Endpoint endpoint) {
+        if (!endpoint.healthy) {
+            System.out.println("✅ LLM-Endpunkt wieder erreichbar: " + endpoint.baseUrl);
+        }
+        endpoint.healthy = true;
+        endpoint.probing = false;
+    }
+
+    /**
+     * Ungesunde Server, deren Probe-Intervall abgelaufen ist (werden als "in Prüfung" markiert).
+     */
+    public synchronized List<Endpoint> dueForProbe() {
+        long now = System.currentTimeMillis();
+        List<Endpoint> due = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.healthy && !endpoint.probing && now - endpoint.unhealthySince >= PROBE_INTERVAL_MS) {
+                endpoint.probing = true;
+                due.add(endpoint);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Ob es für diesen Request noch einen anderen Server gibt.
+     */
+    public synchronized boolean hasAlternative(Set<Endpoint> exclude) {
+        return endpoints.stream().anyMatch(endpoint -> !exclude.contains(endpoint));
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    private double averageLatency() {
+        double sum = 0;
+        int known = 0;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.latencyMs > 0) {
+                sum += endpoint.latencyMs;
+                known++;
+            }
+        }
+        // Unbekannte Server wie ein durchschnittlicher behandeln, damit sie überhaupt Requests bekommen
+        return known == 0 ? 1.0 : sum / known;
+    }
+}
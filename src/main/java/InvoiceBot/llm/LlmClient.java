@@ -1,13 +1,26 @@
 package InvoiceBot.llm;
 
 import okhttp3.*;
+import okio.BufferedSource;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /* 
@@ -34,18 +47,40 @@ IF COMMUNICATION WITH THE LOCAL LLM API FAILS, PLEASE CHECK THE FOLLOWING:
 @Component
 public class LlmClient {
 
-    private final String baseUrl;
+    private final EndpointBalancer balancer;
     private final String modelName;
     private final OkHttpClient client;
+    private String fastModel;
+    private String escalationModel;
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private LlmResponseCache responseCache;
+    private boolean streamingEnabled;
+    private boolean structuredOutputEnabled;
+    private boolean promptCacheEnabled;
+    private final PrefillStats prefillStats = new PrefillStats();
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final double TEMPERATURE = 0.1;
+    // Chunks, die nach dem vollständigen JSON höchstens noch auf die Prefill-Statistik gewartet wird
+    private static final int STATS_DRAIN_CHUNKS = 16;
+    private static final String SYSTEM_PROMPT = "You are a highly accurate JSON extractor for invoices. Output valid JSON only. The company name is never 'UnitPlus InnoInvest GmbH' but most likely or a vendor like 'Zoom', 'Figma', 'Google Cloud'. Extract the exact company name from the text. For amounts, extract the numerical value and the currency symbol (e.g., '111.75 €' or '98.34'). If a net amount is missing but the gross amount and tax are present, calculate the net amount (Gross - Tax). If the invoice is from Finax, the company name is 'Finax o.c.p., a.s., Zweigniederlassung'.";
 
+    /**
+     * @param baseUrl ein oder mehrere OpenAI-kompatible Server, kommagetrennt
+     *                (z.B. "http://127.0.0.1:1234, http://192.168.1.20:1234")
+     */
     public LlmClient(@Value("${llm.base-url:http://127.0.0.1:1234}") String baseUrl,
                      @Value("${llm.model:meta-llama-3.1-8b-instruct}") String modelName) {
-        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.balancer = new EndpointBalancer(EndpointBalancer.parse(baseUrl));
         this.modelName = modelName;
         
+        // Standard-Dispatcher erlaubt nur 5 parallele Requests pro Host - zu wenig für Async-Batches
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(64);
+        dispatcher.setMaxRequestsPerHost(64);
+        
         // OkHttp Client mit großzügigen Timeouts
         this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
                 .connectTimeout(10, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(120, TimeUnit.SECONDS)
@@ -53,79 +88,766 @@ public class LlmClient {
                 .build();
         
         System.out.println("✅ LlmClient initialisiert:");
-        System.out.println("   URL: " + this.baseUrl);
+        System.out.println("   URL: " + String.join(", ", EndpointBalancer.parse(baseUrl)));
         System.out.println("   Model: " + this.modelName);
     }
 
+    /**
+     * Optionaler adaptiver Limiter für gleichzeitige Requests.
+     * Ohne Limiter werden alle Requests sofort gesendet.
+     */
+    @Autowired(required = false)
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public EndpointBalancer getEndpointBalancer() {
+        return balancer;
+    }
+
+    /**
+     * Ob der Server gerade mindestens {@code slots} freie Slots hat (ohne Limiter unbekannt -> false).
+     */
+    public boolean hasSpareSlots(int slots) {
+        return concurrencyLimiter != null && concurrencyLimiter.getAvailable() >= slots;
+    }
+
+    /**
+     * Optionaler Festplatten-Cache für Antworten. Identische Requests werden nicht erneut gesendet.
+     */
+    @Autowired(required = false)
+    public void setResponseCache(LlmResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public LlmResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Aktiviert den Streaming-Modus für {@link LlmExtractor} (SSE mit vorzeitigem Abbruch).
+     */
+    @Value("${llm.streaming:false}")
+    public void setStreamingEnabled(boolean streamingEnabled) {
+        this.streamingEnabled = streamingEnabled;
+    }
+
+    public boolean isStreamingEnabled() {
+        return streamingEnabled;
+    }
+
+    /**
+     * Sendet bei Prompts mit Schema ein "response_format" (JSON-Schema), damit der Server
+     * nur gültiges JSON in der erwarteten Struktur erzeugen kann.
+     */
+    @Value("${llm.structured-output:false}")
+    public void setStructuredOutputEnabled(boolean structuredOutputEnabled) {
+        this.structuredOutputEnabled = structuredOutputEnabled;
+    }
+
+    public boolean isStructuredOutputEnabled() {
+        return structuredOutputEnabled;
+    }
+
+    /**
+     * Sendet "cache_prompt": der Server (llama.cpp) behält den KV-Cache des Prompts und berechnet beim
+     * nächsten Request nur den Teil nach dem gemeinsamen Prefix neu (System-Prompt + statische Anweisungen).
+     */
+    @Value("${llm.cache-prompt:false}")
+    public void setPromptCacheEnabled(boolean promptCacheEnabled) {
+        this.promptCacheEnabled = promptCacheEnabled;
+    }
+
+    public boolean isPromptCacheEnabled() {
+        return promptCacheEnabled;
+    }
+
+    public PrefillStats getPrefillStats() {
+        return prefillStats;
+    }
+
+    /**
+     * Kleines, schnelles Modell für Stufe 1 (leer = {@code llm.model}).
+     * Die meisten Rechnungen sind nach Stufe 1 fertig - hier zählt die Latenz.
+     */
+    @Value("${llm.model.fast:}")
+    public void setFastModel(String fastModel) {
+        this.fastModel = fastModel;
+    }
+
+    /**
+     * Größeres Modell für die Eskalationsstufen 2-4 (leer = {@code llm.model}).
+     */
+    @Value("${llm.model.escalation:}")
+    public void setEscalationModel(String escalationModel) {
+        this.escalationModel = escalationModel;
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public String getFastModel() {
+        return resolveModel(fastModel);
+    }
+
+    public String getEscalationModel() {
+        return resolveModel(escalationModel);
+    }
+
+    /**
+     * Alle konfigurierten Modelle ohne Duplikate (für Verfügbarkeitsprüfung und Warm-up).
+     */
+    public Set<String> getConfiguredModels() {
+        Set<String> models = new LinkedHashSet<>();
+        models.add(getFastModel());
+        models.add(getEscalationModel());
+        return models;
+    }
+
     public String sendPrompt(String prompt) throws Exception {
+        return sendPrompt(prompt, null);
+    }
+
+    /**
+     * Blockierender Request mit optionalem Antwort-Schema.
+     */
+    public String sendPrompt(String prompt, ResponseSchema schema) throws Exception {
+        return sendPrompt(prompt, schema, null);
+    }
+
+    /**
+     * Blockierender Request an ein bestimmtes Modell.
+     *
+     * @param model Modellname oder null für {@code llm.model}
+     */
+    public String sendPrompt(String prompt, ResponseSchema schema, String model) throws Exception {
+        String targetModel = resolveModel(model);
+        String cacheKey = cacheKey(targetModel, prompt, schema);
+        Optional<String> cached = lookupCache(targetModel, cacheKey);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        AdaptiveConcurrencyLimiter.Permit permit = acquirePermit();
+        Set<EndpointBalancer.Endpoint> failed = new HashSet<>();
+
+        while (true) {
+            EndpointBalancer.Endpoint target = acquireEndpoint(failed);
+            Request request = buildChatRequest(target, targetModel, prompt, schema, false);
+            String endpoint = request.url().toString();
+
+            System.out.println("\n===== SENDING TO LLM =====");
+            System.out.println("🌐 URL: " + endpoint);
+            System.out.println("📦 Model: " + targetModel);
+            System.out.println("⏳ Warte auf Antwort (kann 10-30 Sekunden dauern)...");
+
+            long startTime = System.currentTimeMillis();
+
+            try (Response response = client.newCall(request).execute()) {
+                String content = readChatResponse(response, startTime);
+                balancer.release(target, System.currentTimeMillis() - startTime, false);
+                recordOutcome(permit, null);
+                storeInCache(targetModel, cacheKey, content);
+                return content;
+            } catch (IOException e) {
+                balancer.release(target, System.currentTimeMillis() - startTime, true);
+                if (failOver(target, failed, e)) {
+                    continue;
+                }
+                recordOutcome(permit, e);
+                logConnectionError(e);
+                e.printStackTrace();
+                throw new RuntimeException("Verbindungsfehler zum LLM Server auf " + endpoint, e);
+            } catch (RuntimeException e) {
+                boolean overload = e instanceof LlmHttpException httpError && httpError.isOverload();
+                balancer.release(target, System.currentTimeMillis() - startTime, overload);
+                if (overload && failOver(target, failed, e)) {
+                    continue;
+                }
+                recordOutcome(permit, e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Streaming-Variante (Server-Sent Events): Die Antwort wird inkrementell gelesen und die
+     * Verbindung geschlossen, sobald das JSON-Objekt vollständig ist bzw. alle geforderten
+     * Felder vorhanden sind. Spart die Generierung nachfolgender Tokens.
+     *
+     * Streaming variant: closes the connection as soon as the JSON object is complete.
+     *
+     * @param requiredFields Felder, nach denen abgebrochen werden darf (leer = nur schließende Klammer)
+     */
+    public String sendPromptStreaming(String prompt, Collection<String> requiredFields) throws Exception {
+        return sendPromptStreaming(prompt, null, requiredFields);
+    }
+
+    /**
+     * Streaming mit Antwort-Schema; abgebrochen wird nach den Pflichtfeldern des Schemas.
+     */
+    public String sendPromptStreaming(String prompt, ResponseSchema schema) throws Exception {
+        return sendPromptStreaming(prompt, schema, schema.getRequiredFields(), null);
+    }
+
+    /**
+     * Streaming mit Antwort-Schema an ein bestimmtes Modell (null = {@code llm.model}).
+     */
+    public String sendPromptStreaming(String prompt, ResponseSchema schema, String model) throws Exception {
+        return sendPromptStreaming(prompt, schema, schema.getRequiredFields(), model);
+    }
+
+    public String sendPromptStreaming(String prompt, ResponseSchema schema,
+                                      Collection<String> requiredFields) throws Exception {
+        return sendPromptStreaming(prompt, schema, requiredFields, null);
+    }
+
+    public String sendPromptStreaming(String prompt, ResponseSchema schema,
+                                      Collection<String> requiredFields, String model) throws Exception {
+        String targetModel = resolveModel(model);
+        String cacheKey = cacheKey(targetModel, prompt, schema);
+        Optional<String> cached = lookupCache(targetModel, cacheKey);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        AdaptiveConcurrencyLimiter.Permit permit = acquirePermit();
+        Set<EndpointBalancer.Endpoint> failed = new HashSet<>();
+
+        while (true) {
+            EndpointBalancer.Endpoint target = acquireEndpoint(failed);
+            Request request = buildChatRequest(target, targetModel, prompt, schema, true);
+            String endpoint = request.url().toString();
+
+            System.out.println("\n===== STREAMING TO LLM =====");
+            System.out.println("🌐 URL: " + endpoint);
+            System.out.println("📦 Model: " + targetModel);
+
+            long startTime = System.currentTimeMillis();
+            Call call = client.newCall(request);
+            StreamingJsonCollector collector = new StreamingJsonCollector(requiredFields);
+            PrefillStats.Sample prefill = null;
+
+            try (Response response = call.execute()) {
+                if (!response.isSuccessful()) {
+                    String errorBody = response.body() != null ? response.body().string() : "No response body";
+                    System.err.println("❌ ERROR Response: " + errorBody);
+                    throw new LlmHttpException(response.code(), errorBody);
+                }
+
+                BufferedSource source = response.body().source();
+                boolean streamEnded = true;
+                String line;
+                while ((line = source.readUtf8Line()) != null) {
+                    if (!line.startsWith("data:")) {
+                        continue; // Leerzeilen, Kommentare, "event:"-Zeilen
+                    }
+                    String data = line.substring(5).trim();
+                    if (data.equals("[DONE]")) {
+                        break;
+                    }
+                    JSONObject chunk = parseChunk(data);
+                    if (chunk == null) {
+                        continue;
+                    }
+                    // llama.cpp meldet "timings" (mit timings_per_token in jedem Chunk), OpenAI-kompatible Server "usage" am Ende
+                    PrefillStats.Sample sample = PrefillStats.parse(chunk);
+                    if (sample != null) {
+                        prefill = sample;
+                    }
+                    if (collector.append(extractDelta(chunk))) {
+                        streamEnded = false;
+                        break;
+                    }
+                }
+                if (!streamEnded) {
+                    if (prefill == null) {
+                        prefill = drainForStats(source);
+                    }
+                    // Rest der Generierung interessiert nicht mehr -> Verbindung schließen
+                    call.cancel();
+                }
+
+                long duration = System.currentTimeMillis() - startTime;
+                System.out.println("⏱️ Stream beendet nach: " + duration + "ms (" + collector.getReceivedChars() + " Zeichen)");
+                if (collector.isClosedEarly()) {
+                    System.out.println("✂️ Vorzeitig abgebrochen - alle Felder vorhanden");
+                }
+                if (prefill != null) {
+                    recordPrefill(prefill);
+                }
+
+                if (!collector.isComplete()) {
+                    // Abgeschnittenes Objekt (max_tokens, [DONE] mitten im JSON) nie zurückgeben oder cachen
+                    throw new IllegalStateException("Stream endete ohne vollständiges JSON-Objekt ("
+                        + collector.getReceivedChars() + " Zeichen)");
+                }
+
+                String content = cleanJsonResponse(collector.getResult());
+                balancer.release(target, duration, false);
+                recordOutcome(permit, null);
+                storeInCache(targetModel, cacheKey, content);
+                return content;
+
+            } catch (IOException e) {
+                // Abbruch mitten im Stream: Request komplett auf dem nächsten Server wiederholen
+                balancer.release(target, System.currentTimeMillis() - startTime, true);
+                if (failOver(target, failed, e)) {
+                    continue;
+                }
+                recordOutcome(permit, e);
+                logConnectionError(e);
+                throw new RuntimeException("Verbindungsfehler zum LLM Server auf " + endpoint, e);
+            } catch (RuntimeException e) {
+                boolean overload = e instanceof LlmHttpException httpError && httpError.isOverload();
+                balancer.release(target, System.currentTimeMillis() - startTime, overload);
+                if (overload && failOver(target, failed, e)) {
+                    continue;
+                }
+                recordOutcome(permit, e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Liest nach dem vollständigen JSON noch wenige Chunks, um den Statistik-Chunk ("usage"/"timings")
+     * abzuwarten, den der Server erst am Ende sendet. Nach {@link #STATS_DRAIN_CHUNKS} Chunks wird aufgegeben,
+     * damit eine lange Nachrede des Modells den Abbruch nicht aufhebt.
+     *
+     * @return Messwerte oder null, wenn sie nicht rechtzeitig kamen
+     */
+    private PrefillStats.Sample drainForStats(BufferedSource source) {
+        try {
+            int chunks = 0;
+            String line;
+            while (chunks < STATS_DRAIN_CHUNKS && (line = source.readUtf8Line()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if (data.equals("[DONE]")) {
+                    return null;
+                }
+                chunks++;
+                JSONObject chunk = parseChunk(data);
+                PrefillStats.Sample sample = chunk != null ? PrefillStats.parse(chunk) : null;
+                if (sample != null) {
+                    return sample;
+                }
+            }
+        } catch (IOException e) {
+            // Antwort ist bereits vollständig - fehlende Statistik ist kein Fehler
+        }
+        return null;
+    }
+
+    private JSONObject parseChunk(String data) {
+        try {
+            return new JSONObject(data);
+        } catch (Exception e) {
+            System.err.println("⚠️ Ungültiger Stream-Chunk: " + data);
+            return null;
+        }
+    }
+
+    /**
+     * Liest den Text-Delta aus einem SSE-Chunk ({"choices":[{"delta":{"content":"..."}}]}).
+     */
+    private String extractDelta(JSONObject chunk) {
+        JSONArray choices = chunk.optJSONArray("choices");
+        if (choices == null || choices.length() == 0) {
+            return "";
+        }
+        JSONObject delta = choices.getJSONObject(0).optJSONObject("delta");
+        return delta != null ? delta.optString("content", "") : "";
+    }
+
+    /**
+     * Nicht-blockierende Variante von {@link #sendPrompt(String)} auf Basis von OkHttp enqueue().
+     * Es wird kein Thread für die Dauer der Generierung belegt.
+     * Ein cancel() auf dem Future bricht auch den HTTP-Call ab.
+     *
+     * Non-blocking variant built on OkHttp enqueue(). Cancelling the future cancels the HTTP call.
+     */
+    public CompletableFuture<String> sendPromptAsync(String prompt) {
+        return sendPromptAsync(prompt, (ResponseSchema) null);
+    }
+
+    /**
+     * Asynchroner Request mit optionalem Antwort-Schema.
+     */
+    public CompletableFuture<String> sendPromptAsync(String prompt, ResponseSchema schema) {
+        return sendPromptAsync(prompt, schema, null);
+    }
+
+    /**
+     * Asynchroner Request an ein bestimmtes Modell (null = {@code llm.model}).
+     */
+    public CompletableFuture<String> sendPromptAsync(String prompt, ResponseSchema schema, String model) {
+        String targetModel = resolveModel(model);
+        String cacheKey = cacheKey(targetModel, prompt, schema);
+        Optional<String> cached = lookupCache(targetModel, cacheKey);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached.get());
+        }
+
+        CompletableFuture<String> result = sendUncachedAsync(targetModel, prompt, schema);
+        result.thenAccept(content -> storeInCache(targetModel, cacheKey, content));
+        return result;
+    }
+
+    /**
+     * Wie {@link #sendPromptAsync(String)}, aber mit Timeout.
+     * Nach Ablauf wird das Future mit einer TimeoutException beendet und der Call abgebrochen.
+     */
+    public CompletableFuture<String> sendPromptAsync(String prompt, long timeout, TimeUnit unit) {
+        return sendPromptAsync(prompt).orTimeout(timeout, unit);
+    }
+
+    private CompletableFuture<String> sendUncachedAsync(String model, String prompt, ResponseSchema schema) {
+        if (concurrencyLimiter == null) {
+            return dispatchAsync(model, prompt, schema);
+        }
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> permitFuture = concurrencyLimiter.acquire();
+
+        // Abbruch während des Wartens auf einen Slot -> aus der Warteschlange entfernen
+        result.whenComplete((content, error) -> {
+            if (error != null) {
+                permitFuture.cancel(false);
+            }
+        });
+
+        permitFuture.thenAccept(permit -> {
+            if (result.isDone()) {
+                permit.onIgnore();
+                return;
+            }
+            CompletableFuture<String> call = dispatchAsync(model, prompt, schema);
+            result.whenComplete((content, error) -> {
+                if (error instanceof TimeoutException) {
+                    permit.onDropped(); // Timeout zählt als Überlast-Signal
+                }
+                if (error != null) {
+                    call.cancel(false);
+                }
+            });
+            call.whenComplete((content, error) -> {
+                recordOutcome(permit, error);
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(content);
+                }
+            });
+        });
+
+        return result;
+    }
+
+    private CompletableFuture<String> dispatchAsync(String model, String prompt, ResponseSchema schema) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        AtomicReference<Call> currentCall = new AtomicReference<>();
+
+        // Abbruch oder Timeout des Futures -> laufenden HTTP-Call abbrechen (auch nach Failover)
+        future.whenComplete((result, error) -> {
+            Call call = currentCall.get();
+            if (error != null && call != null) {
+                call.cancel();
+            }
+        });
+
+        dispatchAttempt(model, prompt, schema, future, currentCall, new HashSet<>());
+        return future;
+    }
+
+    private void dispatchAttempt(String model, String prompt, ResponseSchema schema, CompletableFuture<String> future,
+                                 AtomicReference<Call> currentCall, Set<EndpointBalancer.Endpoint> failed) {
+        EndpointBalancer.Endpoint target;
+        try {
+            target = acquireEndpoint(failed);
+        } catch (IllegalStateException e) {
+            future.completeExceptionally(e);
+            return;
+        }
+
+        Request request = buildChatRequest(target, model, prompt, schema, false);
+        String endpoint = request.url().toString();
+        Call call = client.newCall(request);
+        currentCall.set(call);
+        if (future.isDone()) {
+            balancer.release(target, 0, false); // während des Failovers abgebrochen
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        System.out.println("📤 Async-Request an " + endpoint + " (" + model + ")");
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call failedCall, IOException e) {
+                boolean cancelled = future.isDone();
+                balancer.release(target, System.currentTimeMillis() - startTime, !cancelled);
+                if (cancelled) {
+                    return;
+                }
+                if (failOver(target, failed, e)) {
+                    dispatchAttempt(model, prompt, schema, future, currentCall, failed);
+                    return;
+                }
+                logConnectionError(e);
+                future.completeExceptionally(
+                    new RuntimeException("Verbindungsfehler zum LLM Server auf " + endpoint, e));
+            }
+
+            @Override
+            public void onResponse(Call completedCall, Response response) {
+                try (response) {
+                    String content = readChatResponse(response, startTime);
+                    balancer.release(target, System.currentTimeMillis() - startTime, false);
+                    future.complete(content);
+                } catch (LlmHttpException e) {
+                    balancer.release(target, System.currentTimeMillis() - startTime, e.isOverload());
+                    if (e.isOverload() && !future.isDone() && failOver(target, failed, e)) {
+                        dispatchAttempt(model, prompt, schema, future, currentCall, failed);
+                        return;
+                    }
+                    future.completeExceptionally(e);
+                } catch (Exception e) {
+                    balancer.release(target, System.currentTimeMillis() - startTime, false);
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    private Request buildChatRequest(EndpointBalancer.Endpoint target, String model, String prompt,
+                                     ResponseSchema schema, boolean stream) {
         JSONObject requestBody = new JSONObject();
-        requestBody.put("model", modelName);
-        requestBody.put("temperature", 0.1);
+        requestBody.put("model", model);
+        requestBody.put("temperature", TEMPERATURE);
         requestBody.put("max_tokens", 800);
-        requestBody.put("stream", false);
+        requestBody.put("stream", stream);
 
         JSONArray messages = new JSONArray();
         messages.put(new JSONObject()
             .put("role", "system")
-            .put("content", "You are a highly accurate JSON extractor for invoices. Output valid JSON only. The company name is never 'UnitPlus InnoInvest GmbH' but most likely or a vendor like 'Zoom', 'Figma', 'Google Cloud'. Extract the exact company name from the text. For amounts, extract the numerical value and the currency symbol (e.g., '111.75 €' or '98.34'). If a net amount is missing but the gross amount and tax are present, calculate the net amount (Gross - Tax). If the invoice is from Finax, the company name is 'Finax o.c.p., a.s., Zweigniederlassung'."));
+            .put("content", SYSTEM_PROMPT));
         messages.put(new JSONObject()
             .put("role", "user")
             .put("content", prompt));
         requestBody.put("messages", messages);
 
-        String endpoint = baseUrl + "/v1/chat/completions";
-
-        System.out.println("\n===== SENDING TO LLM =====");
-        System.out.println("🌐 URL: " + endpoint);
-        System.out.println("📦 Model: " + modelName);
-        System.out.println("⏳ Warte auf Antwort (kann 10-30 Sekunden dauern)...");
+        if (structuredOutputEnabled && schema != null) {
+            requestBody.put("response_format", schema.toResponseFormat());
+        }
+        if (promptCacheEnabled) {
+            requestBody.put("cache_prompt", true);
+        }
+        if (stream) {
+            // Prefill-Statistik auch im Stream: OpenAI-kompatibel als "usage" im letzten Chunk,
+            // llama.cpp als "timings" in jedem Chunk (dann ist kein Weiterlesen nach dem JSON nötig)
+            requestBody.put("stream_options", new JSONObject().put("include_usage", true));
+            requestBody.put("timings_per_token", true);
+        }
 
         RequestBody body = RequestBody.create(requestBody.toString(), JSON);
-        Request request = new Request.Builder()
-                .url(endpoint)
+        return new Request.Builder()
+                .url(target.getBaseUrl() + "/v1/chat/completions")
                 .post(body)
                 .addHeader("Content-Type", "application/json")
                 .build();
+    }
 
-        long startTime = System.currentTimeMillis();
+    private String readChatResponse(Response response, long startTime) throws IOException {
+        long duration = System.currentTimeMillis() - startTime;
+        int statusCode = response.code();
 
-        try (Response response = client.newCall(request).execute()) {
-            
-            long duration = System.currentTimeMillis() - startTime;
-            int statusCode = response.code();
-            
-            System.out.println("⏱️ Antwort erhalten nach: " + duration + "ms");
-            System.out.println("📥 Status Code: " + statusCode);
-
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "No response body";
-                System.err.println("❌ ERROR Response: " + errorBody);
-                throw new RuntimeException("LLM Error " + statusCode + ": " + errorBody);
-            }
-
-            String responseBody = response.body().string();
-            System.out.println("📥 Response Length: " + responseBody.length() + " chars");
-
-            JSONObject responseObj = new JSONObject(responseBody);
-            String content = responseObj.getJSONArray("choices")
-                    .getJSONObject(0)
-                    .getJSONObject("message")
-                    .getString("content");
-
-            System.out.println("✅ LLM ANSWER RECEIVED");
-            System.out.println("===========================\n");
-            
-            return cleanJsonResponse(content);
-            
-        } catch (IOException e) {
-            System.err.println("❌ IO ERROR: " + e.getMessage());
-            System.err.println("   Mögliche Ursachen:");
-            System.err.println("   - LM Studio Server läuft nicht");
-            System.err.println("   - Falscher Port (erwartet: 1234)");
-            System.err.println("   - Firewall blockiert Verbindung");
-            e.printStackTrace();
-            throw new RuntimeException("Verbindungsfehler zum LLM Server auf " + endpoint, e);
+        System.out.println("⏱️ Antwort erhalten nach: " + duration + "ms");
+        System.out.println("📥 Status Code: " + statusCode);
+
+        if (!response.isSuccessful()) {
+            String errorBody = response.body() != null ? response.body().string() : "No response body";
+            System.err.println("❌ ERROR Response: " + errorBody);
+            throw new LlmHttpException(statusCode, errorBody);
+        }
+
+        String responseBody = response.body().string();
+        System.out.println("📥 Response Length: " + responseBody.length() + " chars");
+
+        JSONObject responseObj = new JSONObject(responseBody);
+        PrefillStats.Sample prefill = PrefillStats.parse(responseObj);
+        if (prefill != null) {
+            recordPrefill(prefill);
         }
+        String content = responseObj.getJSONArray("choices")
+                .getJSONObject(0)
+                .getJSONObject("message")
+                .getString("content");
+
+        System.out.println("✅ LLM ANSWER RECEIVED");
+        System.out.println("===========================\n");
+
+        return cleanJsonResponse(content);
+    }
+
+    private void recordPrefill(PrefillStats.Sample sample) {
+        prefillStats.record(sample);
+        if (sample.getCachedTokens() > 0) {
+            System.out.println("⚡ Prefix-Cache: " + sample.getCachedTokens() + "/" + sample.getPromptTokens()
+                + " Prompt-Tokens wiederverwendet"
+                + (sample.getPrefillMs() >= 0 ? " (~" + Math.round(sample.getSavedMs()) + "ms Prefill gespart)" : ""));
+        } else if (sample.getPrefillMs() >= 0) {
+            System.out.println("🧮 Prefill: " + sample.getPromptTokens() + " Tokens in "
+                + Math.round(sample.getPrefillMs()) + "ms (kein Prefix-Cache-Treffer)");
+        }
+    }
+
+    /**
+     * Wählt den nächsten Server; fällige Health-Probes ungesunder Server laufen nebenbei asynchron.
+     */
+    private EndpointBalancer.Endpoint acquireEndpoint(Set<EndpointBalancer.Endpoint> failed) {
+        for (EndpointBalancer.Endpoint endpoint : balancer.dueForProbe()) {
+            probeAsync(endpoint);
+        }
+        EndpointBalancer.Endpoint target = balancer.acquire(failed);
+        if (target == null) {
+            throw new IllegalStateException("Kein LLM-Endpunkt verfügbar");
+        }
+        return target;
+    }
+
+    /**
+     * Prüft, ob der Request auf einem anderen Server wiederholt werden kann - die Rechnung geht nicht verloren.
+     */
+    private boolean failOver(EndpointBalancer.Endpoint target, Set<EndpointBalancer.Endpoint> failed, Exception error) {
+        failed.add(target);
+        if (!balancer.hasAlternative(failed)) {
+            return false;
+        }
+        System.err.println("🔀 Failover: " + target + " fehlgeschlagen (" + error.getMessage() + ") - nächster Server");
+        return true;
+    }
+
+    private Request modelsRequest(EndpointBalancer.Endpoint endpoint) {
+        return new Request.Builder()
+                .url(endpoint.getBaseUrl() + "/v1/models")
+                .get()
+                .build();
+    }
+
+    private void probeAsync(EndpointBalancer.Endpoint endpoint) {
+        client.newCall(modelsRequest(endpoint)).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                balancer.markUnhealthy(endpoint);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    if (response.isSuccessful()) {
+                        balancer.markHealthy(endpoint);
+                    } else {
+                        balancer.markUnhealthy(endpoint);
+                    }
+                }
+            }
+        });
+    }
+
+    private String resolveModel(String model) {
+        return model == null || model.isBlank() ? modelName : model.trim();
+    }
+
+    private String cacheKey(String model, String prompt, ResponseSchema schema) {
+        // Mit Schema kann die Antwort anders ausfallen -> Schema-Name gehört zum Schlüssel
+        String format = structuredOutputEnabled && schema != null ? schema.getName() : null;
+        return LlmResponseCache.key(model, TEMPERATURE, SYSTEM_PROMPT, prompt, format);
+    }
+
+    private Optional<String> lookupCache(String model, String cacheKey) {
+        if (responseCache == null) {
+            return Optional.empty();
+        }
+        Optional<String> cached = responseCache.get(model, cacheKey);
+        if (cached.isPresent()) {
+            System.out.println("💾 LLM-Cache-Treffer (" + model + ") - kein Request nötig");
+        }
+        return cached;
+    }
+
+    /**
+     * Nur gültige JSON-Objekte cachen - eine leere oder kaputte Antwort würde sonst bei jedem
+     * erneuten Lauf von der Platte kommen und der Retry bekäme nie eine neue Generierung.
+     */
+    private void storeInCache(String model, String cacheKey, String content) {
+        if (responseCache == null) {
+            return;
+        }
+        try {
+            new JSONObject(content);
+        } catch (Exception e) {
+            System.err.println("⚠️ Antwort ist kein JSON-Objekt - wird nicht gecacht");
+            return;
+        }
+        responseCache.put(model, cacheKey, content);
+    }
+
+    private AdaptiveConcurrencyLimiter.Permit acquirePermit() throws InterruptedException {
+        if (concurrencyLimiter == null) {
+            return null;
+        }
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> permitFuture = concurrencyLimiter.acquire();
+        try {
+            return permitFuture.get();
+        } catch (InterruptedException e) {
+            // Falls der Slot gleichzeitig vergeben wurde, sofort wieder freigeben
+            if (!permitFuture.cancel(false)) {
+                permitFuture.join().onIgnore();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Konnte keinen LLM-Slot belegen", e.getCause());
+        }
+    }
+
+    /**
+     * Meldet das Ergebnis eines Requests an den Limiter.
+     * Verbindungsfehler, Timeouts und Überlast (429/5xx) senken das Limit.
+     */
+    private void recordOutcome(AdaptiveConcurrencyLimiter.Permit permit, Throwable error) {
+        if (permit == null) {
+            return;
+        }
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause == null) {
+            permit.onSuccess();
+        } else if (cause instanceof CancellationException) {
+            permit.onIgnore();
+        } else if (cause instanceof LlmHttpException httpError && !httpError.isOverload()) {
+            permit.onIgnore();
+        } else if (cause instanceof IOException || cause instanceof LlmHttpException
+                || (cause instanceof RuntimeException && cause.getCause() instanceof IOException)) {
+            permit.onDropped();
+        } else {
+            permit.onIgnore();
+        }
+    }
+
+    private void logConnectionError(IOException e) {
+        System.err.println("❌ IO ERROR: " + e.getMessage());
+        System.err.println("   Mögliche Ursachen:");
+        System.err.println("   - LM Studio Server läuft nicht");
+        System.err.println("   - Falscher Port (erwartet: 1234)");
+        System.err.println("   - Firewall blockiert Verbindung");
     }
 
     private String cleanJsonResponse(String response) {
@@ -136,18 +858,99 @@ public class LlmClient {
         return cleaned.trim();
     }
     
+    /**
+     * Prüft alle Server über /v1/models und aktualisiert ihren Gesundheitsstatus.
+     *
+     * @return true, wenn mindestens ein Server erreichbar ist
+     */
     public boolean isServerReachable() {
-        try {
+        boolean anyReachable = false;
+        for (EndpointBalancer.Endpoint endpoint : balancer.getEndpoints()) {
+            boolean reachable;
+            try (Response response = client.newCall(modelsRequest(endpoint)).execute()) {
+                reachable = response.isSuccessful();
+            } catch (Exception e) {
+                reachable = false;
+            }
+            if (reachable) {
+                balancer.markHealthy(endpoint);
+                anyReachable = true;
+            } else {
+                balancer.markUnhealthy(endpoint);
+            }
+        }
+        return anyReachable;
+    }
+
+    /**
+     * Prüft, ob ein gesunder Server das Modell in /v1/models anbietet.
+     */
+    public boolean isModelAvailable(String model) {
+        for (EndpointBalancer.Endpoint endpoint : balancer.getEndpoints()) {
+            if (!endpoint.isHealthy()) {
+                continue;
+            }
+            try (Response response = client.newCall(modelsRequest(endpoint)).execute()) {
+                if (!response.isSuccessful() || response.body() == null) {
+                    continue;
+                }
+                JSONArray models = new JSONObject(response.body().string()).optJSONArray("data");
+                for (int i = 0; models != null && i < models.length(); i++) {
+                    if (model.equals(models.getJSONObject(i).optString("id"))) {
+                        return true;
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("⚠️ Modell-Liste von " + endpoint + " nicht lesbar: " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Warm-up: ein Request mit einem einzigen Token pro gesundem Server, damit das Modell geladen
+     * ist, bevor die erste Rechnung kommt (LM Studio lädt Modelle erst beim ersten Request).
+     * Mit Prompt-Cache liegt danach auch der System-Prompt bereits im KV-Cache.
+     *
+     * @return true, wenn mindestens ein Server das Modell geladen hat
+     */
+    public boolean warmUp(String model) {
+        JSONObject requestBody = new JSONObject();
+        requestBody.put("model", model);
+        requestBody.put("max_tokens", 1);
+        requestBody.put("messages", new JSONArray()
+            .put(new JSONObject()
+                .put("role", "system")
+                .put("content", SYSTEM_PROMPT))
+            .put(new JSONObject()
+                .put("role", "user")
+                .put("content", "OK")));
+        if (promptCacheEnabled) {
+            requestBody.put("cache_prompt", true);
+        }
+
+        boolean warmedUp = false;
+        for (EndpointBalancer.Endpoint endpoint : balancer.getEndpoints()) {
+            if (!endpoint.isHealthy()) {
+                continue;
+            }
             Request request = new Request.Builder()
-                    .url(baseUrl + "/v1/models")
-                    .get()
+                    .url(endpoint.getBaseUrl() + "/v1/chat/completions")
+                    .post(RequestBody.create(requestBody.toString(), JSON))
                     .build();
-            
+            long startTime = System.currentTimeMillis();
             try (Response response = client.newCall(request).execute()) {
-                return response.isSuccessful();
+                if (response.isSuccessful()) {
+                    warmedUp = true;
+                    System.out.println("🔥 Warm-up " + model + " auf " + endpoint + ": "
+                        + (System.currentTimeMillis() - startTime) + "ms");
+                } else {
+                    System.err.println("⚠️ Warm-up " + model + " auf " + endpoint + " fehlgeschlagen: HTTP " + response.code());
+                }
+            } catch (IOException e) {
+                System.err.println("⚠️ Warm-up " + model + " auf " + endpoint + " fehlgeschlagen: " + e.getMessage());
             }
-        } catch (Exception e) {
-            return false;
         }
+        return warmedUp;
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,14 @@
 package InvoiceBot.llm;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import InvoiceBot.model.InvoiceData;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 
 
@@ -15,6 +21,10 @@ import InvoiceBot.model.InvoiceData;
 * Main Prompt for invoice data extraction.
 * Uses clear instructions and examples for improved accuracy.
 * 
+* Aufbau aller Prompts: statische Anweisungen zuerst (byte-identisch für jede Rechnung, damit der Server
+* den Prefix aus dem KV-Cache wiederverwenden kann), danach variable Werte, der Rechnungstext immer zuletzt.
+* Prompt layout: static instructions first, per-invoice values after, invoice text always last (prefix caching).
+* 
     
 
 
@@ -22,17 +32,44 @@ import InvoiceBot.model.InvoiceData;
 @Service
 public class LlmExtractor {
 
+    // Kurze Anweisungen für die Einzelfeld-Prompts (Stufe 2 gezielt)
+    private static final Map<String, String> FIELD_HINTS = Map.of(
+        "company_name", "the VENDOR/SELLER company that is BILLING (sender, top of the document), NOT the recipient",
+        "invoice_number", "the invoice number (Rechnungsnummer, Rechnung Nr., Invoice #)",
+        "invoice_date", "the date the invoice was issued (Rechnungsdatum), NOT due date or service period",
+        "net_amount", "the total amount BEFORE tax (Netto, Summe netto, Zwischensumme, Subtotal) with currency symbol",
+        "gross_amount", "the total amount AFTER tax (Brutto, Gesamtbetrag, Rechnungsbetrag, Total) with currency symbol",
+        "service_period", "the service period (Leistungszeitraum) as 'start - end'");
+
     private final LlmClient client;
+    private final RelevanceWindow window;
 
     public LlmExtractor(LlmClient client) {
+        this(client, RelevanceWindow.withDefaults());
+    }
+
+    @Autowired
+    public LlmExtractor(LlmClient client, RelevanceWindow window) {
         this.client = client;
+        this.window = window;
     }
 
     /**
      * STUFE 1: Standard-Extraktion (funktioniert bei ~80%)
      */
     public String extract(String text) throws Exception {
-        String truncated = text.length() > 2000 ? text.substring(0, 2000) : text;
+        return send(buildExtractPrompt(text), ResponseSchema.EXTRACTION, client.getFastModel());
+    }
+
+    /**
+     * STUFE 1 asynchron - blockiert keinen Thread während der Generierung.
+     */
+    public CompletableFuture<String> extractAsync(String text) {
+        return client.sendPromptAsync(buildExtractPrompt(text), ResponseSchema.EXTRACTION, client.getFastModel());
+    }
+
+    private String buildExtractPrompt(String text) {
+        String truncated = fastWindow().apply(text);
         
         String prompt = """
         Extract invoice data into this strict JSON format:
@@ -52,14 +89,98 @@ public class LlmExtractor {
         %s
         """.formatted(truncated.replace("\"", "'"));
 
-        return client.sendPrompt(prompt);
+        return prompt;
     }
     
+    /**
+     * STUFE 1 (gezielt): Fragt nur die Felder ab, die die regelbasierte Vor-Extraktion
+     * nicht gefunden hat - kürzere Antwort, weniger generierte Tokens.
+     *
+     * @param fields JSON-Feldnamen aus {@link LlmResponseParser#INVOICE_FIELDS}
+     */
+    public String extractFields(String text, List<String> fields) throws Exception {
+        String truncated = fastWindow().apply(text);
+
+        JSONObject template = new JSONObject();
+        fields.forEach(field -> template.put(field, ""));
+
+        String prompt = """
+        Extract ONLY the requested invoice fields into the strict JSON format given below.
+        
+        IMPORTANT RULES:
+        - company_name: the VENDOR/SELLER (who is BILLING), NOT the buyer
+        - net_amount: amount WITHOUT tax (Netto, Subtotal); gross_amount: amount WITH tax (Brutto, Total)
+        - Include currency symbol (€, $, etc.)
+        - If a field is missing, use null
+        
+        REQUESTED FIELDS (JSON format):
+        %s
+        
+        INVOICE TEXT:
+        %s
+        """.formatted(template.toString(), truncated.replace("\"", "'"));
+
+        return send(prompt, ResponseSchema.forFields("invoice_fields", fields), client.getFastModel());
+    }
+
+    /**
+     * STUFE 2 (gezielt): Kurzer Prompt für genau ein Feld, asynchron - mehrere Felder laufen parallel.
+     * Die Antwort ist ein JSON-Objekt mit nur diesem Feld, z.B. {"net_amount":"100,00€"}.
+     */
+    public CompletableFuture<String> extractFieldAsync(String text, String field) {
+        String hint = FIELD_HINTS.getOrDefault(field, field);
+
+        String prompt = """
+        Find exactly ONE value in this invoice.
+        Respond with JSON containing only the requested field: {"<field>": "value"} - use null if not found.
+        
+        FIELD "%s": %s
+        
+        INVOICE TEXT:
+        %s
+        """.formatted(field, hint, escalationWindow().apply(text).replace("\"", "'"));
+
+        return client.sendPromptAsync(prompt, ResponseSchema.forFields("invoice_field_" + field, List.of(field)),
+            client.getEscalationModel());
+    }
+
     /**
      * STUFE 2: Retry mit detailliertem Prompt (fängt weitere ~15% ab)
      */
     public String extractWithRetry(String text) throws Exception {
-        String truncated = text.length() > 2000 ? text.substring(0, 2000) : text;
+        return send(buildRetryPrompt(text), ResponseSchema.EXTRACTION, client.getEscalationModel());
+    }
+
+    /**
+     * STUFE 2 asynchron.
+     */
+    public CompletableFuture<String> extractWithRetryAsync(String text) {
+        return client.sendPromptAsync(buildRetryPrompt(text), ResponseSchema.EXTRACTION, client.getEscalationModel());
+    }
+
+    /**
+     * Ob Stufe 1 und 2 gleichzeitig laufen können, ohne anderen Dokumenten Slots wegzunehmen.
+     */
+    public boolean hasSpareSlots(int slots) {
+        return client.hasSpareSlots(slots);
+    }
+
+    /**
+     * Geschätzte Prompt-Tokens von Stufe 1 bzw. 2 (für die Verschwendungs-Statistik der Spekulation).
+     */
+    public int estimatePromptTokens(String text, int stage) {
+        if (stage == 1) {
+            return fastWindow().getEstimator().estimate(buildExtractPrompt(text));
+        }
+        return escalationWindow().getEstimator().estimate(buildRetryPrompt(text));
+    }
+
+    public int estimateTokens(String content) {
+        return content == null ? 0 : window.getEstimator().estimate(content);
+    }
+
+    private String buildRetryPrompt(String text) {
+        String truncated = escalationWindow().apply(text);
         
         String prompt = """
         SECOND ATTEMPT - Extract invoice data more carefully:
@@ -97,7 +218,7 @@ public class LlmExtractor {
         %s
         """.formatted(truncated.replace("\"", "'"));
 
-        return client.sendPrompt(prompt);
+        return prompt;
     }
     
     /**
@@ -105,15 +226,11 @@ public class LlmExtractor {
      * Wird NUR aufgerufen wenn Stufe 1+2 fehlgeschlagen sind.
      */
     public String validateAndRecalculate(String text, String currentNet, String currentGross) throws Exception {
-        String truncated = text.length() > 2500 ? text.substring(0, 2500) : text;
+        String truncated = validationText(text);
         
         String prompt = """
         VALIDATION & RECALCULATION TASK:
         
-        CURRENTLY EXTRACTED (possibly incorrect):
-        - Net Amount: %s
-        - Gross Amount: %s
-        
         YOUR MISSION - HANDLE MIXED TAX RATES CORRECTLY:
         
         STEP 1: Find ALL line items/positions in the invoice table
@@ -133,11 +250,11 @@ public class LlmExtractor {
         EXAMPLE (office discount with mixed rates):
         Line items:
         - Position A: Net 37,96€, Tax 7%% → Gross: 37,96 × 1.07 = 40,62€
-        - Position B: Net 132,02€, Tax 19%% → Gross: 132,02 × 1.19 = 157,04€
+        - Position B: Net 132,02€, Tax 19%% → Gross: 132,02 × 1.19 = 157,10€
         
         Correct calculation:
         - Total Net: 37,96 + 132,02 = 169,98€
-        - Total Gross: 40,62 + 157,04 = 197,66€
+        - Total Gross: 40,62 + 157,10 = 197,72€
         
         WRONG would be: 169,98 × 1.19 = 202,28€ (ignores mixed rates!)
         
@@ -145,7 +262,7 @@ public class LlmExtractor {
         {
           "positions_found": [
             {"net": "37,96€", "tax_rate": "7%%", "gross_calculated": "40,62€"},
-            {"net": "132,02€", "tax_rate": "19%%", "gross_calculated": "157,04€"}
+            {"net": "132,02€", "tax_rate": "19%%", "gross_calculated": "157,10€"}
           ],
           "recalculated_net": "sum of all position nets",
           "recalculated_gross": "sum of all position grosses",
@@ -161,6 +278,10 @@ public class LlmExtractor {
         - confidence = "high" if clear table with tax rate column found
         - confidence = "low" if no clear table structure or no tax rates visible
         
+        CURRENTLY EXTRACTED (possibly incorrect):
+        - Net Amount: %s
+        - Gross Amount: %s
+        
         INVOICE TEXT:
         %s
         """.formatted(
@@ -169,7 +290,7 @@ public class LlmExtractor {
             truncated.replace("\"", "'")
         );
 
-        return client.sendPrompt(prompt);
+        return send(prompt, ResponseSchema.VALIDATION, client.getEscalationModel());
     }
     
     /**
@@ -178,20 +299,12 @@ public class LlmExtractor {
      * LLM prüft kritisch: Stimmen die extrahierten Daten wirklich?
      */
     public String performQualityCheck(String text, InvoiceData extractedData) throws Exception {
-        String truncated = text.length() > 2500 ? text.substring(0, 2500) : text;
+        String truncated = validationText(text);
         
         String prompt = """
         QUALITY CHECK TASK - Critical Review:
         
-        I have extracted the following data from an invoice. Please CRITICALLY review if this extraction is CORRECT.
-        
-        EXTRACTED DATA (to be verified):
-        • Company Name: %s
-        • Invoice Number: %s
-        • Invoice Date: %s
-        • Net Amount: %s
-        • Gross Amount: %s
-        • Service Period: %s
+        I have extracted data from an invoice (see EXTRACTED DATA below). Please CRITICALLY review if this extraction is CORRECT.
         
         YOUR TASK:
         Read the invoice text carefully and check EACH field:
@@ -232,6 +345,14 @@ public class LlmExtractor {
         - confidence = "high" only if you can see clear text to verify against
         - recommendation = "use_corrections" only if you're confident the corrections are right
         
+        EXTRACTED DATA (to be verified):
+        • Company Name: %s
+        • Invoice Number: %s
+        • Invoice Date: %s
+        • Net Amount: %s
+        • Gross Amount: %s
+        • Service Period: %s
+        
         INVOICE TEXT:
         %s
         """.formatted(
@@ -244,6 +365,111 @@ public class LlmExtractor {
             truncated.replace("\"", "'")
         );
 
-        return client.sendPrompt(prompt);
+        return send(prompt, ResponseSchema.QUALITY_CHECK, client.getEscalationModel());
+    }
+
+    /**
+     * STUFE 3+4 kombiniert: Durchrechnung und Qualitätsprüfung in EINEM Aufruf.
+     * Der Rechnungstext wird nur einmal gesendet - halbiert die Roundtrips für die schlechtesten Rechnungen.
+     */
+    public String validateAndCheck(String text, InvoiceData extractedData) throws Exception {
+        String truncated = validationText(text);
+
+        String prompt = """
+        VALIDATION & QUALITY CHECK TASK:
+        
+        I have extracted data from an invoice (see EXTRACTED DATA below, possibly incorrect).
+        
+        PART 1 - RECALCULATION (handle MIXED tax rates correctly):
+        - Find ALL line items/positions and their tax rate ("MwSt", "USt.", "VAT %%")
+        - Group positions by tax rate, sum the net amounts per group
+        - Gross per group = group_net × (1 + tax_rate)
+        - Total Net = sum of group nets, Total Gross = sum of group grosses (NOT net × single_rate!)
+        - Example: 37,96€ @ 7%% + 132,02€ @ 19%% → Net 169,98€, Gross 40,62€ + 157,10€ = 197,72€
+        - calculation_matches = true if totals match the extracted amounts (±1.00€ tolerance)
+        - confidence = "high" only if a clear table with tax rate column was found
+        
+        PART 2 - QUALITY CHECK (be VERY critical, check EACH field):
+        - Company name = the SENDER (who bills), not the recipient
+        - Invoice number exact (no typos, not confused with customer/order numbers)
+        - Invoice date not confused with due date or service period
+        - Net = amount BEFORE tax, Gross = total to pay
+        - all_correct = true ONLY if you're absolutely sure everything is perfect
+        - recommendation = "use_corrections" only if you're confident the corrections are right
+        
+        RESPOND WITH THIS JSON:
+        {
+          "recalculation": {
+            "positions_found": [
+              {"net": "37,96€", "tax_rate": "7%%", "gross_calculated": "40,62€"}
+            ],
+            "recalculated_net": "sum of all position nets",
+            "recalculated_gross": "sum of all position grosses",
+            "has_mixed_tax_rates": true/false,
+            "calculation_matches": true/false,
+            "confidence": "high/medium/low"
+          },
+          "quality_check": {
+            "all_correct": true/false,
+            "issues_found": [
+              {"field": "company_name", "issue": "description", "should_be": "correct value"}
+            ],
+            "confidence": "high/medium/low",
+            "recommendation": "keep_extracted_data" or "use_corrections"
+          }
+        }
+        
+        EXTRACTED DATA:
+        • Company Name: %s
+        • Invoice Number: %s
+        • Invoice Date: %s
+        • Net Amount: %s
+        • Gross Amount: %s
+        • Service Period: %s
+        
+        INVOICE TEXT:
+        %s
+        """.formatted(
+            extractedData.getCompanyName() != null ? extractedData.getCompanyName() : "not found",
+            extractedData.getInvoiceNumber() != null ? extractedData.getInvoiceNumber() : "not found",
+            extractedData.getInvoiceDate() != null ? extractedData.getInvoiceDate() : "not found",
+            extractedData.getNetAmount() != null ? extractedData.getNetAmount() : "not found",
+            extractedData.getGrossAmount() != null ? extractedData.getGrossAmount() : "not found",
+            extractedData.getServicePeriod() != null ? extractedData.getServicePeriod() : "not found",
+            truncated.replace("\"", "'")
+        );
+
+        return send(prompt, ResponseSchema.COMBINED_VALIDATION, client.getEscalationModel());
+    }
+
+    /**
+     * Token-Budget und Schätzer des jeweiligen Modells - das schnelle Modell hat oft weniger Kontext
+     * und einen anderen Tokenizer als das Eskalationsmodell.
+     */
+    private RelevanceWindow fastWindow() {
+        return window.forModel(client.getFastModel());
+    }
+
+    private RelevanceWindow escalationWindow() {
+        return window.forModel(client.getEscalationModel());
+    }
+
+    /**
+     * Validierung/Qualitätsprüfung bekommen 25 % mehr Text als die Extraktion (Positionstabelle).
+     */
+    private String validationText(String text) {
+        RelevanceWindow modelWindow = escalationWindow();
+        return modelWindow.apply(text, modelWindow.getBudgetTokens() * 5 / 4);
+    }
+
+    /**
+     * Sendet den Prompt mit Antwort-Schema an das Modell der Stufe - im Streaming-Modus mit Abbruch,
+     * sobald die erwarteten Felder da sind.
+     */
+    private String send(String prompt, ResponseSchema schema, String model) throws Exception {
+        if (client.isStreamingEnabled()) {
+            return client.sendPromptStreaming(prompt, schema, model);
+        }
+        return client.sendPrompt(prompt, schema, model);
     }
-}
\ No newline at end of file
+}
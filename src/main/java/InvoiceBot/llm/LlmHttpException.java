@@ -0,0 +1,23 @@
+package InvoiceBot.llm;
+
+/**
+ * Fehlerantwort (HTTP-Status != 2xx) des LLM-Servers.
+ * 429 und 5xx gelten als Überlast und senken das Limit des {@link AdaptiveConcurrencyLimiter}.
+ */
+public class LlmHttpException extends RuntimeException {
+
+    private final int statusCode;
+
+    public LlmHttpException(int statusCode, String errorBody) {
+        super("LLM Error " + statusCode + ": " + errorBody);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isOverload() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -0,0 +1,141 @@
+package InvoiceBot.llm;
+
+import InvoiceBot.cache.DiskLruIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+
+/*
+Persistenter Cache für LLM-Antworten auf der Festplatte.
+ * Schlüssel = SHA-256 über Modell, Temperatur, System-Prompt und User-Prompt.
+ * Gleicher Rechnungstext + gleicher Prompt = gleiche Antwort, ohne erneuten LLM-Aufruf.
+ * Größenbegrenzt mit LRU-Verdrängung, pro Modell ein Unterordner (Invalidierung per Modellname).
+
+Persistent on-disk cache for LLM responses.
+ * Key = SHA-256 over model, temperature, system prompt and user prompt.
+ * Size-bounded with LRU eviction, one sub-directory per model so a model can be invalidated.
+*/
+
+@Component
+public class LlmResponseCache {
+
+    private static final String FILE_SUFFIX = ".txt";
+
+    private final Path directory;
+    private final DiskLruIndex index;
+    private long hits;
+    private long misses;
+
+    public LlmResponseCache(@Value("${llm.cache.dir:${user.home}/.invoicebot/llm-cache}") String directory,
+                            @Value("${llm.cache.max-bytes:268435456}") long maxBytes) {
+        this.directory = Paths.get(directory);
+        this.index = new DiskLruIndex(this.directory, FILE_SUFFIX, 2, maxBytes, "LLM-Cache");
+    }
+
+    /**
+     * Berechnet den Cache-Schlüssel für einen Request.
+     */
+    public static String key(String model, double temperature, String systemPrompt, String userPrompt) {
+        return key(model, temperature, systemPrompt, userPrompt, null);
+    }
+
+    /**
+     * Wie oben, zusätzlich mit dem Namen des Antwort-Formats (z.B. JSON-Schema), falls gesetzt.
+     */
+    public static String key(String model, double temperature, String systemPrompt, String userPrompt,
+                             String responseFormat) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[] { model, Double.toString(temperature), systemPrompt, userPrompt }) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0); // Trennzeichen, damit "ab"+"c" != "a"+"bc"
+            }
+            if (responseFormat != null) {
+                digest.update(responseFormat.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    public synchronized Optional<String> get(String model, String key) {
+        Path file = fileFor(model, key);
+        if (!index.contains(file)) {
+            misses++;
+            return Optional.empty();
+        }
+        try {
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            index.touch(file);
+            hits++;
+            return Optional.of(content);
+        } catch (IOException e) {
+            System.err.println("⚠️ LLM-Cache nicht lesbar: " + file + " (" + e.getMessage() + ")");
+            index.remove(file);
+            misses++;
+            return Optional.empty();
+        }
+    }
+
+    public synchronized void put(String model, String key, String content) {
+        if (!index.isEnabled()) {
+            return;
+        }
+        try {
+            index.write(fileFor(model, key), tmp -> Files.writeString(tmp, content, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("⚠️ LLM-Cache konnte nicht geschrieben werden: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Entfernt alle Einträge eines Modells (z.B. nach Modell-Update in LM Studio).
+     *
+     * @return Anzahl entfernter Einträge
+     */
+    public synchronized int invalidateModel(String model) {
+        Path modelDir = directory.resolve(sanitize(model));
+        List<Path> toRemove = index.files().stream()
+            .filter(file -> file.getParent().equals(modelDir))
+            .toList();
+        toRemove.forEach(index::remove);
+        System.out.println("🧹 LLM-Cache: " + toRemove.size() + " Einträge für Modell " + model + " entfernt");
+        return toRemove.size();
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return index.getTotalBytes();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private Path fileFor(String model, String key) {
+        return directory.resolve(sanitize(model)).resolve(key + FILE_SUFFIX);
+    }
+
+    private static String sanitize(String model) {
+        return model.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
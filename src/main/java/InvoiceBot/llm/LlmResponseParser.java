@@ -1,15 +1,14 @@
 package InvoiceBot.llm;
 
+import InvoiceBot.model.Amounts;
 import InvoiceBot.model.InvoiceData;
 import org.json.JSONObject;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.text.NumberFormat;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Locale;
 
 /* 
@@ -30,7 +29,12 @@ Responsible for parsing the responses from the LLM.
 public class LlmResponseParser {
 
     private static final DateTimeFormatter TARGET_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
-    private static final Locale GERMAN_LOCALE = Locale.GERMAN;
+
+    /**
+     * JSON-Felder des Extraktions-Prompts (entsprechen den Feldern von InvoiceData).
+     */
+    public static final List<String> INVOICE_FIELDS = List.of(
+        "company_name", "invoice_date", "invoice_number", "net_amount", "gross_amount", "service_period");
 
     /**
      * Standard merge - wie ursprünglich (void)
@@ -60,6 +64,26 @@ public class LlmResponseParser {
         }
     }
     
+    /**
+     * Merge nur für leere Felder: vorhandene Werte im Ziel (z.B. aus der
+     * regelbasierten Vor-Extraktion) werden nicht überschrieben.
+     */
+    public void mergeMissing(InvoiceData target, String jsonStr) {
+        InvoiceData source = new InvoiceData();
+        merge(source, jsonStr);
+
+        if (isBlank(target.getCompanyName())) target.setCompanyName(source.getCompanyName());
+        if (isBlank(target.getInvoiceNumber())) target.setInvoiceNumber(source.getInvoiceNumber());
+        if (isBlank(target.getInvoiceDate())) target.setInvoiceDate(source.getInvoiceDate());
+        if (isBlank(target.getServicePeriod())) target.setServicePeriod(source.getServicePeriod());
+        if (isBlank(target.getGrossAmount())) target.setGrossAmount(source.getGrossAmount());
+        if (isBlank(target.getNetAmount())) target.setNetAmount(source.getNetAmount());
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
     /**
      * Parse validation response from Stage 3
      */
@@ -154,21 +178,8 @@ public class LlmResponseParser {
         
         cleanStr = cleanStr.replaceAll("[^\\d.,]", "").trim();
         
-        int lastComma = cleanStr.lastIndexOf(',');
-        int lastDot = cleanStr.lastIndexOf('.');
-        
-        if (lastComma > lastDot) {
-            cleanStr = cleanStr.replace(".", "").replace(",", ".");
-        } else if (lastDot > lastComma) {
-            cleanStr = cleanStr.replace(",", "");
-        }
-        
         try {
-            BigDecimal amount = new BigDecimal(cleanStr).setScale(2, RoundingMode.HALF_UP);
-            NumberFormat nf = NumberFormat.getInstance(GERMAN_LOCALE);
-            nf.setMinimumFractionDigits(2);
-            nf.setMaximumFractionDigits(2);
-            return nf.format(amount) + currencySymbol;
+            return Amounts.format(Amounts.parse(cleanStr), currencySymbol);
         } catch (NumberFormatException e) {
             return currencyStr;
         }
@@ -232,6 +243,45 @@ public class LlmResponseParser {
         }
     }
     
+    /**
+     * Parse combined validation response (Stage 3 + 4 in one call)
+     */
+    public CombinedValidationResult parseCombinedValidation(String jsonStr) {
+        try {
+            JSONObject obj = new JSONObject(jsonStr);
+            JSONObject recalculation = obj.optJSONObject("recalculation");
+            JSONObject qualityCheck = obj.optJSONObject("quality_check");
+
+            return new CombinedValidationResult(
+                parseValidation(recalculation != null ? recalculation.toString() : "{}"),
+                parseQualityCheck(qualityCheck != null ? qualityCheck.toString() : "{}")
+            );
+
+        } catch (Exception e) {
+            System.err.println("⚠️ Combined Validation JSON parse error: " + e.getMessage());
+            return new CombinedValidationResult(
+                new ValidationResult(null, null, false, "error"),
+                new QualityCheckResult(false, "error", "keep_extracted_data", java.util.Collections.emptyList())
+            );
+        }
+    }
+
+    /**
+     * Result from combined validation (recalculation + quality verdict)
+     */
+    public static class CombinedValidationResult {
+        private final ValidationResult validation;
+        private final QualityCheckResult qualityCheck;
+
+        public CombinedValidationResult(ValidationResult validation, QualityCheckResult qualityCheck) {
+            this.validation = validation;
+            this.qualityCheck = qualityCheck;
+        }
+
+        public ValidationResult getValidation() { return validation; }
+        public QualityCheckResult getQualityCheck() { return qualityCheck; }
+    }
+
     /**
      * Result from quality check stage
      */
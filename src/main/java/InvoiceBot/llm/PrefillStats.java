@@ -0,0 +1,112 @@
+package InvoiceBot.llm;
+
+import org.json.JSONObject;
+
+
+/*
+Misst, wie viel Prompt-Verarbeitung (Prefill) der Server durch seinen Prefix-Cache (KV-Cache) spart.
+ * llama.cpp liefert "timings" (prompt_n = neu berechnete Tokens, cache_n = wiederverwendete, prompt_ms),
+ * OpenAI-kompatible Server (vLLM, LM Studio) "usage.prompt_tokens_details.cached_tokens".
+ * Gesparte Zeit = wiederverwendete Tokens × gemessene Prefill-Zeit pro Token (nur mit "timings" bekannt).
+
+Measures prefill work saved by the server's prompt prefix cache, from llama.cpp timings or OpenAI usage details.
+*/
+
+public class PrefillStats {
+
+    /**
+     * Prefill-Messwerte eines Requests.
+     */
+    public static class Sample {
+        private final int promptTokens;
+        private final int cachedTokens;
+        private final double prefillMs;
+
+        Sample(int promptTokens, int cachedTokens, double prefillMs) {
+            this.promptTokens = promptTokens;
+            this.cachedTokens = cachedTokens;
+            this.prefillMs = prefillMs;
+        }
+
+        public int getPromptTokens() { return promptTokens; }
+        public int getCachedTokens() { return cachedTokens; }
+
+        /** Prefill-Dauer in ms oder -1, wenn der Server keine Zeiten meldet. */
+        public double getPrefillMs() { return prefillMs; }
+
+        /** Geschätzte gesparte Prefill-Zeit in ms (0, wenn keine Zeiten bekannt). */
+        public double getSavedMs() {
+            int computed = promptTokens - cachedTokens;
+            if (prefillMs < 0 || computed <= 0) {
+                return 0;
+            }
+            return cachedTokens * prefillMs / computed;
+        }
+    }
+
+    private long requests;
+    private long promptTokens;
+    private long cachedTokens;
+    private double prefillMs;
+    private double savedMs;
+
+    /**
+     * Liest die Messwerte aus einer Antwort (bzw. dem letzten Stream-Chunk).
+     *
+     * @return Messwerte oder null, wenn der Server nichts dazu meldet
+     */
+    public static Sample parse(JSONObject response) {
+        JSONObject timings = response.optJSONObject("timings");
+        if (timings != null && timings.has("prompt_n")) {
+            int computed = timings.optInt("prompt_n");
+            int cached = timings.optInt("cache_n");
+            return new Sample(computed + cached, cached, timings.optDouble("prompt_ms", -1));
+        }
+
+        JSONObject usage = response.optJSONObject("usage");
+        if (usage != null && usage.has("prompt_tokens")) {
+            JSONObject details = usage.optJSONObject("prompt_tokens_details");
+            int cached = details != null ? details.optInt("cached_tokens") : 0;
+            return new Sample(usage.optInt("prompt_tokens"), cached, -1);
+        }
+        return null;
+    }
+
+    public synchronized void record(Sample sample) {
+        requests++;
+        promptTokens += sample.promptTokens;
+        cachedTokens += sample.cachedTokens;
+        savedMs += sample.getSavedMs();
+        if (sample.prefillMs > 0) {
+            prefillMs += sample.prefillMs;
+        }
+    }
+
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    public synchronized long getPromptTokens() {
+        return promptTokens;
+    }
+
+    public synchronized long getCachedTokens() {
+        return cachedTokens;
+    }
+
+    /** Tatsächlich gemessene Prefill-Zeit aller Requests in ms. */
+    public synchronized double getPrefillMs() {
+        return prefillMs;
+    }
+
+    public synchronized double getSavedMs() {
+        return savedMs;
+    }
+
+    /**
+     * Anteil der Prompt-Tokens, die aus dem Server-Cache kamen.
+     */
+    public synchronized double getCacheRatio() {
+        return promptTokens == 0 ? 0.0 : (double) cachedTokens / promptTokens;
+    }
+}
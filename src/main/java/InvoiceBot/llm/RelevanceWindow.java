@@ -0,0 +1,193 @@
+package InvoiceBot.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+
+/*
+Relevanz-Fenster für LLM-Prompts (statt fester Kürzung auf 2000/2500 Zeichen).
+ * Bewertet jede Zeile nach Betrags-Schlüsselwörtern, Währungen/Beträgen, Rechnungsnummer-
+ * Beschriftungen und Datumsangaben und füllt das Token-Budget mit den relevantesten Zeilen
+ * (plus Nachbarzeilen als Kontext). Summen auf Seite 2 gehen so nicht mehr verloren,
+ * Boilerplate (AGB, Bankverbindung, Handelsregister) fliegt raus.
+ * Budget und Zeichen pro Token lassen sich je Modell überschreiben (Kontextlänge und Tokenizer unterscheiden sich).
+
+Relevance window for LLM prompts instead of fixed truncation.
+ * Scores lines by amount keywords, currency patterns, invoice-number labels and dates and
+ * keeps the densest context that fits the token budget, in original order.
+*/
+
+@Component
+public class RelevanceWindow {
+
+    private static final int HEADER_LINES = 5;
+    private static final String GAP = "[...]";
+
+    private static final Pattern AMOUNT_KEYWORDS = Pattern.compile(
+        "netto|brutto|gesamt|summe|betrag|mwst|\\bust\\b|umsatzsteuer|zu zahlen|\\b(?:total|subtotal|amount|tax|vat)\\b",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern CURRENCY = Pattern.compile(
+        "€|\\bEUR\\b|\\$|\\bUSD\\b|\\d+[.,]\\d{2}(?!\\d)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INVOICE_NUMBER_LABEL = Pattern.compile(
+        "rechnungs-?(?:nummer|nr)|rechnung\\s+nr|invoice\\s*(?:no|number|#)|beleg-?nr", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DATE = Pattern.compile(
+        "\\d{1,2}\\.\\s?\\d{1,2}\\.\\s?\\d{2,4}|\\d{4}-\\d{2}-\\d{2}|\\d{1,2}/\\d{1,2}/\\d{2,4}"
+            + "|\\d{1,2}\\.?\\s+(?:jan|feb|mär|mar|apr|mai|may|jun|jul|aug|sep|okt|oct|nov|dez|dec)",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern DATE_LABEL = Pattern.compile(
+        "datum|date|leistungszeitraum|zeitraum|period", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SELLER = Pattern.compile(
+        "^\\s*(?:von|from|rechnungssteller)\\s*:|\\b(?:gmbh|ag|ug|kg|inc|ltd|llc|e\\.k)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern BOILERPLATE = Pattern.compile(
+        "\\b(?:agb|iban|bic|swift|geschäftsführer|amtsgericht|handelsregister|hrb|seite \\d+ von|page \\d+ of)\\b",
+        Pattern.CASE_INSENSITIVE);
+
+    private final TokenEstimator estimator;
+    private final int budgetTokens;
+    private final Map<String, RelevanceWindow> modelWindows = new ConcurrentHashMap<>();
+
+    public RelevanceWindow(TokenEstimator estimator,
+                           @Value("${llm.text-budget-tokens:600}") int budgetTokens) {
+        this.estimator = estimator;
+        this.budgetTokens = Math.max(50, budgetTokens);
+    }
+
+    /**
+     * Standard-Fenster mit deutschem Schätzwert und ~600 Tokens (entspricht etwa den früheren 2000 Zeichen).
+     */
+    public static RelevanceWindow withDefaults() {
+        return new RelevanceWindow(new TokenEstimator(3.5), 600);
+    }
+
+    /**
+     * Eigenes Budget je Modell, z.B. "meta-llama-3.1-8b-instruct=600:3.5,qwen2.5-32b-instruct=1500:3.2"
+     * (Tokens[:Zeichen pro Token]). Nicht aufgeführte Modelle verwenden das Standard-Fenster.
+     */
+    @Value("${llm.text-budget-tokens.per-model:}")
+    public void setModelBudgets(String spec) {
+        modelWindows.clear();
+        if (spec == null || spec.isBlank()) {
+            return;
+        }
+        for (String entry : spec.split(",")) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                System.err.println("⚠️ Ungültiges Modell-Budget ignoriert: " + entry.strip());
+                continue;
+            }
+            String model = entry.substring(0, separator).strip();
+            String[] values = entry.substring(separator + 1).strip().split(":");
+            try {
+                int tokens = Integer.parseInt(values[0].strip());
+                double charsPerToken = values.length > 1
+                    ? Double.parseDouble(values[1].strip())
+                    : estimator.getCharsPerToken();
+                modelWindows.put(model, new RelevanceWindow(new TokenEstimator(charsPerToken), tokens));
+            } catch (NumberFormatException e) {
+                System.err.println("⚠️ Ungültiges Modell-Budget ignoriert: " + entry.strip());
+            }
+        }
+    }
+
+    /**
+     * Fenster (Budget + Token-Schätzer) für das angegebene Modell, sonst dieses Standard-Fenster.
+     */
+    public RelevanceWindow forModel(String model) {
+        RelevanceWindow window = model != null ? modelWindows.get(model) : null;
+        return window != null ? window : this;
+    }
+
+    public String apply(String text) {
+        return apply(text, budgetTokens);
+    }
+
+    /**
+     * Liefert den Text unverändert, wenn er ins Budget passt, sonst die relevantesten Zeilen
+     * in Original-Reihenfolge; Lücken werden mit "[...]" markiert.
+     */
+    public String apply(String text, int budget) {
+        if (text == null || estimator.estimate(text) <= budget) {
+            return text;
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\\R")) {
+            if (!line.isBlank()) {
+                lines.add(line.strip());
+            }
+        }
+
+        int[] scores = new int[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            scores[i] = score(lines.get(i), i);
+        }
+
+        // Blockwertung: Beschriftung und Wert stehen oft in benachbarten Zeilen
+        List<Integer> order = new ArrayList<>();
+        double[] blockScores = new double[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            int neighbours = (i > 0 ? scores[i - 1] : 0) + (i + 1 < lines.size() ? scores[i + 1] : 0);
+            blockScores[i] = scores[i] + neighbours / 2.0;
+            if (scores[i] > 0) {
+                order.add(i);
+            }
+        }
+        order.sort(Comparator.comparingDouble((Integer i) -> -blockScores[i]).thenComparingInt(i -> i));
+
+        boolean[] selected = new boolean[lines.size()];
+        int used = 0;
+        for (int index : order) {
+            int cost = estimator.estimate(lines.get(index)) + 1;
+            if (used + cost > budget) {
+                continue; // kleinere Zeilen können noch passen
+            }
+            selected[index] = true;
+            used += cost;
+        }
+
+        StringBuilder window = new StringBuilder();
+        boolean gap = false;
+        for (int i = 0; i < lines.size(); i++) {
+            if (selected[i]) {
+                if (gap && window.length() > 0) {
+                    window.append(GAP).append('\n');
+                }
+                window.append(lines.get(i)).append('\n');
+                gap = false;
+            } else {
+                gap = true;
+            }
+        }
+        return window.toString().strip();
+    }
+
+    public int getBudgetTokens() {
+        return budgetTokens;
+    }
+
+    public TokenEstimator getEstimator() {
+        return estimator;
+    }
+
+    private static int score(String line, int index) {
+        int score = 0;
+        if (AMOUNT_KEYWORDS.matcher(line).find()) score += 4;
+        if (INVOICE_NUMBER_LABEL.matcher(line).find()) score += 4;
+        if (CURRENCY.matcher(line).find()) score += 2;
+        if (DATE.matcher(line).find()) score += 2;
+        if (DATE_LABEL.matcher(line).find()) score += 1;
+        if (SELLER.matcher(line).find()) score += 2;
+        // Absender steht meist ganz oben - Bonus aber nur für Zeilen mit eigenem Signal (Firma, Beschriftung,
+        // Betrag), sonst verdrängt Fülltext am Dokumentanfang echte Inhalte
+        if (index < HEADER_LINES && score > 0) score += 3;
+        if (BOILERPLATE.matcher(line).find()) score -= 4;
+        return Math.max(score, 0);
+    }
+}
@@ -0,0 +1,146 @@
+package InvoiceBot.llm;
+
+import org.json.JSONObject;
+
+import java.util.List;
+
+
+/*
+JSON-Schemas für die strukturierte Ausgabe ("response_format") pro Prompt-Typ.
+ * OpenAI-kompatible lokale Server (LM Studio, llama.cpp) erzwingen damit gültiges JSON
+ * über Grammar-Constrained Decoding - "JSON Parse Error"-Retries entfallen.
+
+JSON schemas for structured output per prompt type (extraction, validation, quality check).
+*/
+
+public final class ResponseSchema {
+
+    private static final String NULLABLE_STRING = "{\"type\":[\"string\",\"null\"]}";
+    private static final String CONFIDENCE = "{\"type\":\"string\",\"enum\":[\"high\",\"medium\",\"low\"]}";
+
+    /** Stufe 1/2: die sechs Rechnungsfelder. */
+    public static final ResponseSchema EXTRACTION = forFields("invoice_extraction", LlmResponseParser.INVOICE_FIELDS);
+
+    private static final String VALIDATION_SCHEMA = """
+        {
+          "type": "object",
+          "properties": {
+            "positions_found": {
+              "type": "array",
+              "items": {
+                "type": "object",
+                "properties": {
+                  "net": {"type": "string"},
+                  "tax_rate": {"type": "string"},
+                  "gross_calculated": {"type": "string"}
+                },
+                "required": ["net", "tax_rate", "gross_calculated"],
+                "additionalProperties": false
+              }
+            },
+            "recalculated_net": %s,
+            "recalculated_gross": %s,
+            "has_mixed_tax_rates": {"type": "boolean"},
+            "calculation_matches": {"type": "boolean"},
+            "confidence": %s
+          },
+          "required": ["positions_found", "recalculated_net", "recalculated_gross",
+                       "has_mixed_tax_rates", "calculation_matches", "confidence"],
+          "additionalProperties": false
+        }
+        """.formatted(NULLABLE_STRING, NULLABLE_STRING, CONFIDENCE);
+
+    private static final String QUALITY_CHECK_SCHEMA = """
+        {
+          "type": "object",
+          "properties": {
+            "all_correct": {"type": "boolean"},
+            "issues_found": {
+              "type": "array",
+              "items": {
+                "type": "object",
+                "properties": {
+                  "field": {"type": "string"},
+                  "issue": {"type": "string"},
+                  "should_be": {"type": "string"}
+                },
+                "required": ["field", "issue", "should_be"],
+                "additionalProperties": false
+              }
+            },
+            "confidence": %s,
+            "recommendation": {"type": "string", "enum": ["keep_extracted_data", "use_corrections"]}
+          },
+          "required": ["all_correct", "issues_found", "confidence", "recommendation"],
+          "additionalProperties": false
+        }
+        """.formatted(CONFIDENCE);
+
+    /** Stufe 3: Durchrechnung der Positionen. */
+    public static final ResponseSchema VALIDATION = new ResponseSchema("invoice_validation", VALIDATION_SCHEMA, List.of());
+
+    /** Stufe 4: Qualitätsprüfung. */
+    public static final ResponseSchema QUALITY_CHECK = new ResponseSchema("invoice_quality_check", QUALITY_CHECK_SCHEMA, List.of());
+
+    /** Stufe 3+4 kombiniert: Durchrechnung und Qualitätsprüfung in einer Antwort. */
+    public static final ResponseSchema COMBINED_VALIDATION = new ResponseSchema("invoice_combined_validation", """
+        {
+          "type": "object",
+          "properties": {
+            "recalculation": %s,
+            "quality_check": %s
+          },
+          "required": ["recalculation", "quality_check"],
+          "additionalProperties": false
+        }
+        """.formatted(VALIDATION_SCHEMA, QUALITY_CHECK_SCHEMA), List.of());
+
+    private final String name;
+    private final String schema;
+    private final List<String> requiredFields;
+
+    private ResponseSchema(String name, String schema, List<String> requiredFields) {
+        this.name = name;
+        this.schema = schema;
+        this.requiredFields = requiredFields;
+    }
+
+    /**
+     * Schema für ein flaches Objekt mit den angegebenen String-Feldern (nullable).
+     */
+    public static ResponseSchema forFields(String name, List<String> fields) {
+        JSONObject properties = new JSONObject();
+        for (String field : fields) {
+            properties.put(field, new JSONObject(NULLABLE_STRING));
+        }
+        JSONObject schema = new JSONObject()
+            .put("type", "object")
+            .put("properties", properties)
+            .put("required", fields)
+            .put("additionalProperties", false);
+        return new ResponseSchema(name, schema.toString(), List.copyOf(fields));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Felder, nach denen ein Stream vorzeitig beendet werden darf (leer = nur schließende Klammer).
+     */
+    public List<String> getRequiredFields() {
+        return requiredFields;
+    }
+
+    /**
+     * Das "response_format"-Objekt für /v1/chat/completions.
+     */
+    public JSONObject toResponseFormat() {
+        return new JSONObject()
+            .put("type", "json_schema")
+            .put("json_schema", new JSONObject()
+                .put("name", name)
+                .put("strict", true)
+                .put("schema", new JSONObject(schema)));
+    }
+}
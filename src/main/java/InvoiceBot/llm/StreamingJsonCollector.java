@@ -0,0 +1,172 @@
+package InvoiceBot.llm;
+
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.List;
+
+
+/*
+Sammelt gestreamte Token-Fragmente und erkennt, wann das erwartete JSON-Objekt vollständig ist.
+ * Vollständig = schließende "}" des äußersten Objekts ODER alle geforderten Felder sind vorhanden.
+ * Danach kann die Verbindung geschlossen werden - nachfolgende Tokens kosten nur Zeit.
+
+Collects streamed token fragments and detects when the expected JSON object is complete:
+ * either the closing brace of the outermost object arrived, or all required fields are present.
+*/
+
+public class StreamingJsonCollector {
+
+    private final List<String> requiredFields;
+    private final StringBuilder buffer = new StringBuilder();
+
+    private int objectStart = -1;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private boolean expectingValue;
+    private boolean inScalar;
+    private boolean complete;
+    private boolean closedEarly;
+    private String json;
+
+    public StreamingJsonCollector(Collection<String> requiredFields) {
+        this.requiredFields = List.copyOf(requiredFields);
+    }
+
+    /**
+     * Hängt ein Fragment an.
+     *
+     * @return true sobald das Objekt vollständig ist (weitere Fragmente werden ignoriert)
+     */
+    public boolean append(String fragment) {
+        if (complete || fragment == null) {
+            return complete;
+        }
+
+        for (int i = 0; i < fragment.length() && !complete; i++) {
+            char c = fragment.charAt(i);
+            buffer.append(c);
+            scan(c, buffer.length() - 1);
+        }
+        return complete;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * true, wenn vor der schließenden Klammer abgebrochen wurde, weil alle Felder vorhanden waren.
+     */
+    public boolean isClosedEarly() {
+        return closedEarly;
+    }
+
+    /**
+     * Das erkannte JSON-Objekt - oder der bisher empfangene Text, falls es nie vollständig wurde.
+     */
+    public String getResult() {
+        return json != null ? json : buffer.toString();
+    }
+
+    public int getReceivedChars() {
+        return buffer.length();
+    }
+
+    private void scan(char c, int position) {
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+                // Schließendes Anführungszeichen eines Werts auf oberster Ebene
+                if (depth == 1 && expectingValue) {
+                    valueFinished(position);
+                }
+            }
+            return;
+        }
+
+        switch (c) {
+            case '"' -> {
+                if (objectStart >= 0) {
+                    inString = true;
+                }
+            }
+            case '{', '[' -> {
+                if (objectStart < 0 && c == '{') {
+                    objectStart = position;
+                }
+                if (objectStart >= 0) {
+                    depth++;
+                }
+            }
+            case '}', ']' -> {
+                if (objectStart >= 0 && --depth == 0) {
+                    json = buffer.substring(objectStart, position + 1);
+                    complete = true;
+                } else if (depth == 1 && expectingValue) {
+                    valueFinished(position);
+                }
+            }
+            case ':' -> {
+                if (depth == 1) {
+                    expectingValue = true;
+                }
+            }
+            case ',' -> {
+                // Ein Komma auf oberster Ebene schließt ein Key-Value-Paar ab
+                if (depth == 1) {
+                    if (expectingValue) {
+                        valueFinished(position - 1);
+                    }
+                    expectingValue = false;
+                }
+            }
+            default -> {
+                // Zahl oder Literal (true/false/null) auf oberster Ebene endet mit Leerraum
+                if (depth == 1 && expectingValue) {
+                    if (Character.isWhitespace(c)) {
+                        if (inScalar) {
+                            valueFinished(position - 1);
+                        }
+                    } else {
+                        inScalar = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ein Wert auf oberster Ebene ist vollständig - prüfen, ob damit alle geforderten Felder vorhanden sind.
+     */
+    private void valueFinished(int lastValuePosition) {
+        expectingValue = false;
+        inScalar = false;
+        if (requiredFields.isEmpty()) {
+            return;
+        }
+        checkRequiredFields(lastValuePosition + 1);
+    }
+
+    private void checkRequiredFields(int endPosition) {
+        String candidate = buffer.substring(objectStart, endPosition) + "}";
+        try {
+            JSONObject obj = new JSONObject(candidate);
+            for (String field : requiredFields) {
+                if (!obj.has(field)) {
+                    return;
+                }
+            }
+            json = candidate;
+            complete = true;
+            closedEarly = true;
+        } catch (Exception e) {
+            // Noch kein gültiges Objekt - weiter sammeln
+        }
+    }
+}
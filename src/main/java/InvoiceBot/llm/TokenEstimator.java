@@ -0,0 +1,49 @@
+package InvoiceBot.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+
+/*
+Schätzt die Token-Anzahl eines Textes ohne den Tokenizer des Modells.
+ * Buchstaben werden über "Zeichen pro Token" des Modells gezählt (deutsch ~3.5),
+ * Ziffern in Gruppen (~2 pro Token), Satz- und Sonderzeichen meist einzeln.
+ * Whitespace wird dem folgenden Token zugeschlagen.
+
+Estimates token counts without the model tokenizer.
+ * Letters use the model's chars-per-token ratio, digits are grouped, punctuation counts alone.
+*/
+
+@Component
+public class TokenEstimator {
+
+    private final double charsPerToken;
+
+    public TokenEstimator(@Value("${llm.chars-per-token:3.5}") double charsPerToken) {
+        this.charsPerToken = charsPerToken > 0 ? charsPerToken : 3.5;
+    }
+
+    public int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int letters = 0;
+        int digits = 0;
+        int symbols = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetter(c)) {
+                letters++;
+            } else if (Character.isDigit(c)) {
+                digits++;
+            } else if (!Character.isWhitespace(c)) {
+                symbols++;
+            }
+        }
+        return (int) Math.ceil(letters / charsPerToken + digits / 2.0 + symbols);
+    }
+
+    public double getCharsPerToken() {
+        return charsPerToken;
+    }
+}
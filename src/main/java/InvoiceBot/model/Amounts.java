@@ -0,0 +1,47 @@
+package InvoiceBot.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Einlesen und Formatieren von Geldbeträgen im deutschen Format ("1.190,00€").
+ * Gemeinsam genutzt von LLM-Antworten, E-Rechnungs-XML und der Positions-Durchrechnung.
+ *
+ * Parsing and formatting of money amounts in German notation, shared across the pipeline.
+ */
+public final class Amounts {
+
+    private Amounts() {
+    }
+
+    /**
+     * Liest einen Betrag in deutscher oder englischer Schreibweise ("1.190,00", "1,190.00", "1190.00").
+     * Das zuletzt stehende Trennzeichen ist das Dezimaltrennzeichen; Währungen und Leerzeichen werden ignoriert.
+     *
+     * @throws NumberFormatException wenn keine Zahl enthalten ist
+     */
+    public static BigDecimal parse(String amount) {
+        String cleaned = amount.replaceAll("[^\\d.,\\-]", "");
+        int lastComma = cleaned.lastIndexOf(',');
+        int lastDot = cleaned.lastIndexOf('.');
+        if (lastComma > lastDot) {
+            cleaned = cleaned.replace(".", "").replace(",", ".");
+        } else {
+            cleaned = cleaned.replace(",", "");
+        }
+        return new BigDecimal(cleaned);
+    }
+
+    /**
+     * Zwei Nachkommastellen, deutsches Format, Währungssymbol direkt angehängt: "1.190,00€".
+     */
+    public static String format(BigDecimal amount, String currencySymbol) {
+        // NumberFormat ist nicht thread-sicher - pro Aufruf neu
+        NumberFormat nf = NumberFormat.getInstance(Locale.GERMAN);
+        nf.setMinimumFractionDigits(2);
+        nf.setMaximumFractionDigits(2);
+        return nf.format(amount.setScale(2, RoundingMode.HALF_UP)) + currencySymbol;
+    }
+}
@@ -0,0 +1,212 @@
+package InvoiceBot.parser;
+
+import InvoiceBot.model.Amounts;
+import InvoiceBot.model.InvoiceData;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/*
+Streaming-Parser für strukturierte E-Rechnungen (ZUGFeRD / Factur-X / XRechnung).
+ * Unterstützt UN/CEFACT CII (CrossIndustryInvoice, ZUGFeRD 1.0 CrossIndustryDocument)
+ * und OASIS UBL (Invoice, CreditNote). Liest per StAX nur die benötigten Elemente
+ * und liefert exakte Werte im selben Format wie LlmResponseParser.
+
+Streaming parser for structured e-invoices (CII and UBL).
+ * Reads only the elements needed for InvoiceData with StAX and formats them
+ * like LlmResponseParser (dd.MM.yyyy dates, German amounts with currency symbol).
+*/
+
+public class EInvoiceXmlParser {
+
+    private static final DateTimeFormatter TARGET_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final DateTimeFormatter CII_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final String NUMBER = "number";
+    private static final String DATE = "date";
+    private static final String SELLER = "seller";
+    private static final String SELLER_FALLBACK = "seller_fallback";
+    private static final String NET = "net";
+    private static final String GROSS = "gross";
+    private static final String GROSS_FALLBACK = "gross_fallback";
+    private static final String PERIOD_START = "period_start";
+    private static final String PERIOD_END = "period_end";
+    private static final String CURRENCY = "currency";
+
+    // Pfad-Suffixe (lokale Namen ohne Namespace) -> Feld; der erste Treffer pro Feld gewinnt
+    private static final Map<String, String> PATHS = new HashMap<>();
+
+    static {
+        // CII (ZUGFeRD 2.x / Factur-X / XRechnung CII)
+        PATHS.put("CrossIndustryInvoice/ExchangedDocument/ID", NUMBER);
+        PATHS.put("CrossIndustryInvoice/ExchangedDocument/IssueDateTime/DateTimeString", DATE);
+        PATHS.put("ApplicableHeaderTradeAgreement/SellerTradeParty/Name", SELLER);
+        PATHS.put("SpecifiedTradeSettlementHeaderMonetarySummation/TaxBasisTotalAmount", NET);
+        PATHS.put("SpecifiedTradeSettlementHeaderMonetarySummation/GrandTotalAmount", GROSS);
+        PATHS.put("ApplicableHeaderTradeSettlement/BillingSpecifiedPeriod/StartDateTime/DateTimeString", PERIOD_START);
+        PATHS.put("ApplicableHeaderTradeSettlement/BillingSpecifiedPeriod/EndDateTime/DateTimeString", PERIOD_END);
+        PATHS.put("ApplicableHeaderTradeSettlement/InvoiceCurrencyCode", CURRENCY);
+
+        // CII (ZUGFeRD 1.0)
+        PATHS.put("CrossIndustryDocument/HeaderExchangedDocument/ID", NUMBER);
+        PATHS.put("CrossIndustryDocument/HeaderExchangedDocument/IssueDateTime/DateTimeString", DATE);
+        PATHS.put("ApplicableSupplyChainTradeAgreement/SellerTradeParty/Name", SELLER);
+        PATHS.put("SpecifiedTradeSettlementMonetarySummation/TaxBasisTotalAmount", NET);
+        PATHS.put("SpecifiedTradeSettlementMonetarySummation/GrandTotalAmount", GROSS);
+        PATHS.put("ApplicableSupplyChainTradeSettlement/InvoiceCurrencyCode", CURRENCY);
+
+        // UBL (XRechnung UBL, Peppol)
+        for (String root : new String[] { "Invoice", "CreditNote" }) {
+            PATHS.put(root + "/ID", NUMBER);
+            PATHS.put(root + "/IssueDate", DATE);
+            PATHS.put(root + "/DocumentCurrencyCode", CURRENCY);
+            PATHS.put(root + "/InvoicePeriod/StartDate", PERIOD_START);
+            PATHS.put(root + "/InvoicePeriod/EndDate", PERIOD_END);
+            PATHS.put(root + "/AccountingSupplierParty/Party/PartyName/Name", SELLER);
+            PATHS.put(root + "/AccountingSupplierParty/Party/PartyLegalEntity/RegistrationName", SELLER_FALLBACK);
+            PATHS.put(root + "/LegalMonetaryTotal/TaxExclusiveAmount", NET);
+            PATHS.put(root + "/LegalMonetaryTotal/TaxInclusiveAmount", GROSS);
+            PATHS.put(root + "/LegalMonetaryTotal/PayableAmount", GROSS_FALLBACK);
+        }
+    }
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    /**
+     * Liest eine CII- oder UBL-Rechnung.
+     *
+     * @param xml XML-Stream (wird nicht geschlossen)
+     * @return Rechnungsdaten oder null, wenn es keine unterstützte E-Rechnung ist
+     */
+    public static InvoiceData parse(InputStream xml) throws XMLStreamException {
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(xml);
+        try {
+            Map<String, String> values = new HashMap<>();
+            Deque<String> path = new ArrayDeque<>();
+            StringBuilder text = new StringBuilder();
+            String root = null;
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        if (root == null) {
+                            root = reader.getLocalName();
+                            if (!isSupportedRoot(root)) {
+                                return null;
+                            }
+                        }
+                        path.addLast(reader.getLocalName());
+                        text.setLength(0);
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> text.append(reader.getText());
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        String field = fieldFor(path);
+                        if (field != null && !values.containsKey(field) && !text.toString().isBlank()) {
+                            values.put(field, text.toString().trim());
+                        }
+                        path.removeLast();
+                        text.setLength(0);
+                    }
+                    default -> { }
+                }
+            }
+
+            return root == null ? null : toInvoiceData(values);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean isSupportedRoot(String root) {
+        return root.equals("CrossIndustryInvoice") || root.equals("CrossIndustryDocument")
+            || root.equals("Invoice") || root.equals("CreditNote");
+    }
+
+    private static String fieldFor(Deque<String> path) {
+        // Längstes passendes Suffix zuerst prüfen (max. 5 Ebenen reichen für alle Pfade oben)
+        String joined = String.join("/", path);
+        int start = 0;
+        for (int level = path.size(); level > 0; level--) {
+            String suffix = joined.substring(start);
+            String field = PATHS.get(suffix);
+            if (field != null) {
+                return field;
+            }
+            start = joined.indexOf('/', start) + 1;
+        }
+        return null;
+    }
+
+    private static InvoiceData toInvoiceData(Map<String, String> values) {
+        String currency = values.getOrDefault(CURRENCY, "EUR");
+
+        InvoiceData data = new InvoiceData();
+        data.setInvoiceNumber(values.get(NUMBER));
+        data.setInvoiceDate(formatDate(values.get(DATE)));
+        data.setCompanyName(values.getOrDefault(SELLER, values.get(SELLER_FALLBACK)));
+        data.setNetAmount(formatAmount(values.get(NET), currency));
+        data.setGrossAmount(formatAmount(values.getOrDefault(GROSS, values.get(GROSS_FALLBACK)), currency));
+
+        String start = formatDate(values.get(PERIOD_START));
+        String end = formatDate(values.get(PERIOD_END));
+        if (start != null && end != null) {
+            data.setServicePeriod(start + " - " + end);
+        }
+        return data;
+    }
+
+    private static String formatDate(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        try {
+            // CII Format 102 (yyyyMMdd), UBL ISO-8601 (yyyy-MM-dd)
+            LocalDate date = raw.contains("-")
+                ? LocalDate.parse(raw.substring(0, 10))
+                : LocalDate.parse(raw, CII_DATE_FORMATTER);
+            return date.format(TARGET_DATE_FORMATTER);
+        } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+            return raw;
+        }
+    }
+
+    private static String formatAmount(String raw, String currency) {
+        if (raw == null) {
+            return null;
+        }
+        try {
+            return Amounts.format(Amounts.parse(raw), currencySymbol(currency));
+        } catch (NumberFormatException e) {
+            return raw;
+        }
+    }
+
+    private static String currencySymbol(String currency) {
+        return switch (currency.toUpperCase(Locale.ROOT)) {
+            case "EUR" -> "€";
+            case "USD" -> "$";
+            default -> " " + currency;
+        };
+    }
+
+    private static XMLInputFactory createFactory() {
+        // XML stammt aus fremden PDFs -> keine DTDs / externen Entities (XXE)
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
@@ -0,0 +1,108 @@
+package InvoiceBot.parser;
+
+import InvoiceBot.model.InvoiceData;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentNameDictionary;
+import org.apache.pdfbox.pdmodel.PDEmbeddedFilesNameTreeNode;
+import org.apache.pdfbox.pdmodel.common.filespecification.PDComplexFileSpecification;
+import org.apache.pdfbox.pdmodel.common.filespecification.PDEmbeddedFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+
+/*
+Liest eingebettete E-Rechnungen (ZUGFeRD / Factur-X / XRechnung) aus PDF-Anhängen.
+ * Durchsucht den EmbeddedFiles-Namensbaum des PDFs nach einer Rechnungs-XML
+ * und parst sie mit EInvoiceXmlParser - die Werte sind exakt, das LLM wird nicht benötigt.
+
+Reads embedded e-invoices from PDF attachments.
+ * Walks the EmbeddedFiles name tree, picks the invoice XML and parses it with EInvoiceXmlParser.
+*/
+
+public class EmbeddedInvoiceExtractor {
+
+    // Bekannte Anhangnamen, in dieser Priorität; sonst wird jede .xml-Datei versucht
+    private static final List<String> KNOWN_NAMES = List.of(
+        "factur-x.xml", "zugferd-invoice.xml", "zugferd_invoice.xml", "xrechnung.xml");
+
+    /**
+     * Sucht und parst die eingebettete Rechnungs-XML.
+     *
+     * @return Rechnungsdaten oder leer, wenn das PDF keine (lesbare) E-Rechnung enthält
+     */
+    public static Optional<InvoiceData> extract(PDDocument doc) {
+        try {
+            PDDocumentNameDictionary names = doc.getDocumentCatalog().getNames();
+            if (names == null || names.getEmbeddedFiles() == null) {
+                return Optional.empty();
+            }
+
+            PDComplexFileSpecification best = null;
+            int bestRank = Integer.MAX_VALUE;
+            for (Map.Entry<String, PDComplexFileSpecification> entry : collect(names.getEmbeddedFiles()).entrySet()) {
+                String name = fileName(entry.getKey(), entry.getValue()).toLowerCase(Locale.ROOT);
+                if (!name.endsWith(".xml")) {
+                    continue;
+                }
+                int rank = KNOWN_NAMES.indexOf(name);
+                if (rank < 0) {
+                    rank = KNOWN_NAMES.size();
+                }
+                if (rank < bestRank) {
+                    best = entry.getValue();
+                    bestRank = rank;
+                }
+            }
+
+            Optional<InvoiceData> data = parse(best);
+            if (data.isPresent()) {
+                System.out.println("   🧾 Eingebettete E-Rechnung gefunden: " + fileName(null, best));
+            }
+            return data;
+        } catch (Exception e) {
+            System.err.println("   ⚠️ Eingebettete XML nicht lesbar: " + e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<InvoiceData> parse(PDComplexFileSpecification spec) throws Exception {
+        if (spec == null) {
+            return Optional.empty();
+        }
+        PDEmbeddedFile file = spec.getEmbeddedFileUnicode() != null ? spec.getEmbeddedFileUnicode() : spec.getEmbeddedFile();
+        if (file == null) {
+            return Optional.empty();
+        }
+        try (InputStream xml = file.createInputStream()) {
+            return Optional.ofNullable(EInvoiceXmlParser.parse(xml));
+        }
+    }
+
+    /**
+     * Sammelt alle Einträge des Namensbaums (die Einträge können in Kind-Knoten liegen).
+     */
+    private static Map<String, PDComplexFileSpecification> collect(PDEmbeddedFilesNameTreeNode node) throws IOException {
+        Map<String, PDComplexFileSpecification> result = new LinkedHashMap<>();
+        if (node.getNames() != null) {
+            result.putAll(node.getNames());
+        }
+        if (node.getKids() != null) {
+            for (PDEmbeddedFilesNameTreeNode kid : node.getKids()) {
+                result.putAll(collect(kid));
+            }
+        }
+        return result;
+    }
+
+    private static String fileName(String key, PDComplexFileSpecification spec) {
+        if (spec.getFilenameUnicode() != null) return spec.getFilenameUnicode();
+        if (spec.getFilename() != null) return spec.getFilename();
+        return key != null ? key : "";
+    }
+}
@@ -0,0 +1,193 @@
+package InvoiceBot.parser;
+
+import InvoiceBot.validation.LineItemCalculator;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/*
+Sagt voraus, auf welcher Stufe eine Rechnung in die LLM-Pipeline einsteigen sollte.
+ * Gutschriften, Kassenbons mit mehreren Steuersätzen oder englische SaaS-Rechnungen scheitern
+ * fast immer an Stufe 1 - dann wird der Stufe-1-Aufruf übersprungen und direkt Stufe 2 gestartet.
+ * Merkmale: Sprache, Anzahl Beträge, Steuersätze, Seitenzahl, Dokumenttyp und Verlauf pro Lieferant.
+ * Jede 10. "Stufe 2"-Vorhersage läuft trotzdem durch Stufe 1, damit Treffer/Fehlgriffe messbar bleiben.
+
+Predicts the entry stage of the LLM pipeline from cheap text features and per-vendor history.
+ * Records hit/miss statistics and the number of skipped stage-1 round trips.
+*/
+
+@Component
+public class EscalationPredictor {
+
+    public static final int STAGE_STANDARD = 1;
+    public static final int STAGE_RETRY = 2;
+
+    private static final int ESCALATION_THRESHOLD = 2;
+    private static final int EXPLORATION_INTERVAL = 10;
+    private static final int MIN_VENDOR_SAMPLES = 2;
+    private static final int LINES_PER_PAGE = 60;
+
+    private static final Pattern CREDIT_NOTE = Pattern.compile(
+        "\\b(?:gutschrift|rechnungskorrektur|stornorechnung|storno|credit\\s+note)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ENGLISH = Pattern.compile(
+        "\\b(?:invoice|subtotal|total|amount due|bill to|due date|tax|payment)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern GERMAN = Pattern.compile(
+        "\\b(?:rechnung|netto|brutto|mwst|ust|betrag|summe|datum|zahlbar)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TAX_RATE = Pattern.compile("(?<![\\d,.])(\\d{1,2})(?:[.,]0{1,2})?\\s?%");
+    // Skonto- und Rabattzeilen enthalten Prozentangaben, die keine Steuersätze sind
+    private static final Pattern DISCOUNT = Pattern.compile("skonto|rabatt|nachlass|discount", Pattern.CASE_INSENSITIVE);
+    private static final Pattern AMOUNT = Pattern.compile("\\d+[.,]\\d{2}(?!\\d)");
+    private static final Pattern PAGE_BREAK = Pattern.compile("\f");
+
+    // Lieferanten-Fingerprint -> {Stufe 1 erfolgreich, Stufe 1 gescheitert}
+    private final Map<String, int[]> vendorHistory = new HashMap<>();
+
+    private long predictions;
+    private long skipped;
+    private long hits;
+    private long misses;
+    private long escalations;
+
+    /**
+     * Ergebnis einer Vorhersage: vorhergesagte Stufe und tatsächliche Einstiegsstufe.
+     */
+    public static class Prediction {
+        private final int predictedStage;
+        private final int entryStage;
+        private final String reason;
+
+        Prediction(int predictedStage, int entryStage, String reason) {
+            this.predictedStage = predictedStage;
+            this.entryStage = entryStage;
+            this.reason = reason;
+        }
+
+        public int getPredictedStage() { return predictedStage; }
+        public int getEntryStage() { return entryStage; }
+        public String getReason() { return reason; }
+        public boolean skipsStage1() { return entryStage > STAGE_STANDARD; }
+    }
+
+    public synchronized Prediction predict(String text) {
+        predictions++;
+        List<String> reasons = new ArrayList<>();
+        int predicted = fromVendorHistory(text, reasons);
+        if (predicted == 0) {
+            predicted = fromFeatures(text, reasons) >= ESCALATION_THRESHOLD ? STAGE_RETRY : STAGE_STANDARD;
+        }
+
+        int entry = predicted;
+        if (predicted == STAGE_RETRY) {
+            escalations++;
+            if (escalations % EXPLORATION_INTERVAL == 0) {
+                entry = STAGE_STANDARD; // Stichprobe: Stufe 1 trotzdem ausführen, um die Vorhersage zu prüfen
+                reasons.add("Stichprobe");
+            } else {
+                skipped++;
+            }
+        }
+        return new Prediction(predicted, entry, String.join(", ", reasons));
+    }
+
+    /**
+     * Meldet das Ergebnis von Stufe 1 (nur wenn sie ausgeführt wurde).
+     */
+    public synchronized void record(String text, Prediction prediction, boolean stage1Succeeded) {
+        boolean predictedEscalation = prediction.getPredictedStage() > STAGE_STANDARD;
+        if (predictedEscalation != stage1Succeeded) {
+            hits++;
+        } else {
+            misses++;
+        }
+
+        int[] history = vendorHistory.computeIfAbsent(VendorTemplateStore.fingerprint(text), k -> new int[2]);
+        history[stage1Succeeded ? 0 : 1]++;
+    }
+
+    /** Eingesparte Stufe-1-Aufrufe. */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    public synchronized long getPredictions() {
+        return predictions;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private int fromVendorHistory(String text, List<String> reasons) {
+        int[] history = vendorHistory.get(VendorTemplateStore.fingerprint(text));
+        if (history == null || history[0] + history[1] < MIN_VENDOR_SAMPLES) {
+            return 0;
+        }
+        reasons.add("Lieferant: Stufe 1 " + history[0] + "× ok, " + history[1] + "× gescheitert");
+        return history[1] > history[0] ? STAGE_RETRY : STAGE_STANDARD;
+    }
+
+    private static int fromFeatures(String text, List<String> reasons) {
+        int score = 0;
+
+        if (CREDIT_NOTE.matcher(text).find()) {
+            score += 2;
+            reasons.add("Gutschrift/Storno");
+        }
+        if (count(ENGLISH, text) > count(GERMAN, text)) {
+            score += 2; // Prompts der Stufe 1 sind auf deutsche Rechnungen ausgelegt
+            reasons.add("englisch");
+        }
+
+        Set<Integer> rates = new HashSet<>();
+        for (String line : text.split("\\R")) {
+            if (DISCOUNT.matcher(line).find()) {
+                continue;
+            }
+            Matcher rate = TAX_RATE.matcher(line);
+            while (rate.find()) {
+                int value = Integer.parseInt(rate.group(1));
+                if (value > 0 && LineItemCalculator.VAT_RATES.contains(value)) {
+                    rates.add(value);
+                }
+            }
+        }
+        if (rates.size() >= 2) {
+            score += 2;
+            reasons.add("Steuersätze " + rates);
+        }
+
+        int amounts = count(AMOUNT, text);
+        if (amounts > 25) {
+            score += 1;
+            reasons.add(amounts + " Beträge");
+        }
+
+        int pages = Math.max(count(PAGE_BREAK, text) + 1, text.split("\\R").length / LINES_PER_PAGE + 1);
+        if (pages > 2) {
+            score += 1;
+            reasons.add(pages + " Seiten");
+        }
+        return score;
+    }
+
+    private static int count(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+}
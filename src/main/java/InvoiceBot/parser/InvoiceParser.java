@@ -4,9 +4,20 @@ import InvoiceBot.llm.LlmExtractor;
 import InvoiceBot.llm.LlmResponseParser;
 import InvoiceBot.llm.LlmResponseParser.ValidationResult;
 import InvoiceBot.model.InvoiceData;
+import InvoiceBot.validation.LineItemCalculator;
 import InvoiceBot.validation.TrustScoreCalculator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
 
 /*
 
@@ -28,6 +39,13 @@ public class InvoiceParser {
     private final LlmExtractor extractor;
     private final LlmResponseParser parser;
     private final TrustScoreCalculator trustScoreCalculator;
+    private RuleBasedExtractor ruleBasedExtractor;
+    private VendorTemplateStore templateStore;
+    private LineItemCalculator lineItemCalculator;
+    private boolean combinedValidation;
+    private EscalationPredictor escalationPredictor;
+    private final SpeculativeExtractor speculativeExtractor;
+    private boolean speculativeExecution;
 
 public InvoiceParser(LlmExtractor extractor, 
                          LlmResponseParser parser, 
@@ -35,24 +53,152 @@ public InvoiceParser(LlmExtractor extractor,
         this.extractor = extractor;
         this.parser = parser;
         this.trustScoreCalculator = trustScoreCalculator; // <-- Zuweisen
+        this.speculativeExtractor = new SpeculativeExtractor(extractor, parser, trustScoreCalculator);
+    }
+
+    /**
+     * Optionale Stufe 0: regelbasierte Vor-Extraktion ohne LLM.
+     */
+    @Autowired(required = false)
+    public void setRuleBasedExtractor(RuleBasedExtractor ruleBasedExtractor) {
+        this.ruleBasedExtractor = ruleBasedExtractor;
+    }
+
+    /**
+     * Optional: gelernte Lieferanten-Vorlagen (Stufe 0) - lernt aus Ergebnissen mit Trust-Score >= 85.
+     */
+    @Autowired(required = false)
+    public void setTemplateStore(VendorTemplateStore templateStore) {
+        this.templateStore = templateStore;
+    }
+
+    /**
+     * Optional: deterministische Positions-Durchrechnung in Stufe 3 (LLM nur ohne erkennbare Positionen).
+     */
+    @Autowired(required = false)
+    public void setLineItemCalculator(LineItemCalculator lineItemCalculator) {
+        this.lineItemCalculator = lineItemCalculator;
+    }
+
+    /**
+     * Stufe 3+4 in einem LLM-Aufruf (Durchrechnung + Qualitätsprüfung) statt zwei Roundtrips.
+     */
+    @Value("${llm.combined-validation:false}")
+    public void setCombinedValidation(boolean combinedValidation) {
+        this.combinedValidation = combinedValidation;
+    }
+
+    /**
+     * Optional: Vorhersage der Einstiegsstufe - überspringt Stufe 1 für Dokumente, die dort fast immer scheitern.
+     */
+    @Autowired(required = false)
+    public void setEscalationPredictor(EscalationPredictor escalationPredictor) {
+        this.escalationPredictor = escalationPredictor;
+    }
+
+    public EscalationPredictor getEscalationPredictor() {
+        return escalationPredictor;
+    }
+
+    /**
+     * Stufe 1 und 2 gleichzeitig starten, wenn der LLM-Server freie Slots hat (kürzere p95-Latenz).
+     */
+    @Value("${llm.speculative:false}")
+    public void setSpeculativeExecution(boolean speculativeExecution) {
+        this.speculativeExecution = speculativeExecution;
+    }
+
+    public SpeculativeExtractor getSpeculativeExtractor() {
+        return speculativeExtractor;
     }
 
     public InvoiceData parse(String text) {
+        InvoiceData data = runStages(text);
+
+        if (templateStore != null && trustScoreCalculator.calculate(data) >= 85) {
+            templateStore.learn(text, data);
+        }
+        return data;
+    }
+
+    /**
+     * Ob Stufe 0 (Vorlage/Regeln) für diesen Text allein ausreicht - ohne LLM-Aufruf.
+     * Dient der seitenweisen PDF-Extraktion als Abbruchkriterium.
+     */
+    public boolean isCompleteWithoutLlm(String text) {
+        if (ruleBasedExtractor == null && templateStore == null) {
+            return false;
+        }
+        return trustScoreCalculator.calculate(preExtract(text)) >= 85;
+    }
+
+    private InvoiceData runStages(String text) {
         try {
+            // ========================================
+            // STUFE 0: Regelbasierte Vor-Extraktion (ohne LLM)
+            // ========================================
+            if (ruleBasedExtractor != null || templateStore != null) {
+                System.out.println("\n📐 STUFE 0: Vorlage / regelbasierte Vor-Extraktion...");
+                InvoiceData ruleData = preExtract(text);
+
+                int ruleScore = trustScoreCalculator.calculate(ruleData);
+                System.out.println("   Trust-Score: " + ruleScore + "%");
+
+                if (ruleScore >= 85) {
+                    System.out.println("   ✅ Erfolgreich auf Stufe 0 - kein LLM-Aufruf nötig!\n");
+                    return ruleData;
+                }
+
+                InvoiceData completed = completeMissingFields(text, ruleData);
+                if (completed != null) {
+                    return completed;
+                }
+            }
+
             // ========================================
             // STUFE 1: Standard-Extraktion
             // ========================================
-            System.out.println("\n🔍 STUFE 1: Standard-Extraktion...");
-            String json = extractor.extract(text);
+            EscalationPredictor.Prediction prediction =
+                escalationPredictor != null ? escalationPredictor.predict(text) : null;
             InvoiceData data = new InvoiceData();
-            parser.merge(data, json);
-            
-            int trustScore = trustScoreCalculator.calculate(data);
-            System.out.println("   Trust-Score: " + trustScore + "%");
+            int trustScore = 0;
+            // Spekulativ sind Stufe 1 und der volle Retry schon gelaufen - Stufe 2 macht dann nur noch
+            // Netto-Berechnung und gezielten Retry mit dem besseren Ergebnis
+            boolean fullRetryDone = false;
             
-            if (trustScore >= 85) {
-                System.out.println("   ✅ Erfolgreich auf Stufe 1!\n");
-                return data;
+            if ((prediction == null || !prediction.skipsStage1())
+                    && speculativeExecution && speculativeExtractor.hasCapacity()) {
+                SpeculativeExtractor.Outcome outcome = speculativeExtractor.run(text);
+                if (prediction != null && outcome.getStage1Score() != null) {
+                    escalationPredictor.record(text, prediction, outcome.getStage1Score() >= 85);
+                }
+                if (outcome.getTrustScore() >= 85) {
+                    System.out.println("   ✅ Erfolgreich auf Stufe " + outcome.getStage() + " (spekulativ)!\n");
+                    return outcome.getData();
+                }
+                
+                data = outcome.getData();
+                trustScore = outcome.getTrustScore();
+                fullRetryDone = true;
+            } else if (prediction != null && prediction.skipsStage1()) {
+                System.out.println("\n⏭️ STUFE 1 übersprungen - Vorhersage: Stufe " + prediction.getPredictedStage()
+                    + " (" + prediction.getReason() + ")");
+            } else {
+                System.out.println("\n🔍 STUFE 1: Standard-Extraktion...");
+                String json = extractor.extract(text);
+                parser.merge(data, json);
+                
+                trustScore = trustScoreCalculator.calculate(data);
+                System.out.println("   Trust-Score: " + trustScore + "%");
+                
+                if (prediction != null) {
+                    escalationPredictor.record(text, prediction, trustScore >= 85);
+                }
+                
+                if (trustScore >= 85) {
+                    System.out.println("   ✅ Erfolgreich auf Stufe 1!\n");
+                    return data;
+                }
             }
             
             // ========================================
@@ -68,21 +214,39 @@ public InvoiceParser(LlmExtractor extractor,
                 System.out.println("   Trust-Score nach Berechnung: " + trustScore + "%");
             }
             
+            // Gezielter Retry: nur fehlende/ungültige Pflichtfelder, parallel mit kleinen Prompts
+            Set<String> failedFields = trustScoreCalculator.failedFields(data);
+            if (!failedFields.isEmpty() && failedFields.size() < TrustScoreCalculator.REQUIRED_FIELDS.size()) {
+                InvoiceData targeted = retryFields(text, data, failedFields);
+                int targetedScore = trustScoreCalculator.calculate(targeted);
+                System.out.println("   Trust-Score nach gezieltem Retry: " + targetedScore + "%");
+
+                if (targetedScore >= 85) {
+                    System.out.println("   ✅ Erfolgreich auf Stufe 2 (gezielt)!\n");
+                    return targeted;
+                }
+                if (!fullRetryDone) {
+                    System.out.println("   → Gezielter Retry reicht nicht - voller Retry");
+                }
+            }
+
             // Retry
-            String retryJson = extractor.extractWithRetry(text);
-            InvoiceData retryData = new InvoiceData();
-            parser.merge(retryData, retryJson);
-            
-            int retryScore = trustScoreCalculator.calculate(retryData);
-            System.out.println("   Trust-Score nach Retry: " + retryScore + "%");
-            
-            // Verwende besseres Ergebnis
-            if (retryScore > trustScore) {
-                System.out.println("   ✅ Retry erfolgreich! Score: " + trustScore + "% → " + retryScore + "%");
-                data = retryData;
-                trustScore = retryScore;
-            } else {
-                System.out.println("   ⚠️ Retry brachte keine Verbesserung");
+            if (!fullRetryDone) {
+                String retryJson = extractor.extractWithRetry(text);
+                InvoiceData retryData = new InvoiceData();
+                parser.merge(retryData, retryJson);
+                
+                int retryScore = trustScoreCalculator.calculate(retryData);
+                System.out.println("   Trust-Score nach Retry: " + retryScore + "%");
+                
+                // Verwende besseres Ergebnis
+                if (retryScore > trustScore) {
+                    System.out.println("   ✅ Retry erfolgreich! Score: " + trustScore + "% → " + retryScore + "%");
+                    data = retryData;
+                    trustScore = retryScore;
+                } else {
+                    System.out.println("   ⚠️ Retry brachte keine Verbesserung");
+                }
             }
             
             if (trustScore >= 85) {
@@ -90,117 +254,264 @@ public InvoiceParser(LlmExtractor extractor,
                 return data;
             }
             
-            // ========================================
-            // STUFE 3: Manuelle Validierung (NUR bei sehr schlechten Ergebnissen)
-            // ========================================
-            
-            // WICHTIG: Stufe 3 nur wenn Trust-Score SEHR niedrig ist (< 50%)
-            // Verhindert, dass gute Ergebnisse verschlechtert werden
-            if (trustScore >= 50) {
-                System.out.println("\n⚠️ Trust-Score " + trustScore + "% - keine weitere Validierung");
-                System.out.println("   → Verwende Ergebnis aus Stufe 1/2 (Stufe 3 übersprungen)\n");
-                return data;
-            }
+            return validateLowTrust(text, data, trustScore);
             
-            System.out.println("\n🔬 STUFE 3: Validierung durch manuelle Durchrechnung...");
-            System.out.println("   → NUR weil Trust-Score sehr niedrig ist (" + trustScore + "%)");
+        } catch (Exception e) {
+            System.err.println("❌ Pipeline failed: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Pipeline failed: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * STUFE 3+4: Durchrechnung und Qualitätsprüfung für Ergebnisse unter dem Schwellwert.
+     */
+    private InvoiceData validateLowTrust(String text, InvoiceData data, int trustScore) throws Exception {
+        // ========================================
+        // STUFE 3: Manuelle Validierung (NUR bei sehr schlechten Ergebnissen)
+        // ========================================
+        
+        // WICHTIG: Stufe 3 nur wenn Trust-Score SEHR niedrig ist (< 50%)
+        // Verhindert, dass gute Ergebnisse verschlechtert werden
+        if (trustScore >= 50) {
+            System.out.println("\n⚠️ Trust-Score " + trustScore + "% - keine weitere Validierung");
+            System.out.println("   → Verwende Ergebnis aus Stufe 1/2 (Stufe 3 übersprungen)\n");
+            return data;
+        }
+        
+        System.out.println("\n🔬 STUFE 3: Validierung durch manuelle Durchrechnung...");
+        System.out.println("   → NUR weil Trust-Score sehr niedrig ist (" + trustScore + "%)");
+        
+        // Speichere Original-Daten für Vergleich
+        String originalNet = data.getNetAmount();
+        String originalGross = data.getGrossAmount();
+        
+        ValidationResult validation = lineItemCalculator != null
+            ? lineItemCalculator.recalculate(text, originalNet, originalGross)
+            : null;
+        
+        // Bei kombinierter Validierung liefert derselbe Aufruf schon das Ergebnis für Stufe 4
+        LlmResponseParser.QualityCheckResult combinedQualityCheck = null;
+        
+        if (validation != null) {
+            System.out.println("   → 🧮 Positionen deterministisch durchgerechnet (ohne LLM)");
+        } else if (combinedValidation) {
+            System.out.println("   → LLM rechnet Positionen durch und prüft alle Felder (ein Aufruf)...");
+            LlmResponseParser.CombinedValidationResult combined =
+                parser.parseCombinedValidation(extractor.validateAndCheck(text, data));
+            validation = combined.getValidation();
+            combinedQualityCheck = combined.getQualityCheck();
+        } else {
             System.out.println("   → LLM rechnet alle Positionen manuell durch...");
-            
-            // Speichere Original-Daten für Vergleich
-            String originalNet = data.getNetAmount();
-            String originalGross = data.getGrossAmount();
-            
             String validationJson = extractor.validateAndRecalculate(
                 text, 
                 data.getNetAmount(), 
                 data.getGrossAmount()
             );
+            validation = parser.parseValidation(validationJson);
+        }
+        
+        // Prüfe ob Durchrechnung bessere Werte liefert
+        if (validation.hasHighConfidence() && !validation.matches()) {
+            System.out.println("   ⚠️ Durchrechnung fand Abweichung:");
+            System.out.println("      Alt Netto: " + originalNet);
+            System.out.println("      Neu Netto: " + validation.getRecalculatedNet());
+            System.out.println("      Alt Brutto: " + originalGross);
+            System.out.println("      Neu Brutto: " + validation.getRecalculatedGross());
             
-            ValidationResult validation = parser.parseValidation(validationJson);
+            // Erstelle temporäre Kopie mit neuen Werten
+            InvoiceData validatedData = new InvoiceData();
+            validatedData.setCompanyName(data.getCompanyName());
+            validatedData.setInvoiceNumber(data.getInvoiceNumber());
+            validatedData.setInvoiceDate(data.getInvoiceDate());
+            validatedData.setServicePeriod(data.getServicePeriod());
+            validatedData.setNetAmount(validation.getRecalculatedNet());
+            validatedData.setGrossAmount(validation.getRecalculatedGross());
             
-            // Prüfe ob Durchrechnung bessere Werte liefert
-            if (validation.hasHighConfidence() && !validation.matches()) {
-                System.out.println("   ⚠️ LLM fand Abweichung:");
-                System.out.println("      Alt Netto: " + originalNet);
-                System.out.println("      Neu Netto: " + validation.getRecalculatedNet());
-                System.out.println("      Alt Brutto: " + originalGross);
-                System.out.println("      Neu Brutto: " + validation.getRecalculatedGross());
-                
-                // Erstelle temporäre Kopie mit neuen Werten
-                InvoiceData validatedData = new InvoiceData();
-                validatedData.setCompanyName(data.getCompanyName());
-                validatedData.setInvoiceNumber(data.getInvoiceNumber());
-                validatedData.setInvoiceDate(data.getInvoiceDate());
-                validatedData.setServicePeriod(data.getServicePeriod());
-                validatedData.setNetAmount(validation.getRecalculatedNet());
-                validatedData.setGrossAmount(validation.getRecalculatedGross());
-                
-                int newScore = trustScoreCalculator.calculate(validatedData);
-                System.out.println("   Trust-Score mit neuen Werten: " + newScore + "%");
-                
-                // NUR überschreiben wenn DEUTLICH besser (mindestens +20 Punkte)
-                if (newScore > trustScore + 20) {
-                    System.out.println("   ✅ Validation DEUTLICH besser - übernehme neue Werte!");
-                    System.out.println("      Score-Verbesserung: " + trustScore + "% → " + newScore + "%\n");
-                    return validatedData;
-                } else {
-                    System.out.println("   ⚠️ Validation brachte keine deutliche Verbesserung");
-                    System.out.println("      Behalte Original-Werte (safer choice)\n");
-                }
-            } else if (validation.matches()) {
-                System.out.println("   ✅ Durchrechnung bestätigt: Werte sind korrekt");
+            int newScore = trustScoreCalculator.calculate(validatedData);
+            System.out.println("   Trust-Score mit neuen Werten: " + newScore + "%");
+            
+            // NUR überschreiben wenn DEUTLICH besser (mindestens +20 Punkte)
+            if (newScore > trustScore + 20) {
+                System.out.println("   ✅ Validation DEUTLICH besser - übernehme neue Werte!");
+                System.out.println("      Score-Verbesserung: " + trustScore + "% → " + newScore + "%\n");
+                return validatedData;
             } else {
-                System.out.println("   ⚠️ Durchrechnung nicht möglich (confidence: " + validation.getConfidence() + ")");
+                System.out.println("   ⚠️ Validation brachte keine deutliche Verbesserung");
+                System.out.println("      Behalte Original-Werte (safer choice)\n");
             }
+        } else if (validation.matches()) {
+            System.out.println("   ✅ Durchrechnung bestätigt: Werte sind korrekt");
+        } else {
+            System.out.println("   ⚠️ Durchrechnung nicht möglich (confidence: " + validation.getConfidence() + ")");
+        }
+        
+        System.out.println("   → Verwende bestes Ergebnis mit Trust-Score: " + trustScore + "%\n");
+        
+        // ========================================
+        // STUFE 4: Finale Qualitätsprüfung (nur wenn Stufe 3 verwendet wurde)
+        // ========================================
+        
+        // Stufe 4 nur wenn wir bei Stufe 3 waren (als Double-Check)
+        if (trustScore < 50) {
+            System.out.println("\n🔍 STUFE 4: Finale Qualitätsprüfung (Self-Check)...");
             
-            System.out.println("   → Verwende bestes Ergebnis mit Trust-Score: " + trustScore + "%\n");
-            
-            // ========================================
-            // STUFE 4: Finale Qualitätsprüfung (nur wenn Stufe 3 verwendet wurde)
-            // ========================================
-            
-            // Stufe 4 nur wenn wir bei Stufe 3 waren (als Double-Check)
-            if (trustScore < 50) {
-                System.out.println("\n🔍 STUFE 4: Finale Qualitätsprüfung (Self-Check)...");
-                System.out.println("   → LLM prüft kritisch: Stimmen die extrahierten Daten?");
-                
-                try {
+            try {
+                LlmResponseParser.QualityCheckResult qualityCheck;
+                if (combinedQualityCheck != null) {
+                    System.out.println("   → Ergebnis aus kombinierter Validierung (kein weiterer LLM-Aufruf)");
+                    qualityCheck = combinedQualityCheck;
+                } else {
+                    System.out.println("   → LLM prüft kritisch: Stimmen die extrahierten Daten?");
                     String qualityJson = extractor.performQualityCheck(text, data);
-                    LlmResponseParser.QualityCheckResult qualityCheck = parser.parseQualityCheck(qualityJson);
+                    qualityCheck = parser.parseQualityCheck(qualityJson);
+                }
+                
+                if (!qualityCheck.isAllCorrect() && qualityCheck.hasHighConfidence()) {
+                    System.out.println("   ⚠️ LLM fand Probleme bei der Qualitätsprüfung:");
+                    for (String issue : qualityCheck.getIssues()) {
+                        System.out.println("      • " + issue);
+                    }
                     
-                    if (!qualityCheck.isAllCorrect() && qualityCheck.hasHighConfidence()) {
-                        System.out.println("   ⚠️ LLM fand Probleme bei der Qualitätsprüfung:");
-                        for (String issue : qualityCheck.getIssues()) {
-                            System.out.println("      • " + issue);
-                        }
-                        
-                        // Wenn LLM Korrekturen empfiehlt, setze Trust-Score niedriger
-                        if (qualityCheck.shouldUseCorrections()) {
-                            System.out.println("   ⚠️ Daten erscheinen inkorrekt - Trust-Score wird reduziert");
-                            // Markiere als problematisch durch niedrigen Score
-                            data.setNetAmount("0€"); // Triggert Trust-Score 0
-                        } else {
-                            System.out.println("   ℹ️ Behalte extrahierte Daten trotz Unsicherheit");
-                        }
-                    } else if (qualityCheck.isAllCorrect()) {
-                        System.out.println("   ✅ Qualitätsprüfung bestätigt: Alle Daten korrekt!");
+                    // Wenn LLM Korrekturen empfiehlt, setze Trust-Score niedriger
+                    if (qualityCheck.shouldUseCorrections()) {
+                        System.out.println("   ⚠️ Daten erscheinen inkorrekt - Trust-Score wird reduziert");
+                        // Markiere als problematisch durch niedrigen Score
+                        data.setNetAmount("0€"); // Triggert Trust-Score 0
                     } else {
-                        System.out.println("   ℹ️ Qualitätsprüfung inconclusive (confidence: " + qualityCheck.getConfidence() + ")");
+                        System.out.println("   ℹ️ Behalte extrahierte Daten trotz Unsicherheit");
                     }
-                } catch (Exception e) {
-                    System.err.println("   ⚠️ Qualitätsprüfung fehlgeschlagen: " + e.getMessage());
+                } else if (qualityCheck.isAllCorrect()) {
+                    System.out.println("   ✅ Qualitätsprüfung bestätigt: Alle Daten korrekt!");
+                } else {
+                    System.out.println("   ℹ️ Qualitätsprüfung inconclusive (confidence: " + qualityCheck.getConfidence() + ")");
                 }
+            } catch (Exception e) {
+                System.err.println("   ⚠️ Qualitätsprüfung fehlgeschlagen: " + e.getMessage());
             }
-            
-            return data;
-            
-        } catch (Exception e) {
-            System.err.println("❌ Pipeline failed: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Pipeline failed: " + e.getMessage(), e);
         }
+        
+        return data;
     }
     
+    /**
+     * STUFE 0: Vorlage des Lieferanten (falls bekannt), Lücken aus den allgemeinen Regeln.
+     */
+    private InvoiceData preExtract(String text) {
+        InvoiceData data = new InvoiceData();
+        Optional<String> templateJson = templateStore != null ? templateStore.apply(text) : Optional.empty();
+
+        if (templateJson.isPresent()) {
+            parser.merge(data, templateJson.get());
+            if (ruleBasedExtractor != null) {
+                parser.mergeMissing(data, ruleBasedExtractor.extract(text));
+            }
+        } else if (ruleBasedExtractor != null) {
+            parser.merge(data, ruleBasedExtractor.extract(text));
+        }
+        return data;
+    }
+
+    /**
+     * STUFE 1 (gezielt): Lässt nur die Felder vom LLM ergänzen, die Stufe 0 nicht gefunden hat.
+     *
+     * @return vervollständigte Daten bei Trust-Score >= 85, sonst null (→ volle Extraktion)
+     */
+    private InvoiceData completeMissingFields(String text, InvoiceData ruleData) {
+        List<String> missing = missingFields(ruleData);
+        if (missing.size() == LlmResponseParser.INVOICE_FIELDS.size()) {
+            return null; // Stufe 0 hat nichts gefunden
+        }
+        if (missing.isEmpty() || missing.equals(List.of("service_period"))) {
+            return null; // Alle Pflichtfelder da, aber unplausibel -> gezielte Abfrage hilft nicht
+        }
+
+        System.out.println("\n🎯 STUFE 1 (gezielt): Frage nur fehlende Felder ab: " + missing);
+        try {
+            String json = extractor.extractFields(text, missing);
+            if (json == null || json.isBlank()) {
+                return null;
+            }
+            InvoiceData completed = copyOf(ruleData);
+            parser.mergeMissing(completed, json);
+
+            int score = trustScoreCalculator.calculate(completed);
+            System.out.println("   Trust-Score: " + score + "%");
+            if (score >= 85) {
+                System.out.println("   ✅ Erfolgreich mit Stufe 0 + gezielter Abfrage!\n");
+                return completed;
+            }
+        } catch (Exception e) {
+            System.err.println("   ⚠️ Gezielte Abfrage fehlgeschlagen: " + e.getMessage());
+        }
+        System.out.println("   → Weiter mit voller Extraktion");
+        return null;
+    }
+
+    /**
+     * Fragt die angegebenen Felder parallel mit Einzelfeld-Prompts ab und ersetzt sie in einer Kopie.
+     */
+    private InvoiceData retryFields(String text, InvoiceData data, Set<String> fields) {
+        System.out.println("   🎯 Gezielter Retry für: " + fields);
+
+        Map<String, CompletableFuture<String>> answers = new LinkedHashMap<>();
+        for (String field : fields) {
+            answers.put(field, extractor.extractFieldAsync(text, field));
+        }
+
+        InvoiceData result = copyOf(data);
+        fields.forEach(field -> setField(result, field, null));
+        answers.forEach((field, answer) -> {
+            try {
+                String json = answer == null ? null : answer.join();
+                if (json != null && !json.isBlank()) {
+                    parser.mergeMissing(result, json);
+                }
+            } catch (Exception e) {
+                System.err.println("   ⚠️ Feld " + field + " fehlgeschlagen: " + e.getMessage());
+            }
+        });
+        return result;
+    }
+
+    private static void setField(InvoiceData data, String field, String value) {
+        switch (field) {
+            case "company_name" -> data.setCompanyName(value);
+            case "invoice_number" -> data.setInvoiceNumber(value);
+            case "invoice_date" -> data.setInvoiceDate(value);
+            case "net_amount" -> data.setNetAmount(value);
+            case "gross_amount" -> data.setGrossAmount(value);
+            case "service_period" -> data.setServicePeriod(value);
+            default -> { }
+        }
+    }
+
+    private static List<String> missingFields(InvoiceData data) {
+        List<String> missing = new ArrayList<>();
+        if (isBlank(data.getCompanyName())) missing.add("company_name");
+        if (isBlank(data.getInvoiceDate())) missing.add("invoice_date");
+        if (isBlank(data.getInvoiceNumber())) missing.add("invoice_number");
+        if (isBlank(data.getNetAmount())) missing.add("net_amount");
+        if (isBlank(data.getGrossAmount())) missing.add("gross_amount");
+        if (isBlank(data.getServicePeriod())) missing.add("service_period");
+        return missing;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static InvoiceData copyOf(InvoiceData data) {
+        InvoiceData copy = new InvoiceData();
+        copy.setCompanyName(data.getCompanyName());
+        copy.setInvoiceNumber(data.getInvoiceNumber());
+        copy.setInvoiceDate(data.getInvoiceDate());
+        copy.setServicePeriod(data.getServicePeriod());
+        copy.setNetAmount(data.getNetAmount());
+        copy.setGrossAmount(data.getGrossAmount());
+        return copy;
+    }
+
     private boolean couldBeGermanInvoice(String text) {
         String lower = text.toLowerCase();
         return lower.contains("mwst") || 
@@ -0,0 +1,258 @@
+package InvoiceBot.parser;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+
+/*
+Layout-bewusste Text-Extraktion.
+ * PDFTextStripper liefert nur Fließtext - welche Zahl zu "Netto" gehört und welche Spalte der Steuersatz ist,
+ * muss danach geraten werden. Diese Unterklasse sammelt stattdessen die Zeichen mit ihren Koordinaten
+ * (TextPosition) und baut pro Seite Zeilen (gleiche Grundlinie) und Zellen (große horizontale Lücken) auf:
+ *   - "Nettobetrag        169,98 €"  → "Nettobetrag: 169,98 €"
+ *   - Tabellenblöcke (≥ 3 Zellen)    → "Pos | Beschreibung | Menge | USt | Gesamt",
+ *                                      Spalten über den ganzen Block ausgerichtet, leere Zellen bleiben leer
+ *   - alles andere                   → Zeilentext mit einfachen Leerzeichen
+ * Das Ergebnis bleibt zeilenbasierter Text mit "\f" pro Seite - TextCompactor, RuleBasedExtractor
+ * und LineItemCalculator verarbeiten ihn ohne Änderung, das LLM bekommt keine Einrück-Leerzeichen mehr.
+
+Layout-aware text extraction: collects glyph coordinates and rebuilds rows, column-aligned tables
+ * and key-value pairs into a compact line-based representation.
+*/
+
+public class LayoutTextStripper extends PDFTextStripper {
+
+    // Lücken relativ zur Leerzeichenbreite der Schrift
+    private static final float WORD_GAP = 0.5f;
+    private static final float CELL_GAP = 2.5f;
+    // Zeichen mit Grundlinien-Abstand bis zu diesem Anteil der Zeichenhöhe liegen in derselben Zeile
+    private static final float ROW_TOLERANCE = 0.4f;
+    private static final int MIN_TABLE_CELLS = 3;
+
+    private static final Pattern LETTER = Pattern.compile("\\p{L}");
+
+    private final List<Glyph> glyphs = new ArrayList<>();
+
+    public LayoutTextStripper() throws IOException {
+        super();
+        setSortByPosition(true);
+    }
+
+    private static class Glyph {
+        final float x;
+        final float y;
+        final float width;
+        final float height;
+        final float spaceWidth;
+        final String text;
+
+        Glyph(TextPosition position) {
+            this.x = position.getXDirAdj();
+            this.y = position.getYDirAdj();
+            this.width = position.getWidthDirAdj();
+            this.height = position.getHeightDir() > 0 ? position.getHeightDir() : 2f;
+            float space = position.getWidthOfSpace();
+            // Manche Schriften melden keine Leerzeichenbreite (0 oder NaN)
+            this.spaceWidth = space > 0 ? space : this.height * 0.25f;
+            this.text = position.getUnicode();
+        }
+
+        float endX() {
+            return x + width;
+        }
+    }
+
+    private static class Cell {
+        final StringBuilder text = new StringBuilder();
+        float startX;
+        float endX;
+
+        Cell(Glyph first) {
+            this.startX = first.x;
+            this.endX = first.endX();
+            text.append(first.text);
+        }
+
+        void append(Glyph glyph, boolean space) {
+            if (space) {
+                text.append(' ');
+            }
+            text.append(glyph.text);
+            endX = Math.max(endX, glyph.endX());
+        }
+
+        boolean overlaps(float from, float to) {
+            return startX <= to && endX >= from;
+        }
+    }
+
+    @Override
+    protected void startPage(PDPage page) throws IOException {
+        glyphs.clear();
+        super.startPage(page);
+    }
+
+    /**
+     * Zeichen nur sammeln - der Text wird erst am Seitenende aus den Koordinaten aufgebaut.
+     */
+    @Override
+    protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
+        for (TextPosition position : textPositions) {
+            String unicode = position.getUnicode();
+            if (unicode != null && !unicode.isBlank()) {
+                glyphs.add(new Glyph(position));
+            }
+        }
+    }
+
+    @Override
+    protected void writeWordSeparator() {
+        // Wortgrenzen ergeben sich aus den Koordinaten
+    }
+
+    @Override
+    protected void writeLineSeparator() {
+        // Zeilen ergeben sich aus den Koordinaten
+    }
+
+    @Override
+    protected void writePageEnd() throws IOException {
+        output.write(layoutPage());
+        glyphs.clear();
+        super.writePageEnd();
+    }
+
+    private String layoutPage() {
+        List<List<Cell>> rows = new ArrayList<>();
+        for (List<Glyph> row : groupRows()) {
+            rows.add(toCells(row));
+        }
+
+        StringBuilder page = new StringBuilder();
+        int i = 0;
+        while (i < rows.size()) {
+            if (rows.get(i).size() >= MIN_TABLE_CELLS) {
+                int end = i;
+                while (end < rows.size() && rows.get(end).size() >= MIN_TABLE_CELLS) {
+                    end++;
+                }
+                appendTable(page, rows.subList(i, end));
+                i = end;
+            } else {
+                page.append(formatRow(rows.get(i))).append('\n');
+                i++;
+            }
+        }
+        return page.toString();
+    }
+
+    /**
+     * Zeilen von oben nach unten, Zeichen innerhalb einer Zeile von links nach rechts.
+     */
+    private List<List<Glyph>> groupRows() {
+        List<Glyph> sorted = new ArrayList<>(glyphs);
+        sorted.sort(Comparator.comparingDouble((Glyph g) -> g.y).thenComparingDouble(g -> g.x));
+
+        List<List<Glyph>> rows = new ArrayList<>();
+        List<Glyph> row = null;
+        float rowY = 0;
+        for (Glyph glyph : sorted) {
+            if (row == null || Math.abs(glyph.y - rowY) > ROW_TOLERANCE * glyph.height) {
+                row = new ArrayList<>();
+                rows.add(row);
+                rowY = glyph.y;
+            }
+            row.add(glyph);
+        }
+        for (List<Glyph> r : rows) {
+            r.sort(Comparator.comparingDouble(g -> g.x));
+        }
+        return rows;
+    }
+
+    private static List<Cell> toCells(List<Glyph> row) {
+        List<Cell> cells = new ArrayList<>();
+        Cell cell = null;
+        Glyph previous = null;
+        for (Glyph glyph : row) {
+            float gap = previous != null ? glyph.x - previous.endX() : 0;
+            if (cell == null || gap > CELL_GAP * previous.spaceWidth) {
+                cell = new Cell(glyph);
+                cells.add(cell);
+            } else {
+                cell.append(glyph, gap > WORD_GAP * previous.spaceWidth);
+            }
+            previous = glyph;
+        }
+        return cells;
+    }
+
+    /**
+     * Zwei Zellen mit Beschriftung links werden zum Schlüssel-Wert-Paar, sonst Zellen mit " | ".
+     */
+    private static String formatRow(List<Cell> cells) {
+        if (cells.size() == 2 && LETTER.matcher(cells.get(0).text).find()) {
+            String key = cells.get(0).text.toString().replaceFirst(":\\s*$", "");
+            return key + ": " + cells.get(1).text;
+        }
+        List<String> texts = new ArrayList<>();
+        for (Cell cell : cells) {
+            texts.add(cell.text.toString());
+        }
+        return String.join(cells.size() == 1 ? "" : " | ", texts);
+    }
+
+    /**
+     * Spalten = überlappende x-Bereiche aller Zellen des Blocks. Jede Zeile wird auf diese Spalten verteilt,
+     * damit z.B. eine fehlende Menge nicht den Steuersatz eine Spalte nach links verschiebt.
+     * Lassen sich die Spalten nicht sauber trennen (überlappende Zellen), bleibt es bei den Zellen je Zeile.
+     */
+    private static void appendTable(StringBuilder page, List<List<Cell>> rows) {
+        List<float[]> columns = columns(rows);
+        int maxCells = rows.stream().mapToInt(List::size).max().orElse(0);
+
+        for (List<Cell> row : rows) {
+            if (columns.size() < maxCells) {
+                page.append(formatRow(row)).append('\n');
+                continue;
+            }
+            String[] values = new String[columns.size()];
+            for (Cell cell : row) {
+                for (int c = 0; c < columns.size(); c++) {
+                    if (cell.overlaps(columns.get(c)[0], columns.get(c)[1])) {
+                        values[c] = values[c] == null ? cell.text.toString() : values[c] + " " + cell.text;
+                        break;
+                    }
+                }
+            }
+            for (int c = 0; c < values.length; c++) {
+                page.append(c == 0 ? "" : " | ").append(values[c] != null ? values[c] : "");
+            }
+            page.append('\n');
+        }
+    }
+
+    private static List<float[]> columns(List<List<Cell>> rows) {
+        List<Cell> cells = new ArrayList<>();
+        rows.forEach(cells::addAll);
+        cells.sort(Comparator.comparingDouble(cell -> cell.startX));
+
+        List<float[]> columns = new ArrayList<>();
+        for (Cell cell : cells) {
+            float[] last = columns.isEmpty() ? null : columns.get(columns.size() - 1);
+            if (last != null && cell.startX <= last[1]) {
+                last[1] = Math.max(last[1], cell.endX);
+            } else {
+                columns.add(new float[] {cell.startX, cell.endX});
+            }
+        }
+        return columns;
+    }
+}
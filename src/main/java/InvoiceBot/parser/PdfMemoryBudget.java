@@ -0,0 +1,142 @@
+package InvoiceBot.parser;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+
+
+/*
+Gemeinsames Speicher-Budget für gleichzeitig geladene PDFs.
+ * Jedes Dokument reserviert vor dem Laden seinen geschätzten Heap-Bedarf (Dateigröße × Faktor).
+ * Ist das Budget erschöpft, wartet die Extraktion - so viele Dateien gleichzeitig, wie der Heap hergibt.
+ * Dokumente über der Obergrenze pro Dokument werden "gemischt" geladen: bis zur Grenze im Heap,
+ * der Rest in einer Temp-Datei (PDFBox MemoryUsageSetting) - 200-seitige Scans führen nicht mehr zum OOM.
+ * Zusätzlich wird gewartet, solange der Heap tatsächlich knapp ist (> 85 % belegt).
+
+Shared memory budget for concurrent PDF loading.
+ * Each document reserves its estimated heap need before loading; large documents are loaded
+ * temp-file-backed with a per-document main-memory cap. Waits while the heap is nearly full.
+*/
+
+@Component
+public class PdfMemoryBudget {
+
+    // PDFBox braucht für geparste Objekte und dekodierte Streams ein Vielfaches der Dateigröße
+    private static final int HEAP_FACTOR = 4;
+    private static final double HEAP_PRESSURE = 0.85;
+    private static final long PRESSURE_POLL_MS = 200;
+
+    private final long budgetBytes;
+    private final long maxMainMemoryBytes;
+
+    private long reservedBytes;
+    private int inFlight;
+    private long peakReservedBytes;
+    private long tempFileLoads;
+    private long waits;
+
+    /**
+     * @param budgetBytes        Budget für alle Dokumente zusammen (0 = 40 % des maximalen Heaps)
+     * @param maxMainMemoryBytes Heap-Obergrenze pro Dokument, darüber Temp-Datei
+     */
+    public PdfMemoryBudget(@Value("${pdf.memory-budget-bytes:0}") long budgetBytes,
+                           @Value("${pdf.max-main-memory-bytes:67108864}") long maxMainMemoryBytes) {
+        this.budgetBytes = budgetBytes > 0 ? budgetBytes : (long) (Runtime.getRuntime().maxMemory() * 0.4);
+        this.maxMainMemoryBytes = Math.max(1, maxMainMemoryBytes);
+    }
+
+    /**
+     * Reservierter Speicher eines Dokuments; close() gibt ihn wieder frei.
+     */
+    public class Lease implements AutoCloseable {
+        private final long bytes;
+        private final MemoryUsageSetting memoryUsageSetting;
+        private boolean released;
+
+        Lease(long bytes, MemoryUsageSetting memoryUsageSetting) {
+            this.bytes = bytes;
+            this.memoryUsageSetting = memoryUsageSetting;
+        }
+
+        public long getBytes() { return bytes; }
+        public MemoryUsageSetting getMemoryUsageSetting() { return memoryUsageSetting; }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    /**
+     * Wartet, bis genug Budget frei ist, und reserviert den Bedarf des Dokuments.
+     * Ein einzelnes Dokument bekommt immer einen Platz, auch wenn es das Budget allein übersteigt.
+     */
+    public Lease acquire(File pdf) throws InterruptedException {
+        long estimate = Math.max(1, pdf.length()) * HEAP_FACTOR;
+        boolean mixed = estimate > maxMainMemoryBytes;
+        long bytes = Math.min(estimate, maxMainMemoryBytes);
+        MemoryUsageSetting setting = mixed
+            ? MemoryUsageSetting.setupMixed(maxMainMemoryBytes)
+            : MemoryUsageSetting.setupMainMemoryOnly();
+
+        synchronized (this) {
+            boolean waited = false;
+            while (inFlight > 0 && (reservedBytes + bytes > budgetBytes || heapUnderPressure())) {
+                waited = true;
+                wait(PRESSURE_POLL_MS);
+            }
+            if (waited) {
+                waits++;
+            }
+            if (mixed) {
+                tempFileLoads++;
+                System.out.println("💽 " + pdf.getName() + ": " + (pdf.length() / 1024 / 1024)
+                    + " MB - Laden mit Temp-Datei (max. " + (maxMainMemoryBytes / 1024 / 1024) + " MB im Heap)");
+            }
+            reservedBytes += bytes;
+            inFlight++;
+            peakReservedBytes = Math.max(peakReservedBytes, reservedBytes);
+        }
+        return new Lease(bytes, setting);
+    }
+
+    private synchronized void release(Lease lease) {
+        if (lease.released) {
+            return;
+        }
+        lease.released = true;
+        reservedBytes -= lease.bytes;
+        inFlight--;
+        notifyAll();
+    }
+
+    private static boolean heapUnderPressure() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return used > runtime.maxMemory() * HEAP_PRESSURE;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public synchronized long getPeakReservedBytes() {
+        return peakReservedBytes;
+    }
+
+    /** Dokumente, die mit Temp-Datei geladen wurden. */
+    public synchronized long getTempFileLoads() {
+        return tempFileLoads;
+    }
+
+    /** Extraktionen, die auf freies Budget warten mussten. */
+    public synchronized long getWaits() {
+        return waits;
+    }
+}
@@ -0,0 +1,126 @@
+package InvoiceBot.parser;
+
+import InvoiceBot.cache.DiskLruIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/*
+Persistenter Cache für extrahierten PDF-Text.
+ * Schlüssel = SHA-256 über die Datei-Bytes (per Memory-Mapping gelesen) - unabhängig von Dateiname und Ablageort.
+ * Erneute Läufe, "nur Fehlgeschlagene wiederholen" und doppelte Uploads überspringen PDFBox komplett.
+ * Text wird gzip-komprimiert abgelegt, größenbegrenzt mit LRU-Verdrängung.
+
+Persistent cache for extracted PDF text, keyed by the SHA-256 of the file bytes (memory-mapped read).
+ * Entries are gzip-compressed; size-bounded with LRU eviction. A hit skips PDFBox entirely.
+*/
+
+@Component
+public class PdfTextCache {
+
+    private static final String FILE_SUFFIX = ".txt.gz";
+    private static final long MAP_CHUNK_BYTES = 64L * 1024 * 1024;
+
+    private final Path directory;
+    private final DiskLruIndex index;
+    private long hits;
+    private long misses;
+
+    public PdfTextCache(@Value("${pdf.text-cache.dir:${user.home}/.invoicebot/text-cache}") String directory,
+                        @Value("${pdf.text-cache.max-bytes:134217728}") long maxBytes) {
+        this.directory = Paths.get(directory);
+        this.index = new DiskLruIndex(this.directory, FILE_SUFFIX, 1, maxBytes, "Text-Cache");
+    }
+
+    /**
+     * SHA-256 über den Dateiinhalt. Die Datei wird abschnittsweise in den Speicher gemappt
+     * statt über einen Heap-Puffer kopiert.
+     */
+    public static String hash(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_CHUNK_BYTES) {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MAP_CHUNK_BYTES, size - position));
+                digest.update(chunk);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    public synchronized Optional<String> get(String hash) {
+        Path file = fileFor(hash);
+        if (!index.contains(file)) {
+            misses++;
+            return Optional.empty();
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            index.touch(file);
+            hits++;
+            return Optional.of(text);
+        } catch (IOException e) {
+            System.err.println("⚠️ Text-Cache nicht lesbar: " + file + " (" + e.getMessage() + ")");
+            index.remove(file);
+            misses++;
+            return Optional.empty();
+        }
+    }
+
+    public synchronized void put(String hash, String text) {
+        if (!index.isEnabled()) {
+            return;
+        }
+        try {
+            index.write(fileFor(hash), tmp -> {
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                    out.write(text.getBytes(StandardCharsets.UTF_8));
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("⚠️ Text-Cache konnte nicht geschrieben werden: " + e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /** Belegter Platz auf der Festplatte (komprimiert). */
+    public synchronized long getTotalBytes() {
+        return index.getTotalBytes();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private Path fileFor(String hash) {
+        return directory.resolve(hash + FILE_SUFFIX);
+    }
+}
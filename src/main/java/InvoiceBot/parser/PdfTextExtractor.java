@@ -1,22 +1,252 @@
 package InvoiceBot.parser;
 
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
 
 
 /* PDF-Text-Extraktor.
  * Verwendet Apache PDFBox zur Extraktion von Text aus PDF-Dokumenten.
+ * Lange Dokumente können seitenweise (mit Abbruch) oder parallel in Seitenbereichen gelesen werden.
+ * Mit {@code layout = true} liefert {@link LayoutTextStripper} Zeilen, Tabellenspalten und Schlüssel-Wert-Paare.
  */
 
 @Service
 public class PdfTextExtractor {
 
+    // Jeder Teilbereich öffnet das Dokument erneut - zu kleine Bereiche lohnen den Parse-Aufwand nicht
+    private static final int MIN_PAGES_PER_TASK = 10;
+
     public static String extract(File pdf) throws Exception {
         try (PDDocument doc = PDDocument.load(pdf)) {
-            return new PDFTextStripper().getText(doc);
+            return extract(doc);
+        }
+    }
+
+    /**
+     * Lädt mit begrenztem Heap (z.B. {@link MemoryUsageSetting#setupMixed(long)} - Rest in Temp-Datei).
+     */
+    public static String extract(File pdf, MemoryUsageSetting memoryUsage) throws Exception {
+        try (PDDocument doc = PDDocument.load(pdf, memoryUsage)) {
+            return extract(doc);
+        }
+    }
+
+    public static String extract(PDDocument doc) throws Exception {
+        return extract(doc, false);
+    }
+
+    public static String extract(PDDocument doc, boolean layout) throws Exception {
+        return newStripper(layout).getText(doc);
+    }
+
+    /**
+     * Seitenweise Extraktion: erste Seite, letzte Seite, dann der Rest (Summen stehen fast immer
+     * auf Seite 1 oder der letzten Seite). Nach jeder Seite prüft {@code isComplete} den bisherigen Text
+     * (Seiten in Dokument-Reihenfolge) - sobald alle Felder gefunden sind, werden die übrigen Seiten
+     * nicht mehr gelesen. Bei 30-seitigen Einzelverbindungsnachweisen spart das CPU und Prompt-Text.
+     *
+     * @param isComplete z.B. "Stufe 0 findet alle Felder" - wird nie für das vollständige Dokument aufgerufen
+     */
+    public static String extractLazily(PDDocument doc, Predicate<String> isComplete) throws Exception {
+        return extractLazily(doc, isComplete, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Wie {@link #extractLazily(PDDocument, Predicate)}, liest aber höchstens {@code maxPages} Seiten.
+     *
+     * @return Text, sobald vollständig bzw. alle Seiten gelesen - null, wenn nach {@code maxPages}
+     *         Seiten noch Felder fehlen (Rest z.B. mit {@link #extractParallel} lesen)
+     */
+    public static String extractLazily(PDDocument doc, Predicate<String> isComplete, int maxPages) throws Exception {
+        return extractLazily(doc, isComplete, maxPages, false);
+    }
+
+    public static String extractLazily(PDDocument doc, Predicate<String> isComplete, int maxPages,
+                                       boolean layout) throws Exception {
+        return extractLazily(doc, isComplete, maxPages, layout, new String[doc.getNumberOfPages()]);
+    }
+
+    /**
+     * @param pageTexts Ausgabe, Länge = Seitenzahl: gelesene Seiten (Index = Seite - 1), ungelesene bleiben null.
+     *                  Bricht die Extraktion nach {@code maxPages} ab, muss der Aufrufer nur noch die Lücken lesen.
+     */
+    public static String extractLazily(PDDocument doc, Predicate<String> isComplete, int maxPages,
+                                       boolean layout, String[] pageTexts) throws Exception {
+        int pages = doc.getNumberOfPages();
+        PDFTextStripper stripper = newStripper(layout);
+        int extracted = 0;
+
+        for (int page : pageOrder(pages)) {
+            stripper.setStartPage(page);
+            stripper.setEndPage(page);
+            pageTexts[page - 1] = stripper.getText(doc);
+            extracted++;
+
+            if (extracted < pages) {
+                String partial = join(pageTexts);
+                if (isComplete.test(partial)) {
+                    System.out.println("📄 " + extracted + "/" + pages + " Seiten gelesen - alle Felder gefunden");
+                    return partial;
+                }
+                if (extracted >= maxPages) {
+                    return null;
+                }
+            }
+        }
+        return join(pageTexts);
+    }
+
+    /**
+     * Parallele Extraktion für sehr lange PDFs: Die Seitenbereiche werden per Fork/Join aufgeteilt.
+     * PDDocument ist nicht thread-sicher - jeder Teilbereich lädt die Datei daher selbst.
+     * Die Texte werden in Seitenreihenfolge zusammengesetzt (identisch zu {@link #extract(PDDocument)}).
+     *
+     * @param pages       Seitenzahl des Dokuments
+     * @param memoryUsage Speicher-Einstellung für jedes geöffnete Dokument (null = PDFBox-Standard)
+     */
+    public static String extractParallel(File pdf, int pages, MemoryUsageSetting memoryUsage) throws Exception {
+        return extractParallel(pdf, pages, memoryUsage, false);
+    }
+
+    public static String extractParallel(File pdf, int pages, MemoryUsageSetting memoryUsage,
+                                         boolean layout) throws Exception {
+        return extractParallel(pdf, 1, pages, memoryUsage, null, layout);
+    }
+
+    /**
+     * Liest nur die Seiten [startPage, endPage] parallel. Mit {@code budget} reserviert jeder Teilbereich
+     * vor dem Laden seinen eigenen Speicher - sonst hielten n Teilbereiche n Kopien des Dokuments
+     * im Heap, ohne dass das Budget davon weiß. Der Aufrufer sollte sein eigenes Dokument vorher schließen.
+     */
+    public static String extractParallel(File pdf, int startPage, int endPage, PdfMemoryBudget budget,
+                                         boolean layout) throws Exception {
+        return extractParallel(pdf, startPage, endPage, null, budget, layout);
+    }
+
+    private static String extractParallel(File pdf, int startPage, int endPage, MemoryUsageSetting memoryUsage,
+                                          PdfMemoryBudget budget, boolean layout) throws Exception {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int pages = endPage - startPage + 1;
+        int pagesPerTask = Math.max(MIN_PAGES_PER_TASK, (pages + pool.getParallelism() - 1) / pool.getParallelism());
+        long startTime = System.currentTimeMillis();
+        try {
+            String text = pool.invoke(
+                new PageRangeTask(pdf, memoryUsage, budget, layout, startPage, endPage, pagesPerTask));
+            System.out.println("📄 " + pages + " Seiten parallel gelesen (" + pool.getParallelism() + " Threads, "
+                + (System.currentTimeMillis() - startTime) + "ms)");
+            return text;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Teilt [startPage, endPage] so lange, bis ein Bereich klein genug ist, und liest ihn mit eigenem Dokument.
+     */
+    private static class PageRangeTask extends RecursiveTask<String> {
+        private final File pdf;
+        private final MemoryUsageSetting memoryUsage;
+        private final PdfMemoryBudget budget;
+        private final boolean layout;
+        private final int startPage;
+        private final int endPage;
+        private final int pagesPerTask;
+
+        PageRangeTask(File pdf, MemoryUsageSetting memoryUsage, PdfMemoryBudget budget, boolean layout,
+                      int startPage, int endPage, int pagesPerTask) {
+            this.pdf = pdf;
+            this.memoryUsage = memoryUsage;
+            this.budget = budget;
+            this.layout = layout;
+            this.startPage = startPage;
+            this.endPage = endPage;
+            this.pagesPerTask = pagesPerTask;
+        }
+
+        @Override
+        protected String compute() {
+            if (endPage - startPage + 1 <= pagesPerTask) {
+                return extractRange();
+            }
+            int middle = (startPage + endPage) / 2;
+            PageRangeTask left = new PageRangeTask(pdf, memoryUsage, budget, layout, startPage, middle, pagesPerTask);
+            PageRangeTask right = new PageRangeTask(pdf, memoryUsage, budget, layout, middle + 1, endPage, pagesPerTask);
+            left.fork();
+            String rightText = right.compute();
+            return left.join() + rightText;
+        }
+
+        private String extractRange() {
+            try (PdfMemoryBudget.Lease lease = budget != null ? budget.acquire(pdf) : null;
+                 PDDocument doc = load(lease != null ? lease.getMemoryUsageSetting() : memoryUsage)) {
+                PDFTextStripper stripper = newStripper(layout);
+                stripper.setStartPage(startPage);
+                stripper.setEndPage(endPage);
+                return stripper.getText(doc);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Warten auf Speicher-Budget abgebrochen"));
+            }
+        }
+
+        private PDDocument load(MemoryUsageSetting setting) throws IOException {
+            return setting != null ? PDDocument.load(pdf, setting) : PDDocument.load(pdf);
+        }
+    }
+
+    /**
+     * Lesereihenfolge der Seiten (1-basiert): 1, n, 2, 3, ..., n-1.
+     */
+    public static List<Integer> pageOrder(int pages) {
+        List<Integer> order = new ArrayList<>();
+        if (pages < 1) {
+            return order;
+        }
+        order.add(1);
+        if (pages > 1) {
+            order.add(pages);
+        }
+        for (int page = 2; page < pages; page++) {
+            order.add(page);
+        }
+        return order;
+    }
+
+    /**
+     * Anzahl der Seiten in einem extrahierten Text (jede Seite endet mit "\f").
+     * Seitenweise abgebrochene Extraktionen enthalten weniger Seiten als das Dokument.
+     */
+    public static int pageCount(String text) {
+        return (int) text.chars().filter(c -> c == '\f').count();
+    }
+
+    private static PDFTextStripper newStripper(boolean layout) throws IOException {
+        PDFTextStripper stripper = layout ? new LayoutTextStripper() : new PDFTextStripper();
+        stripper.setPageEnd("\f"); // Seitengrenzen für TextCompactor (Kopf-/Fußzeilen)
+        return stripper;
+    }
+
+    private static String join(String[] pageTexts) {
+        StringBuilder text = new StringBuilder();
+        for (String pageText : pageTexts) {
+            if (pageText != null) {
+                text.append(pageText);
+            }
         }
+        return text.toString();
     }
-}
\ No newline at end of file
+}
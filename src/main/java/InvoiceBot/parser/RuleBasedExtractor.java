@@ -0,0 +1,121 @@
+package InvoiceBot.parser;
+
+import org.json.JSONObject;
+import org.springframework.stereotype.Component;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/*
+Regelbasierte Vor-Extraktion (Stufe 0) ohne LLM.
+ * Sucht typische deutsche Beschriftungen ("Rechnungsnummer:", "Rechnungsdatum:", "Netto", "Gesamtbetrag")
+ * mit vorkompilierten Mustern. Liefert dasselbe JSON-Format wie der LLM-Extraktions-Prompt,
+ * damit die Normalisierung über LlmResponseParser.merge() identisch bleibt.
+
+Rule-based pre-extraction (stage 0) without the LLM.
+ * Matches common German labels with precompiled patterns and emits the same JSON
+ * shape as the LLM extraction prompt. Fields that are not found are left out.
+*/
+
+@Component
+public class RuleBasedExtractor {
+
+    private static final String AMOUNT = "(\\d{1,3}(?:[. ]\\d{3})+,\\d{2}|\\d+,\\d{2}|\\d+\\.\\d{2})";
+    private static final String CURRENCY = "\\s*(€|EUR|\\$|USD)?";
+    private static final String DATE = "(\\d{1,2}\\.\\d{1,2}\\.\\d{2,4})";
+
+    // Rechnungsnummer muss mindestens eine Ziffer enthalten ("Rechnungsnummer: siehe unten" zählt nicht)
+    private static final Pattern INVOICE_NUMBER = Pattern.compile(
+        "(?<![\\w-])(?:Rechnungs-?(?:nummer|nr\\.?)|Rechnung\\s+Nr\\.?|Invoice\\s+(?:No\\.?|Number|#))\\s*[:#]?\\s*"
+            + "([A-Z0-9][A-Z0-9\\-/_.]*\\d[A-Z0-9\\-/_.]*|\\d)",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern INVOICE_DATE_STRONG = Pattern.compile(
+        "(?<![\\w-])(?:Rechnungsdatum|Invoice\\s+Date)\\s*:?\\s*" + DATE,
+        Pattern.CASE_INSENSITIVE);
+
+    // "Lieferdatum", "Fälligkeitsdatum" etc. werden durch den Lookbehind ausgeschlossen
+    private static final Pattern INVOICE_DATE_WEAK = Pattern.compile(
+        "(?<![\\w-])Datum\\s*:?\\s*" + DATE,
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern COMPANY_NAME = Pattern.compile(
+        "^\\s*(?:Von|Absender|Rechnungssteller)\\s*:\\s*(\\S.*?)\\s*$",
+        Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+
+    private static final Pattern NET_AMOUNT = Pattern.compile(
+        "(?<![\\w-])(?:Nettobetrag|Netto(?:summe)?|Summe\\s+netto|Gesamt\\s+netto|Zwischensumme)\\b[^\\d\\n]{0,30}?"
+            + AMOUNT + CURRENCY,
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern GROSS_AMOUNT_STRONG = Pattern.compile(
+        "(?<![\\w-])(?:Gesamtbetrag|Rechnungsbetrag|Bruttobetrag|Endbetrag|Gesamtsumme|Zu\\s+zahlen(?:der\\s+Betrag)?)\\b"
+            + "[^\\d\\n]{0,30}?" + AMOUNT + CURRENCY,
+        Pattern.CASE_INSENSITIVE);
+
+    // "MwSt-Betrag", "MwSt Betrag", "USt. Betrag" oder "Steuerbetrag" sind kein Bruttobetrag
+    // -> Lookbehind auf Wortzeichen, Bindestrich und vorangestelltes Steuer-Wort
+    private static final Pattern GROSS_AMOUNT_WEAK = Pattern.compile(
+        "(?<![\\w-])(?<!(?:\\bMwSt|\\bUSt|Steuer)\\.?\\s{0,3})(?:Brutto|Betrag)\\b(?!\\s*netto)[^\\d\\n]{0,30}?" + AMOUNT + CURRENCY,
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SERVICE_PERIOD = Pattern.compile(
+        "(?<![\\w-])Leistungszeitraum\\s*:?\\s*" + DATE + "\\s*(?:-|–|bis)\\s*" + DATE,
+        Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Extrahiert alle Felder, die sich eindeutig per Muster finden lassen.
+     *
+     * @param text Rohtext der Rechnung
+     * @return JSON im Format des Extraktions-Prompts (nur gefundene Felder)
+     */
+    public String extract(String text) {
+        JSONObject json = new JSONObject();
+        if (text == null || text.isBlank()) {
+            return json.toString();
+        }
+
+        String number = firstGroup(INVOICE_NUMBER, text);
+        putIfFound(json, "invoice_number", number != null ? number.replaceAll("[-/_.]+$", "") : null);
+
+        String date = firstGroup(INVOICE_DATE_STRONG, text);
+        putIfFound(json, "invoice_date", date != null ? date : firstGroup(INVOICE_DATE_WEAK, text));
+
+        putIfFound(json, "company_name", firstGroup(COMPANY_NAME, text));
+
+        // Summen stehen üblicherweise am Ende -> letzter Treffer gewinnt
+        putIfFound(json, "net_amount", lastAmount(NET_AMOUNT, text));
+
+        String gross = lastAmount(GROSS_AMOUNT_STRONG, text);
+        putIfFound(json, "gross_amount", gross != null ? gross : lastAmount(GROSS_AMOUNT_WEAK, text));
+
+        Matcher period = SERVICE_PERIOD.matcher(text);
+        if (period.find()) {
+            json.put("service_period", period.group(1) + " - " + period.group(2));
+        }
+
+        return json.toString();
+    }
+
+    private static String firstGroup(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static String lastAmount(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        String amount = null;
+        while (matcher.find()) {
+            String currency = matcher.group(2);
+            amount = matcher.group(1) + " " + (currency != null ? currency : "€");
+        }
+        return amount;
+    }
+
+    private static void putIfFound(JSONObject json, String field, String value) {
+        if (value != null && !value.isBlank()) {
+            json.put(field, value.trim());
+        }
+    }
+}
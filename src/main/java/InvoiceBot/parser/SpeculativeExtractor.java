@@ -0,0 +1,195 @@
+package InvoiceBot.parser;
+
+import InvoiceBot.llm.LlmExtractor;
+import InvoiceBot.llm.LlmResponseParser;
+import InvoiceBot.model.InvoiceData;
+import InvoiceBot.validation.TrustScoreCalculator;
+
+import java.util.concurrent.CompletableFuture;
+
+
+/*
+Spekulative Ausführung von Stufe 1 und Stufe 2 (nur bei freien LLM-Slots).
+ * Beide Prompts laufen gleichzeitig; das erste Ergebnis, das den Trust-Score-Schwellwert erreicht,
+ * gewinnt und der andere Request wird abgebrochen. Scheitern beide, geht es mit dem besseren weiter.
+ * Die verworfenen Tokens werden mitgezählt (Verschwendungsquote = Server-Kapazität gegen p95-Latenz).
+
+Speculative stage 1 / stage 2 execution when the LLM server has spare slots.
+ * First result passing the trust threshold wins, the other call is cancelled; tracks the wasted-token ratio.
+*/
+
+public class SpeculativeExtractor {
+
+    private static final int TRUST_THRESHOLD = 85;
+
+    private final LlmExtractor extractor;
+    private final LlmResponseParser parser;
+    private final TrustScoreCalculator trustScoreCalculator;
+
+    private long races;
+    private long stage1Wins;
+    private long stage2Wins;
+    private long totalTokens;
+    private long wastedTokens;
+
+    public SpeculativeExtractor(LlmExtractor extractor, LlmResponseParser parser,
+                                TrustScoreCalculator trustScoreCalculator) {
+        this.extractor = extractor;
+        this.parser = parser;
+        this.trustScoreCalculator = trustScoreCalculator;
+    }
+
+    /**
+     * Ergebnis eines Rennens: bestes Ergebnis, seine Stufe und - falls Stufe 1 fertig wurde - deren Score.
+     */
+    public static class Outcome {
+        private final InvoiceData data;
+        private final int trustScore;
+        private final int stage;
+        private final Integer stage1Score;
+
+        Outcome(InvoiceData data, int trustScore, int stage, Integer stage1Score) {
+            this.data = data;
+            this.trustScore = trustScore;
+            this.stage = stage;
+            this.stage1Score = stage1Score;
+        }
+
+        public InvoiceData getData() { return data; }
+        public int getTrustScore() { return trustScore; }
+        public int getStage() { return stage; }
+        public Integer getStage1Score() { return stage1Score; }
+    }
+
+    private static class Attempt {
+        final int stage;
+        final InvoiceData data;
+        final int trustScore;
+        final int completionTokens;
+
+        Attempt(int stage, InvoiceData data, int trustScore, int completionTokens) {
+            this.stage = stage;
+            this.data = data;
+            this.trustScore = trustScore;
+            this.completionTokens = completionTokens;
+        }
+
+        boolean passes() {
+            return trustScore >= TRUST_THRESHOLD;
+        }
+    }
+
+    /**
+     * Spekulation lohnt nur, wenn beide Requests sofort einen Slot bekommen.
+     */
+    public boolean hasCapacity() {
+        return extractor.hasSpareSlots(2);
+    }
+
+    public Outcome run(String text) {
+        System.out.println("\n🏁 STUFE 1+2 spekulativ parallel...");
+
+        CompletableFuture<String> stage1Call = extractor.extractAsync(text);
+        CompletableFuture<String> stage2Call = extractor.extractWithRetryAsync(text);
+        CompletableFuture<Attempt> stage1 = score(stage1Call, 1);
+        CompletableFuture<Attempt> stage2 = score(stage2Call, 2);
+
+        CompletableFuture.anyOf(stage1, stage2).join();
+        Attempt winner = firstPassing(stage1, stage2);
+        if (winner == null) {
+            // Das schnellere Ergebnis reicht nicht - auf das andere warten
+            CompletableFuture.allOf(stage1, stage2).join();
+            winner = firstPassing(stage1, stage2);
+        }
+
+        if (winner != null) {
+            CompletableFuture<String> loserCall = winner.stage == 1 ? stage2Call : stage1Call;
+            CompletableFuture<Attempt> loser = winner.stage == 1 ? stage2 : stage1;
+            boolean cancelled = loserCall.cancel(true);
+            record(text, winner, loser.getNow(null));
+            System.out.println("   ✅ Stufe " + winner.stage + " gewinnt (Trust-Score " + winner.trustScore + "%)"
+                + (cancelled ? " - anderer Request abgebrochen" : ""));
+            return new Outcome(winner.data, winner.trustScore, winner.stage, stage1Score(stage1));
+        }
+
+        // Beide gescheitert: beide Requests wären auch sequentiell gelaufen -> nichts verschwendet
+        Attempt first = stage1.join();
+        Attempt second = stage2.join();
+        record(text, first, second);
+        Attempt best = second != null && (first == null || second.trustScore > first.trustScore) ? second : first;
+        System.out.println("   ⚠️ Beide Stufen unter " + TRUST_THRESHOLD + "% - weiter mit dem besseren Ergebnis");
+        if (best == null) {
+            return new Outcome(new InvoiceData(), 0, 2, null);
+        }
+        return new Outcome(best.data, best.trustScore, best.stage, stage1Score(stage1));
+    }
+
+    public synchronized long getRaces() {
+        return races;
+    }
+
+    public synchronized long getStage1Wins() {
+        return stage1Wins;
+    }
+
+    public synchronized long getStage2Wins() {
+        return stage2Wins;
+    }
+
+    /**
+     * Anteil der Tokens aus verworfenen Requests an allen spekulativ verbrauchten Tokens.
+     */
+    public synchronized double getWastedTokenRatio() {
+        return totalTokens == 0 ? 0.0 : (double) wastedTokens / totalTokens;
+    }
+
+    private CompletableFuture<Attempt> score(CompletableFuture<String> call, int stage) {
+        return call.thenApply(json -> {
+            InvoiceData data = new InvoiceData();
+            parser.merge(data, json);
+            return new Attempt(stage, data, trustScoreCalculator.calculate(data), extractor.estimateTokens(json));
+        }).exceptionally(error -> null); // Abbruch oder Fehler: zählt als gescheitert
+    }
+
+    private static Attempt firstPassing(CompletableFuture<Attempt> stage1, CompletableFuture<Attempt> stage2) {
+        Attempt first = stage1.getNow(null);
+        if (first != null && first.passes()) {
+            return first;
+        }
+        Attempt second = stage2.getNow(null);
+        return second != null && second.passes() ? second : null;
+    }
+
+    private static Integer stage1Score(CompletableFuture<Attempt> stage1) {
+        Attempt attempt = stage1.getNow(null);
+        return attempt != null ? attempt.trustScore : null;
+    }
+
+    /**
+     * Prompt-Tokens beider Requests plus Antwort-Tokens der fertigen; verschwendet ist der Verlierer
+     * (bei abgebrochenen Requests nur der Prompt - bereits generierte Tokens sind nicht bekannt).
+     */
+    private synchronized void record(String text, Attempt winner, Attempt loser) {
+        int prompt1 = extractor.estimatePromptTokens(text, 1);
+        int prompt2 = extractor.estimatePromptTokens(text, 2);
+        long spent = prompt1 + prompt2
+            + (winner != null ? winner.completionTokens : 0)
+            + (loser != null ? loser.completionTokens : 0);
+
+        races++;
+        totalTokens += spent;
+        if (winner == null || !winner.passes()) {
+            return;
+        }
+        if (winner.stage == 1) {
+            stage1Wins++;
+            wastedTokens += prompt2 + (loser != null ? loser.completionTokens : 0);
+        } else {
+            stage2Wins++;
+            // Stufe 1 war schon fertig und gescheitert -> sequentiell wäre sie genauso gelaufen
+            if (loser == null) {
+                wastedTokens += prompt1;
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package InvoiceBot.parser;
+
+import InvoiceBot.llm.TokenEstimator;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+
+/*
+Kompaktiert den PDF-Text vor der Pipeline.
+ * - Whitespace normalisieren, leere Zeilen entfernen (Seitenumbrüche "\f" bleiben erhalten)
+ * - Wiederholte Kopf-/Fußzeilen pro Seite nur einmal behalten (Seitenumbruch = "\f" aus PdfTextExtractor)
+ * - Bekannte Boilerplate (AGB-Hinweise, Bankverbindung, Handelsregister, "Seite x von y") entfernen
+ * - Lange Beschreibungszeilen ohne Betrag kürzen
+ * Weniger Text = kürzere Prompts = weniger Prefill-Zeit auf lokalen Modellen.
+
+Compacts PDF text before the pipeline: whitespace, repeated per-page headers/footers,
+ * known boilerplate and long description lines. Logs the before/after ratio.
+*/
+
+@Component
+public class TextCompactor {
+
+    private static final int EDGE_LINES = 4;
+    private static final int MAX_DESCRIPTION_LENGTH = 120;
+
+    private static final Pattern WHITESPACE = Pattern.compile("[ \\t\\u00A0]+");
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
+    private static final Pattern AMOUNT = Pattern.compile("\\d+[.,]\\d{2}(?!\\d)");
+
+    private static final Pattern BOILERPLATE = Pattern.compile(
+        "^(?:seite|page)\\s+\\d+\\s*(?:von|/|of)\\s*\\d+$"
+            + "|\\b(?:iban|bic|swift|blz|bankverbindung|kontonummer)\\b"
+            + "|\\b(?:amtsgericht|handelsregister|registergericht|hrb|hra)\\b"
+            + "|\\bgeschäftsführ(?:er|ung)\\b"
+            + "|\\b(?:agb|allgemeinen geschäftsbedingungen)\\b",
+        Pattern.CASE_INSENSITIVE);
+
+    private final TokenEstimator estimator;
+
+    public TextCompactor(TokenEstimator estimator) {
+        this.estimator = estimator;
+    }
+
+    public String compact(String text) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+
+        List<List<String>> pages = new ArrayList<>();
+        for (String page : text.split("\f")) {
+            List<String> lines = new ArrayList<>();
+            for (String line : page.split("\\R")) {
+                String normalized = WHITESPACE.matcher(line).replaceAll(" ").strip();
+                if (!normalized.isEmpty()) {
+                    lines.add(normalized);
+                }
+            }
+            if (!lines.isEmpty()) {
+                pages.add(lines);
+            }
+        }
+
+        Set<String> repeated = repeatedEdgeLines(pages);
+        Map<String, Integer> firstPage = new HashMap<>();
+
+        // Seiten bleiben durch "\f" getrennt - die Seitenzahl ist ein Merkmal für den EscalationPredictor
+        List<String> compactedPages = new ArrayList<>();
+        for (int p = 0; p < pages.size(); p++) {
+            List<String> page = pages.get(p);
+            StringBuilder compacted = new StringBuilder();
+            for (int i = 0; i < page.size(); i++) {
+                String line = page.get(i);
+                if (isEdge(page, i) && repeated.contains(shape(line))) {
+                    Integer first = firstPage.putIfAbsent(shape(line), p);
+                    if (first != null && first < p) {
+                        continue; // Kopf-/Fußzeile schon von einer früheren Seite übernommen
+                    }
+                }
+                if (BOILERPLATE.matcher(line).find() && !AMOUNT.matcher(line).find()) {
+                    continue;
+                }
+                if (line.length() > MAX_DESCRIPTION_LENGTH && !AMOUNT.matcher(line).find()) {
+                    line = line.substring(0, MAX_DESCRIPTION_LENGTH) + "…";
+                }
+                compacted.append(line).append('\n');
+            }
+            compactedPages.add(compacted.toString().strip());
+        }
+
+        String result = String.join("\f", compactedPages).strip();
+        report(text, result);
+        return result;
+    }
+
+    /**
+     * Zeilen, die am Anfang/Ende von mindestens zwei Seiten vorkommen (Seitenzahlen ignoriert).
+     */
+    private static Set<String> repeatedEdgeLines(List<List<String>> pages) {
+        Set<String> repeated = new HashSet<>();
+        if (pages.size() < 2) {
+            return repeated;
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (List<String> page : pages) {
+            Set<String> edges = new HashSet<>();
+            for (int i = 0; i < page.size(); i++) {
+                // Zeilen mit Beträgen sind Positionen/Summen, nie Kopf- oder Fußzeilen
+                if (isEdge(page, i) && !AMOUNT.matcher(page.get(i)).find()) {
+                    edges.add(shape(page.get(i)));
+                }
+            }
+            edges.forEach(edge -> counts.merge(edge, 1, Integer::sum));
+        }
+        counts.forEach((edge, count) -> {
+            if (count >= 2) {
+                repeated.add(edge);
+            }
+        });
+        return repeated;
+    }
+
+    private static boolean isEdge(List<String> page, int index) {
+        return index < EDGE_LINES || index >= page.size() - EDGE_LINES;
+    }
+
+    private static String shape(String line) {
+        return DIGITS.matcher(line.toLowerCase()).replaceAll("#");
+    }
+
+    private void report(String before, String after) {
+        int tokensBefore = estimator.estimate(before);
+        int tokensAfter = estimator.estimate(after);
+        System.out.printf("   🗜️ Text kompaktiert: %d → %d Zeichen (%.0f%%), ~%d → ~%d Tokens (%.0f%%)%n",
+            before.length(), after.length(), percent(after.length(), before.length()),
+            tokensBefore, tokensAfter, percent(tokensAfter, tokensBefore));
+    }
+
+    private static double percent(int part, int total) {
+        return total == 0 ? 100.0 : part * 100.0 / total;
+    }
+}
@@ -0,0 +1,344 @@
+package InvoiceBot.parser;
+
+import InvoiceBot.model.InvoiceData;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/*
+Gelernte Extraktions-Vorlagen pro Lieferant.
+ * Ein Dokument wird über die Wörter im Kopfbereich erkannt (Fingerprint - Zahlen wie
+ * Rechnungsnummer oder Datum fließen nicht ein). Aus akzeptierten Ergebnissen mit hohem
+ * Trust-Score wird gelernt, hinter welcher Beschriftung jedes Feld stand; spätere Rechnungen
+ * desselben Lieferanten werden damit ohne LLM gelesen. Persistiert als JSON-Datei.
+
+Learned per-vendor extraction templates.
+ * Documents are fingerprinted by the non-numeric header tokens. High-trust results teach the
+ * store which label precedes each field, so repeat vendors can be extracted deterministically.
+*/
+
+@Component
+public class VendorTemplateStore {
+
+    private static final int HEADER_LINES = 12;
+
+    private static final Pattern WORD = Pattern.compile("\\p{L}{2,}");
+    private static final Pattern LAST_DIGIT = Pattern.compile(".*\\d");
+
+    // Monatsnamen ändern sich jeden Monat ("Rechnung März 2024") und gehören nicht in den Fingerprint
+    private static final Set<String> MONTHS = Set.of(
+        "januar", "februar", "märz", "april", "mai", "juni", "juli", "august", "september", "oktober",
+        "november", "dezember", "january", "february", "march", "may", "june", "july", "october", "december",
+        "jan", "feb", "mär", "mar", "apr", "jun", "jul", "aug", "sep", "sept", "okt", "oct", "nov", "dez", "dec");
+
+    private static final Pattern INVOICE_NUMBER = Pattern.compile("[A-Za-z0-9][A-Za-z0-9\\-/_.]*\\d[A-Za-z0-9\\-/_]*|\\d");
+    private static final Pattern DATE = Pattern.compile("\\d{1,2}\\.\\d{1,2}\\.\\d{2,4}|\\d{4}-\\d{2}-\\d{2}");
+    private static final Pattern AMOUNT = Pattern.compile("\\d{1,3}(?:\\.\\d{3})+,\\d{2}|\\d+,\\d{2}|\\d+\\.\\d{2}");
+    private static final Pattern PERIOD = Pattern.compile("(" + DATE.pattern() + ")\\s*(?:-|–|bis)\\s*(" + DATE.pattern() + ")");
+
+    private static final Map<String, Pattern> VALUE_PATTERNS = Map.of(
+        "invoice_number", INVOICE_NUMBER,
+        "invoice_date", DATE,
+        "net_amount", AMOUNT,
+        "gross_amount", AMOUNT,
+        "service_period", PERIOD);
+
+    private final Path file;
+    private final Map<String, JSONObject> templates = new HashMap<>();
+
+    // Schreiben der Datei außerhalb des Monitors von apply()/learn(); ältere Stände überschreiben keine neueren
+    private final Object saveLock = new Object();
+    private long version;
+    private long savedVersion;
+
+    public VendorTemplateStore(
+            @Value("${templates.file:${user.home}/.invoicebot/vendor-templates.json}") String file) {
+        this.file = Paths.get(file);
+        load();
+    }
+
+    /**
+     * Fingerprint aus den Wörtern der ersten Zeilen (ohne Zahlen, sortiert, Groß/Klein egal).
+     */
+    public static String fingerprint(String text) {
+        TreeSet<String> tokens = new TreeSet<>();
+        int lines = 0;
+        for (String line : text.split("\\R")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            Matcher matcher = WORD.matcher(line);
+            while (matcher.find()) {
+                String token = matcher.group().toLowerCase();
+                if (!MONTHS.contains(token)) {
+                    tokens.add(token);
+                }
+            }
+            if (++lines >= HEADER_LINES) {
+                break;
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(String.join(" ", tokens).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    /**
+     * Wendet die Vorlage eines bekannten Lieferanten an.
+     *
+     * @return JSON im Format des Extraktions-Prompts, oder leer wenn der Lieferant unbekannt ist
+     */
+    public synchronized Optional<String> apply(String text) {
+        JSONObject template = templates.get(fingerprint(text));
+        if (template == null) {
+            return Optional.empty();
+        }
+
+        List<String> lines = lines(text);
+        JSONObject json = new JSONObject();
+        if (template.has("company_name")) {
+            json.put("company_name", template.getString("company_name"));
+        }
+
+        JSONObject labels = template.getJSONObject("labels");
+        for (String field : labels.keySet()) {
+            JSONObject rule = labels.getJSONObject(field);
+            String value = findValue(lines, field, rule.getString("label"), rule.getBoolean("next_line"));
+            if (value != null) {
+                json.put(field, value);
+            }
+        }
+
+        System.out.println("   🗂️ Bekannter Lieferant - Vorlage angewendet (" + json.length() + " Felder)");
+        return Optional.of(json.toString());
+    }
+
+    /**
+     * Lernt aus einem akzeptierten Ergebnis, hinter welcher Beschriftung die Felder stehen.
+     * Nur mit Ergebnissen aufrufen, die den Trust-Score-Schwellwert erreicht haben.
+     * Felder, die diesmal nicht gefunden wurden, behalten ihre bisher gelernte Beschriftung;
+     * die Datei wird nur geschrieben, wenn sich die Vorlage tatsächlich geändert hat.
+     */
+    public void learn(String text, InvoiceData data) {
+        List<String> lines = lines(text);
+        JSONObject labels = new JSONObject();
+
+        learnField(labels, lines, "invoice_number", List.of(nullToEmpty(data.getInvoiceNumber())), false);
+        learnField(labels, lines, "invoice_date", List.of(nullToEmpty(data.getInvoiceDate())), false);
+        learnField(labels, lines, "net_amount", amountVariants(data.getNetAmount()), true);
+        learnField(labels, lines, "gross_amount", amountVariants(data.getGrossAmount()), true);
+        if (data.getServicePeriod() != null) {
+            learnField(labels, lines, "service_period", List.of(data.getServicePeriod().split("-")[0]), false);
+        }
+
+        String fingerprint = fingerprint(text);
+        String snapshot;
+        long snapshotVersion;
+        synchronized (this) {
+            JSONObject previous = templates.get(fingerprint);
+            JSONObject merged = previous != null
+                ? new JSONObject(previous.getJSONObject("labels").toString())
+                : new JSONObject();
+            boolean changed = previous == null;
+            for (String field : labels.keySet()) {
+                JSONObject rule = labels.getJSONObject(field);
+                changed |= !sameRule(merged.optJSONObject(field), rule);
+                merged.put(field, rule);
+            }
+
+            JSONObject template = new JSONObject().put("labels", merged);
+            // Der Firmenname ist pro Lieferant konstant
+            String companyName = data.getCompanyName() != null
+                ? data.getCompanyName()
+                : previous != null ? previous.optString("company_name", null) : null;
+            if (companyName != null) {
+                template.put("company_name", companyName);
+                changed |= previous != null && !companyName.equals(previous.optString("company_name", null));
+            }
+            template.put("learned", previous == null ? 1 : previous.optInt("learned", 0) + 1);
+            templates.put(fingerprint, template);
+
+            if (!changed) {
+                return; // Zähler wird mit der nächsten Änderung gespeichert
+            }
+            snapshot = new JSONObject(templates).toString(2);
+            snapshotVersion = ++version;
+        }
+        save(snapshot, snapshotVersion);
+    }
+
+    private static boolean sameRule(JSONObject a, JSONObject b) {
+        return a != null && b != null
+            && a.getString("label").equals(b.getString("label"))
+            && a.getBoolean("next_line") == b.getBoolean("next_line");
+    }
+
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    private static void learnField(JSONObject labels, List<String> lines, String field,
+                                   List<String> variants, boolean lastOccurrence) {
+        for (String value : variants) {
+            if (value == null || value.isBlank()) {
+                continue;
+            }
+            int index = findLine(lines, value, lastOccurrence);
+            if (index < 0) {
+                continue;
+            }
+            String line = lines.get(index);
+            String label = stripVariablePrefix(line.substring(0, line.indexOf(value)));
+            if (WORD.matcher(label).find()) {
+                labels.put(field, new JSONObject().put("label", label).put("next_line", false));
+                return;
+            }
+            // Wert steht allein in der Zeile -> Beschriftung in der Zeile darüber
+            if (index > 0 && WORD.matcher(lines.get(index - 1)).find()) {
+                labels.put(field, new JSONObject().put("label", lines.get(index - 1).trim()).put("next_line", true));
+                return;
+            }
+        }
+    }
+
+    /**
+     * "Rechnung Nr. RE-1 vom" -> "vom": Alles bis zur letzten Ziffer ändert sich von Rechnung zu Rechnung.
+     */
+    private static String stripVariablePrefix(String prefix) {
+        Matcher matcher = LAST_DIGIT.matcher(prefix);
+        return (matcher.lookingAt() ? prefix.substring(matcher.end()) : prefix).trim();
+    }
+
+    private static String findValue(List<String> lines, String field, String label, boolean nextLine) {
+        boolean lastOccurrence = field.endsWith("_amount");
+        int index = findLine(lines, label, lastOccurrence);
+        if (index < 0) {
+            return null;
+        }
+
+        String candidate;
+        if (nextLine) {
+            if (index + 1 >= lines.size()) {
+                return null;
+            }
+            candidate = lines.get(index + 1);
+        } else {
+            String line = lines.get(index);
+            candidate = line.substring(line.indexOf(label) + label.length());
+        }
+
+        Matcher matcher = VALUE_PATTERNS.get(field).matcher(candidate);
+        if (!matcher.find()) {
+            return null;
+        }
+        if (field.equals("service_period")) {
+            return matcher.group(1) + " - " + matcher.group(2);
+        }
+        return field.endsWith("_amount") ? matcher.group() + " " + currencyOf(candidate) : matcher.group();
+    }
+
+    private static int findLine(List<String> lines, String needle, boolean last) {
+        int found = -1;
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).contains(needle)) {
+                found = i;
+                if (!last) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * "1.190,00€" -> Varianten, wie der Betrag im Text stehen kann.
+     */
+    private static List<String> amountVariants(String amount) {
+        List<String> variants = new ArrayList<>();
+        if (amount == null) {
+            return variants;
+        }
+        String core = amount.replaceAll("[^\\d.,]", "");
+        variants.add(core);
+        variants.add(core.replace(".", ""));
+        variants.add(core.replace(".", "#").replace(",", ".").replace("#", ","));
+        return variants;
+    }
+
+    private static String currencyOf(String text) {
+        if (text.contains("$") || text.toUpperCase().contains("USD")) {
+            return "$";
+        }
+        return "€";
+    }
+
+    private static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\\R")) {
+            if (!line.isBlank()) {
+                lines.add(line.replaceAll("\\s+", " ").trim());
+            }
+        }
+        return lines;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject(Files.readString(file, StandardCharsets.UTF_8));
+            for (String fingerprint : json.keySet()) {
+                templates.put(fingerprint, json.getJSONObject(fingerprint));
+            }
+            System.out.println("🗂️ Lieferanten-Vorlagen geladen: " + templates.size());
+        } catch (Exception e) {
+            System.err.println("⚠️ Lieferanten-Vorlagen nicht lesbar: " + e.getMessage());
+        }
+    }
+
+    private void save(String json, long snapshotVersion) {
+        synchronized (saveLock) {
+            if (snapshotVersion <= savedVersion) {
+                return; // ein neuerer Stand wurde bereits geschrieben
+            }
+            try {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.writeString(temp, json, StandardCharsets.UTF_8);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                savedVersion = snapshotVersion;
+            } catch (IOException e) {
+                System.err.println("⚠️ Lieferanten-Vorlagen nicht gespeichert: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package InvoiceBot.validation;
+
+import InvoiceBot.llm.LlmResponseParser.ValidationResult;
+import InvoiceBot.model.Amounts;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/*
+Deterministische Durchrechnung der Rechnungspositionen (Stufe 3 ohne LLM).
+ * Findet Positionszeilen mit Steuersatz (0/5/7/16/19 %), bestimmt den Nettobetrag je Position,
+ * summiert pro Steuersatz und berechnet Brutto je Gruppe mit BigDecimal:
+ *   Brutto = Summe(Netto je Satz × (1 + Satz))  - NICHT Gesamtnetto × einheitlicher Satz.
+ * Liefert direkt ein ValidationResult; ohne erkennbare Positionstabelle null (→ LLM).
+
+Deterministic line-item recalculation (stage 3 without the LLM).
+ * Groups positions by VAT rate, sums net per group and derives gross per group with BigDecimal.
+*/
+
+@Component
+public class LineItemCalculator {
+
+    /** Deutsche Umsatzsteuersätze (inkl. der Corona-Sätze 5/16 % aus 2020). */
+    public static final Set<Integer> VAT_RATES = Set.of(0, 5, 7, 16, 19);
+    private static final BigDecimal TOLERANCE = new BigDecimal("1.00");
+    private static final BigDecimal ROW_TOLERANCE = new BigDecimal("0.02");
+    private static final BigDecimal HUNDRED = new BigDecimal("100");
+
+    private static final Pattern RATE = Pattern.compile("(?<![\\d,.])(\\d{1,2})(?:[.,]0{1,2})?\\s?%");
+    private static final Pattern AMOUNT = Pattern.compile(
+        "-?\\d{1,3}(?:\\.\\d{3})+,\\d{2}|-?\\d{1,3}(?:,\\d{3})+\\.\\d{2}|-?\\d+,\\d{2}|-?\\d+\\.\\d{2}");
+
+    // Summen- und Steuerzeilen sind keine Positionen. Nur ganze Wörter bzw. Wortanfang/-ende,
+    // sonst fallen echte Positionen wie "Steuerberatung Januar" oder "Totalreparatur" heraus
+    private static final Pattern SUMMARY = Pattern.compile(
+        "\\b(?:netto|brutto|gesamt)|(?:summe|steuer)\\b"
+            + "|\\b(?:mwst|ust|total|subtotal|skonto|rabatt|rechnungsbetrag|zu zahlen)\\b",
+        Pattern.CASE_INSENSITIVE);
+    // Eine einzelne Zeile mit Prozentangabe ist noch keine Tabelle (z.B. "Wir gewähren 5% auf alle Artikel")
+    private static final int MIN_POSITIONS = 2;
+
+    /**
+     * Rechnet die Positionen durch und vergleicht mit den extrahierten Summen.
+     *
+     * @return Ergebnis oder null, wenn weniger als zwei Positionen mit Steuersatz gefunden wurden
+     */
+    public ValidationResult recalculate(String text, String currentNet, String currentGross) {
+        Map<Integer, BigDecimal> netByRate = new TreeMap<>();
+        int positions = 0;
+
+        for (String line : text.split("\\R")) {
+            if (SUMMARY.matcher(line).find()) {
+                continue;
+            }
+            Integer rate = findRate(line);
+            if (rate == null) {
+                continue;
+            }
+            BigDecimal net = lineNet(RATE.matcher(line).replaceAll(" "), rate);
+            if (net == null) {
+                continue;
+            }
+            netByRate.merge(rate, net, BigDecimal::add);
+            positions++;
+        }
+
+        if (positions < MIN_POSITIONS) {
+            return null;
+        }
+
+        BigDecimal totalNet = BigDecimal.ZERO;
+        BigDecimal totalGross = BigDecimal.ZERO;
+        for (Map.Entry<Integer, BigDecimal> group : netByRate.entrySet()) {
+            BigDecimal groupNet = group.getValue().setScale(2, RoundingMode.HALF_UP);
+            BigDecimal factor = BigDecimal.ONE.add(BigDecimal.valueOf(group.getKey()).divide(HUNDRED));
+            totalNet = totalNet.add(groupNet);
+            totalGross = totalGross.add(groupNet.multiply(factor).setScale(2, RoundingMode.HALF_UP));
+        }
+
+        boolean matches = matches(currentNet, totalNet) && (currentGross == null || matches(currentGross, totalGross));
+
+        System.out.println("   🧮 Positionen durchgerechnet: " + positions + " Zeile(n), Steuersätze " + netByRate.keySet()
+            + " → Netto " + format(totalNet) + ", Brutto " + format(totalGross));
+
+        return new ValidationResult(format(totalNet), format(totalGross), matches, "high");
+    }
+
+    private static Integer findRate(String line) {
+        Matcher matcher = RATE.matcher(line);
+        Integer rate = null;
+        while (matcher.find()) {
+            int candidate = Integer.parseInt(matcher.group(1));
+            if (!VAT_RATES.contains(candidate)) {
+                return null; // Rabatt/Skonto o.ä. - keine eindeutige Steuerzeile
+            }
+            if (rate != null && rate != candidate) {
+                return null;
+            }
+            rate = candidate;
+        }
+        return rate;
+    }
+
+    /**
+     * Nettobetrag einer Position: steht hinter dem Netto noch der Bruttobetrag (Netto × (1 + Satz)),
+     * zählt der Nettowert, sonst der letzte Betrag der Zeile (Spalte "Gesamt").
+     */
+    private static BigDecimal lineNet(String line, int rate) {
+        List<BigDecimal> amounts = new ArrayList<>();
+        Matcher matcher = AMOUNT.matcher(line);
+        while (matcher.find()) {
+            amounts.add(Amounts.parse(matcher.group()));
+        }
+        if (amounts.isEmpty()) {
+            return null;
+        }
+
+        BigDecimal factor = BigDecimal.ONE.add(BigDecimal.valueOf(rate).divide(HUNDRED));
+        for (int i = 0; i < amounts.size(); i++) {
+            for (int j = i + 1; j < amounts.size(); j++) {
+                BigDecimal expectedGross = amounts.get(i).multiply(factor);
+                if (amounts.get(j).subtract(expectedGross).abs().compareTo(ROW_TOLERANCE) <= 0) {
+                    return amounts.get(i);
+                }
+            }
+        }
+        return amounts.get(amounts.size() - 1);
+    }
+
+    private static boolean matches(String current, BigDecimal recalculated) {
+        if (current == null) {
+            return false;
+        }
+        Matcher matcher = AMOUNT.matcher(current.replaceAll("[^\\d.,\\-]", ""));
+        if (!matcher.find()) {
+            return false;
+        }
+        return Amounts.parse(matcher.group()).subtract(recalculated).abs().compareTo(TOLERANCE) <= 0;
+    }
+
+    private static String format(BigDecimal amount) {
+        return Amounts.format(amount, "€");
+    }
+}
@@ -4,6 +4,10 @@ import org.springframework.stereotype.Component;
 
 import InvoiceBot.model.InvoiceData;
 
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 
 /**
  * Berechnet einen Trust-Score für geparste Rechnungsdaten.
@@ -19,6 +23,12 @@ import InvoiceBot.model.InvoiceData;
 @Component
 public class TrustScoreCalculator {
 
+    /**
+     * JSON-Namen der Pflichtfelder (ohne sie ist der Score 0).
+     */
+    public static final List<String> REQUIRED_FIELDS = List.of(
+        "company_name", "invoice_number", "invoice_date", "net_amount");
+
     /**
      * Berechnet den Trust-Score für die gegebenen Rechnungsdaten.
      * 
@@ -87,6 +97,32 @@ public class TrustScoreCalculator {
         return 85;
     }
     
+    /**
+     * Liefert die Pflichtfelder, die fehlen oder die Plausibilitätsprüfung nicht bestehen
+     * (gleiche Regeln wie {@link #calculate}), als JSON-Feldnamen.
+     * Damit kann Stufe 2 gezielt nur diese Felder neu abfragen.
+     */
+    public Set<String> failedFields(InvoiceData data) {
+        Set<String> failed = new LinkedHashSet<>();
+        if (data == null) {
+            failed.addAll(REQUIRED_FIELDS);
+            return failed;
+        }
+        if (isEmpty(data.getCompanyName()) || !isValidCompanyName(data.getCompanyName())) {
+            failed.add("company_name");
+        }
+        if (isEmpty(data.getInvoiceNumber()) || !isValidInvoiceNumber(data.getInvoiceNumber())) {
+            failed.add("invoice_number");
+        }
+        if (isEmpty(data.getInvoiceDate()) || !isValidDate(data.getInvoiceDate())) {
+            failed.add("invoice_date");
+        }
+        if (isEmpty(data.getNetAmount()) || isZeroAmount(data.getNetAmount()) || !containsNumbers(data.getNetAmount())) {
+            failed.add("net_amount");
+        }
+        return failed;
+    }
+
     /**
      * Prüft ob der Firmenname plausibel ist.
      */
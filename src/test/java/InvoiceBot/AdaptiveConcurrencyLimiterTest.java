@@ -0,0 +1,87 @@
+package InvoiceBot;
+
+import InvoiceBot.llm.AdaptiveConcurrencyLimiter;
+import InvoiceBot.llm.AdaptiveConcurrencyLimiter.Permit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    @DisplayName("LIMITER: Requests über dem Limit warten in der Queue")
+    void testAcquire_QueuesAboveLimit() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 8);
+
+        // Act
+        CompletableFuture<Permit> first = limiter.acquire();
+        CompletableFuture<Permit> second = limiter.acquire();
+        CompletableFuture<Permit> third = limiter.acquire();
+
+        // Assert
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertFalse(third.isDone(), "Dritter Request sollte warten");
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getQueueDepth());
+
+        // Freigabe -> Wartender bekommt den Slot
+        first.join().onIgnore();
+        assertTrue(third.isDone());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    @DisplayName("LIMITER: Fehler senken das Limit multiplikativ")
+    void testDropped_DecreasesLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 16);
+
+        limiter.acquire().join().onDropped();
+
+        assertEquals(6, limiter.getLimit()); // 8 * 0.75
+    }
+
+    @Test
+    @DisplayName("LIMITER: Ausgeschöpftes Limit mit stabiler Latenz wird erhöht")
+    void testSuccess_IncreasesLimitWhenSaturated() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 4);
+
+        // Jeweils volles Limit belegen und sofort erfolgreich freigeben
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire().join().onSuccess();
+        }
+
+        assertTrue(limiter.getLimit() > 1, "Limit sollte gestiegen sein, ist " + limiter.getLimit());
+        assertTrue(limiter.getLimit() <= 4);
+    }
+
+    @Test
+    @DisplayName("LIMITER: Abgebrochene Wartende belegen keinen Slot")
+    void testCancelledWaiter_IsSkipped() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        Permit held = limiter.acquire().join();
+        CompletableFuture<Permit> waiter = limiter.acquire();
+
+        waiter.cancel(false);
+        held.onIgnore();
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    @DisplayName("LIMITER: Doppelte Freigabe wird ignoriert")
+    void testPermit_ReleaseIsIdempotent() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 2);
+        Permit permit = limiter.acquire().join();
+
+        permit.onIgnore();
+        permit.onIgnore();
+
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,132 @@
+package InvoiceBot;
+
+import InvoiceBot.batch.BatchProcessor;
+import InvoiceBot.export.ExcelExporter.ProcessingResult;
+import InvoiceBot.model.InvoiceData;
+import InvoiceBot.parser.InvoiceParser;
+import InvoiceBot.parser.PdfTextCache;
+import InvoiceBot.validation.TrustScoreCalculator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BatchProcessorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("BATCH: Jede Datei liefert genau ein Ergebnis, auch bei Fehlern")
+    void testProcess_DeliversOneResultPerFile() throws Exception {
+        // Arrange: kaputte PDFs -> PDFBox wirft, Ergebnis muss trotzdem ankommen
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            files.add(createFile("kaputt_" + i + ".pdf", "keine PDF"));
+        }
+        InvoiceParser parser = mock(InvoiceParser.class);
+        BatchProcessor processor = new BatchProcessor(parser, new TrustScoreCalculator(), 3);
+
+        // Act
+        List<ProcessingResult> results = new ArrayList<>();
+        processor.process(files, results::add);
+
+        // Assert
+        assertEquals(6, results.size());
+        assertTrue(results.stream().noneMatch(ProcessingResult::isSuccess));
+        Set<String> names = results.stream().map(ProcessingResult::getFileName).collect(Collectors.toSet());
+        assertEquals(6, names.size(), "Jede Datei sollte genau einmal gemeldet werden");
+        verify(parser, never()).parse(anyString());
+    }
+
+    @Test
+    @DisplayName("BATCH: Leere Liste ruft den Consumer nie auf")
+    void testProcess_EmptyList() throws Exception {
+        BatchProcessor processor = new BatchProcessor(mock(InvoiceParser.class), new TrustScoreCalculator(), 4);
+
+        List<ProcessingResult> results = new ArrayList<>();
+        processor.process(List.of(), results::add);
+
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    @DisplayName("BATCH: Parallelität wird mindestens auf 1 gesetzt")
+    void testParallelism_LowerBound() {
+        BatchProcessor processor = new BatchProcessor(mock(InvoiceParser.class), new TrustScoreCalculator(), 0);
+        assertEquals(1, processor.getParallelism());
+    }
+
+    @Test
+    @DisplayName("BATCH: XRechnung-XML wird ohne LLM gelesen, fremde XML schlägt fehl")
+    void testProcess_XmlFiles() throws Exception {
+        // Arrange
+        File ubl = createFile("rechnung.xml", """
+            <Invoice xmlns="urn:oasis:names:specification:ubl:schema:xsd:Invoice-2"
+                xmlns:cac="urn:oasis:names:specification:ubl:schema:xsd:CommonAggregateComponents-2"
+                xmlns:cbc="urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2">
+              <cbc:ID>RE-1</cbc:ID>
+              <cbc:IssueDate>2025-01-01</cbc:IssueDate>
+              <cac:AccountingSupplierParty><cac:Party><cac:PartyName><cbc:Name>Future Corp</cbc:Name></cac:PartyName></cac:Party></cac:AccountingSupplierParty>
+              <cac:LegalMonetaryTotal>
+                <cbc:TaxExclusiveAmount currencyID="EUR">100.00</cbc:TaxExclusiveAmount>
+                <cbc:TaxInclusiveAmount currencyID="EUR">119.00</cbc:TaxInclusiveAmount>
+              </cac:LegalMonetaryTotal>
+            </Invoice>
+            """);
+        File other = createFile("bestellung.xml", "<order/>");
+        InvoiceParser parser = mock(InvoiceParser.class);
+        BatchProcessor processor = new BatchProcessor(parser, new TrustScoreCalculator(), 2);
+
+        // Act
+        List<ProcessingResult> results = new ArrayList<>();
+        processor.process(List.of(ubl, other), results::add);
+
+        // Assert
+        ProcessingResult invoice = results.stream().filter(r -> r.getFileName().equals("rechnung.xml")).findFirst().orElseThrow();
+        assertTrue(invoice.isSuccess());
+        assertEquals("RE-1", invoice.getData().getInvoiceNumber());
+        assertEquals(95, invoice.getTrustScore());
+        ProcessingResult order = results.stream().filter(r -> r.getFileName().equals("bestellung.xml")).findFirst().orElseThrow();
+        assertFalse(order.isSuccess());
+        verify(parser, never()).parse(anyString());
+    }
+
+    @Test
+    @DisplayName("BATCH: Text-Cache-Treffer überspringt PDFBox komplett")
+    void testProcess_TextCacheHitSkipsPdfBox() throws Exception {
+        // Arrange: Datei ist kein gültiges PDF - nur der Cache kann den Text liefern
+        File pdf = createFile("bekannt.pdf", "keine PDF");
+        PdfTextCache cache = new PdfTextCache(tempDir.resolve("cache").toString(), 1024 * 1024);
+        cache.put(PdfTextCache.hash(pdf), "Rechnungsnummer: RE-7\f");
+        InvoiceParser parser = mock(InvoiceParser.class);
+        when(parser.parse(anyString())).thenReturn(new InvoiceData());
+        BatchProcessor processor = new BatchProcessor(parser, new TrustScoreCalculator(), 1);
+        processor.setTextCache(cache);
+
+        // Act
+        ProcessingResult result = processor.processFile(pdf);
+
+        // Assert
+        assertTrue(result.isSuccess());
+        verify(parser).parse("Rechnungsnummer: RE-7\f");
+        assertEquals(1, cache.getHits());
+    }
+
+    private File createFile(String name, String content) throws IOException {
+        Path file = tempDir.resolve(name);
+        Files.writeString(file, content);
+        return file.toFile();
+    }
+}
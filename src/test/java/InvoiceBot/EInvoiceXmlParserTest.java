@@ -0,0 +1,108 @@
+package InvoiceBot;
+
+import InvoiceBot.model.InvoiceData;
+import InvoiceBot.parser.EInvoiceXmlParser;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EInvoiceXmlParserTest {
+
+    private static final String CII = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <rsm:CrossIndustryInvoice xmlns:rsm="urn:un:unece:uncefact:data:standard:CrossIndustryInvoice:100"
+            xmlns:ram="urn:un:unece:uncefact:data:standard:ReusableAggregateBusinessInformationEntity:100"
+            xmlns:udt="urn:un:unece:uncefact:data:standard:UnqualifiedDataType:100">
+          <rsm:ExchangedDocument>
+            <ram:ID>RE-2024-0815</ram:ID>
+            <ram:TypeCode>380</ram:TypeCode>
+            <ram:IssueDateTime><udt:DateTimeString format="102">20240305</udt:DateTimeString></ram:IssueDateTime>
+          </rsm:ExchangedDocument>
+          <rsm:SupplyChainTradeTransaction>
+            <ram:IncludedSupplyChainTradeLineItem>
+              <ram:SpecifiedTradeProduct><ram:Name>Beratung</ram:Name></ram:SpecifiedTradeProduct>
+            </ram:IncludedSupplyChainTradeLineItem>
+            <ram:ApplicableHeaderTradeAgreement>
+              <ram:SellerTradeParty><ram:Name>Muster GmbH</ram:Name></ram:SellerTradeParty>
+              <ram:BuyerTradeParty><ram:Name>Kunde AG</ram:Name></ram:BuyerTradeParty>
+            </ram:ApplicableHeaderTradeAgreement>
+            <ram:ApplicableHeaderTradeSettlement>
+              <ram:InvoiceCurrencyCode>EUR</ram:InvoiceCurrencyCode>
+              <ram:BillingSpecifiedPeriod>
+                <ram:StartDateTime><udt:DateTimeString format="102">20240201</udt:DateTimeString></ram:StartDateTime>
+                <ram:EndDateTime><udt:DateTimeString format="102">20240229</udt:DateTimeString></ram:EndDateTime>
+              </ram:BillingSpecifiedPeriod>
+              <ram:SpecifiedTradeSettlementHeaderMonetarySummation>
+                <ram:LineTotalAmount>1000.00</ram:LineTotalAmount>
+                <ram:TaxBasisTotalAmount>1000.00</ram:TaxBasisTotalAmount>
+                <ram:TaxTotalAmount currencyID="EUR">190.00</ram:TaxTotalAmount>
+                <ram:GrandTotalAmount>1190.00</ram:GrandTotalAmount>
+              </ram:SpecifiedTradeSettlementHeaderMonetarySummation>
+            </ram:ApplicableHeaderTradeSettlement>
+          </rsm:SupplyChainTradeTransaction>
+        </rsm:CrossIndustryInvoice>
+        """;
+
+    private static final String UBL = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <Invoice xmlns="urn:oasis:names:specification:ubl:schema:xsd:Invoice-2"
+            xmlns:cac="urn:oasis:names:specification:ubl:schema:xsd:CommonAggregateComponents-2"
+            xmlns:cbc="urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2">
+          <cbc:ID>INV-42</cbc:ID>
+          <cbc:IssueDate>2025-01-15</cbc:IssueDate>
+          <cbc:DocumentCurrencyCode>USD</cbc:DocumentCurrencyCode>
+          <cac:AccountingSupplierParty>
+            <cac:Party>
+              <cac:PartyIdentification><cbc:ID>DE123</cbc:ID></cac:PartyIdentification>
+              <cac:PartyLegalEntity><cbc:RegistrationName>Future Corp Inc.</cbc:RegistrationName></cac:PartyLegalEntity>
+            </cac:Party>
+          </cac:AccountingSupplierParty>
+          <cac:LegalMonetaryTotal>
+            <cbc:TaxExclusiveAmount currencyID="USD">500.00</cbc:TaxExclusiveAmount>
+            <cbc:TaxInclusiveAmount currencyID="USD">595.00</cbc:TaxInclusiveAmount>
+          </cac:LegalMonetaryTotal>
+        </Invoice>
+        """;
+
+    @Test
+    @DisplayName("XML: ZUGFeRD/Factur-X (CII) wird exakt gelesen")
+    void testParse_CrossIndustryInvoice() throws Exception {
+        // Act
+        InvoiceData data = EInvoiceXmlParser.parse(stream(CII));
+
+        // Assert
+        assertEquals("RE-2024-0815", data.getInvoiceNumber());
+        assertEquals("05.03.2024", data.getInvoiceDate());
+        assertEquals("Muster GmbH", data.getCompanyName());
+        assertEquals("1.000,00€", data.getNetAmount());
+        assertEquals("1.190,00€", data.getGrossAmount());
+        assertEquals("01.02.2024 - 29.02.2024", data.getServicePeriod());
+    }
+
+    @Test
+    @DisplayName("XML: XRechnung (UBL) mit RegistrationName als Firmenname")
+    void testParse_UblInvoice() throws Exception {
+        InvoiceData data = EInvoiceXmlParser.parse(stream(UBL));
+
+        assertEquals("INV-42", data.getInvoiceNumber());
+        assertEquals("15.01.2025", data.getInvoiceDate());
+        assertEquals("Future Corp Inc.", data.getCompanyName());
+        assertEquals("500,00$", data.getNetAmount());
+        assertEquals("595,00$", data.getGrossAmount());
+        assertNull(data.getServicePeriod());
+    }
+
+    @Test
+    @DisplayName("XML: Fremde XML-Dokumente werden ignoriert")
+    void testParse_UnknownRoot() throws Exception {
+        assertNull(EInvoiceXmlParser.parse(stream("<order><ID>1</ID></order>")));
+    }
+
+    private static ByteArrayInputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.strip().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,134 @@
+package InvoiceBot;
+
+import InvoiceBot.llm.TokenEstimator;
+import InvoiceBot.parser.EscalationPredictor;
+import InvoiceBot.parser.EscalationPredictor.Prediction;
+import InvoiceBot.parser.TextCompactor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EscalationPredictorTest {
+
+    private final EscalationPredictor predictor = new EscalationPredictor();
+
+    @Test
+    @DisplayName("VORHERSAGE: Einfache deutsche Rechnung startet auf Stufe 1")
+    void testPredict_SimpleGermanInvoice_Stage1() {
+        // Arrange
+        String text = """
+            Muster GmbH
+            Rechnung Nr. RE-1
+            Datum: 05.03.2024
+            Nettobetrag 100,00 €
+            MwSt 19% 19,00 €
+            Bruttobetrag 119,00 €
+            """;
+
+        // Act
+        Prediction prediction = predictor.predict(text);
+
+        // Assert
+        assertEquals(EscalationPredictor.STAGE_STANDARD, prediction.getPredictedStage());
+        assertFalse(prediction.skipsStage1());
+    }
+
+    @Test
+    @DisplayName("VORHERSAGE: Skonto-Prozentsatz zählt nicht als zweiter Steuersatz")
+    void testPredict_SkontoIsNoTaxRate_Stage1() {
+        // Arrange
+        String text = """
+            Muster GmbH
+            Rechnung Nr. RE-1
+            Datum: 05.03.2024
+            Nettobetrag 100,00 €
+            MwSt 19% 19,00 €
+            Bruttobetrag 119,00 €
+            Zahlbar innerhalb 30 Tagen netto oder innerhalb 10 Tagen mit 2% Skonto
+            Treuerabatt 3% bereits abgezogen
+            """;
+
+        // Act
+        Prediction prediction = predictor.predict(text);
+
+        // Assert
+        assertEquals(EscalationPredictor.STAGE_STANDARD, prediction.getPredictedStage());
+        assertFalse(prediction.skipsStage1());
+    }
+
+    @Test
+    @DisplayName("VORHERSAGE: Gutschrift mit gemischten Steuersätzen überspringt Stufe 1")
+    void testPredict_CreditNoteMixedRates_SkipsStage1() {
+        // Arrange
+        String text = """
+            Gutschrift Nr. GS-17
+            Kaffee 7% 18,98
+            Stuhl 19% 132,02
+            """;
+
+        // Act
+        Prediction prediction = predictor.predict(text);
+
+        // Assert
+        assertEquals(EscalationPredictor.STAGE_RETRY, prediction.getPredictedStage());
+        assertTrue(prediction.skipsStage1());
+        assertEquals(1, predictor.getSkipped());
+    }
+
+    @Test
+    @DisplayName("VORHERSAGE: Lieferanten-Verlauf überstimmt die Merkmale und zählt Treffer/Fehlgriffe")
+    void testPredict_VendorHistory_OverridesFeatures() {
+        // Arrange: unauffällige Rechnung, bei der Stufe 1 zweimal gescheitert ist
+        String text = "Muster GmbH\nRechnung Nr. RE-1\nBetrag 119,00 €";
+        predictor.record(text, predictor.predict(text), false);
+        predictor.record(text, predictor.predict(text), false);
+
+        // Act
+        Prediction prediction = predictor.predict(text);
+
+        // Assert
+        assertEquals(EscalationPredictor.STAGE_RETRY, prediction.getPredictedStage());
+        assertEquals(0, predictor.getHits());
+        assertEquals(2, predictor.getMisses());
+    }
+
+    @Test
+    @DisplayName("VORHERSAGE: Jede 10. Eskalation läuft als Stichprobe trotzdem durch Stufe 1")
+    void testPredict_Exploration_RunsStage1() {
+        // Arrange
+        String text = "Credit Note CN-1\nSubtotal 100.00\nTotal 119.00";
+        for (int i = 0; i < 9; i++) {
+            assertTrue(predictor.predict(text).skipsStage1());
+        }
+
+        // Act
+        Prediction sample = predictor.predict(text);
+        predictor.record(text, sample, false);
+
+        // Assert
+        assertEquals(EscalationPredictor.STAGE_RETRY, sample.getPredictedStage());
+        assertFalse(sample.skipsStage1());
+        assertEquals(9, predictor.getSkipped());
+        assertEquals(1, predictor.getHits());
+    }
+
+    @Test
+    @DisplayName("VORHERSAGE: Seitenzahl bleibt nach der Kompaktierung erkennbar")
+    void testPredict_CompactedText_KeepsPageCount() {
+        // Arrange: drei kurze Seiten wie aus PdfTextExtractor, danach wie im BatchProcessor kompaktiert
+        StringBuilder pdfText = new StringBuilder();
+        for (int page = 1; page <= 3; page++) {
+            pdfText.append("Muster GmbH   Hauptstr. 1\nRechnung RE-1\n")
+                   .append("Pos ").append(page).append(" Beratung 100,00 €\n")
+                   .append("Seite ").append(page).append(" von 3\f");
+        }
+        String compacted = new TextCompactor(new TokenEstimator(3.5)).compact(pdfText.toString());
+
+        // Act
+        Prediction prediction = predictor.predict(compacted);
+
+        // Assert
+        assertTrue(prediction.getReason().contains("3 Seiten"), prediction.getReason());
+    }
+}
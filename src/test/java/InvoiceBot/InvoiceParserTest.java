@@ -6,7 +6,11 @@ import InvoiceBot.llm.LlmResponseParser;
 import InvoiceBot.llm.LlmResponseParser.ValidationResult;
 import InvoiceBot.llm.LlmResponseParser.QualityCheckResult;
 import InvoiceBot.model.InvoiceData;
+import InvoiceBot.parser.EscalationPredictor;
 import InvoiceBot.parser.InvoiceParser;
+import InvoiceBot.parser.RuleBasedExtractor;
+import InvoiceBot.parser.VendorTemplateStore;
+import InvoiceBot.validation.LineItemCalculator;
 import InvoiceBot.validation.TrustScoreCalculator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -18,6 +22,11 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -28,6 +37,10 @@ class InvoiceParserTest {
     @Mock LlmExtractor extractor;
     @Mock LlmResponseParser parser;
     @Mock TrustScoreCalculator calculator;
+    @Mock RuleBasedExtractor ruleExtractor;
+    @Mock VendorTemplateStore templateStore;
+    @Mock LineItemCalculator lineItemCalculator;
+    @Mock EscalationPredictor escalationPredictor;
 
     @InjectMocks
     InvoiceParser invoiceParser;
@@ -40,6 +53,92 @@ class InvoiceParserTest {
         emptyData = new InvoiceData();
     }
 
+    // ==========================================
+    // STUFE 0: Regelbasierte Vor-Extraktion
+    // ==========================================
+
+    @Test
+    @DisplayName("STUFE 0: Sollte ohne LLM fertig sein, wenn die Regeln reichen")
+    void testStage0_RulesSufficient_SkipsLlm() throws Exception {
+        // Arrange
+        invoiceParser.setRuleBasedExtractor(ruleExtractor);
+        when(ruleExtractor.extract("Text")).thenReturn("{rules}");
+        when(calculator.calculate(any())).thenReturn(95);
+
+        // Act
+        InvoiceData result = invoiceParser.parse("Text");
+
+        // Assert
+        assertNotNull(result);
+        verify(parser).merge(any(), eq("{rules}"));
+        verifyNoInteractions(extractor);
+    }
+
+    @Test
+    @DisplayName("STUFE 0: Sollte nur fehlende Felder beim LLM abfragen")
+    void testStage0_PartialRules_AsksOnlyMissingFields() throws Exception {
+        // Arrange: Regeln finden alles außer Firmenname und Leistungszeitraum
+        invoiceParser.setRuleBasedExtractor(ruleExtractor);
+        when(ruleExtractor.extract("Text")).thenReturn("{rules}");
+        doAnswer(inv -> {
+            InvoiceData d = inv.getArgument(0);
+            d.setInvoiceNumber("RE-1");
+            d.setInvoiceDate("01.01.2025");
+            d.setNetAmount("100,00€");
+            d.setGrossAmount("119,00€");
+            return null;
+        }).when(parser).merge(any(), eq("{rules}"));
+        when(extractor.extractFields(eq("Text"), any())).thenReturn("{missing}");
+        when(calculator.calculate(any()))
+                .thenReturn(0)   // Stufe 0: Firmenname fehlt
+                .thenReturn(95); // nach gezielter Abfrage
+
+        // Act
+        invoiceParser.parse("Text");
+
+        // Assert
+        verify(extractor).extractFields("Text", List.of("company_name", "service_period"));
+        verify(parser).mergeMissing(any(), eq("{missing}"));
+        verify(extractor, never()).extract(any());
+    }
+
+    @Test
+    @DisplayName("STUFE 0: Bekannter Lieferant - Vorlage zuerst, Regeln füllen nur Lücken")
+    void testStage0_TemplateFirst_RulesFillGaps() throws Exception {
+        // Arrange
+        invoiceParser.setRuleBasedExtractor(ruleExtractor);
+        invoiceParser.setTemplateStore(templateStore);
+        when(templateStore.apply("Text")).thenReturn(Optional.of("{template}"));
+        when(ruleExtractor.extract("Text")).thenReturn("{rules}");
+        when(calculator.calculate(any())).thenReturn(95);
+
+        // Act
+        invoiceParser.parse("Text");
+
+        // Assert
+        verify(parser).merge(any(), eq("{template}"));
+        verify(parser).mergeMissing(any(), eq("{rules}"));
+        verifyNoInteractions(extractor);
+    }
+
+    @Test
+    @DisplayName("VORLAGE: Lernt nur aus Ergebnissen mit hohem Trust-Score")
+    void testTemplateStore_LearnsOnlyFromHighTrust() throws Exception {
+        // Arrange
+        invoiceParser.setTemplateStore(templateStore);
+        when(templateStore.apply(any())).thenReturn(Optional.empty());
+        when(extractor.extract("Gut")).thenReturn("{}");
+        when(calculator.calculate(any()))
+                .thenReturn(0)   // Stufe 0: Lieferant unbekannt
+                .thenReturn(90); // Stufe 1 und Lern-Prüfung
+
+        // Act
+        InvoiceData result = invoiceParser.parse("Gut");
+
+        // Assert
+        verify(templateStore).learn("Gut", result);
+    }
+
     // ==========================================
     // STUFE 1: Happy Path
     // ==========================================
@@ -89,6 +188,28 @@ class InvoiceParserTest {
         // geht die Logik davon aus, dass das zweite Ergebnis (Retry) besser war.
     }
 
+    @Test
+    @DisplayName("STUFE 2 (gezielt): Fragt nur das fehlende Feld ab statt voller Re-Extraktion")
+    void testStage2_TargetedRetry_OnlyFailedFields() throws Exception {
+        // Arrange: Stufe 1 liefert alles außer Netto
+        String text = "Rechnung ohne Netto";
+        when(extractor.extract(text)).thenReturn("{stage1}");
+        when(calculator.calculate(any()))
+                .thenReturn(0)   // Stufe 1
+                .thenReturn(95); // nach gezieltem Retry
+        when(calculator.failedFields(any())).thenReturn(Set.of("net_amount"));
+        when(extractor.extractFieldAsync(text, "net_amount"))
+                .thenReturn(CompletableFuture.completedFuture("{\"net_amount\":\"100,00€\"}"));
+
+        // Act
+        invoiceParser.parse(text);
+
+        // Assert
+        verify(extractor).extractFieldAsync(text, "net_amount");
+        verify(parser).mergeMissing(any(), eq("{\"net_amount\":\"100,00€\"}"));
+        verify(extractor, never()).extractWithRetry(any());
+    }
+
     @Test
     @DisplayName("STUFE 2 (Mathe): Sollte Netto aus Brutto berechnen (Deutsche Rechnung)")
     void testStage2_GermanMathCalculation() throws Exception {
@@ -129,6 +250,76 @@ class InvoiceParserTest {
         assertTrue(calculationHappened, "Die deutsche MwSt-Berechnung (119 -> 100) wurde nicht durchgeführt!");
     }
 
+    @Test
+    @DisplayName("VORHERSAGE: Sollte Stufe 1 überspringen, wenn der Predictor Stufe 2 vorhersagt")
+    void testPrediction_SkipsStage1() throws Exception {
+        // Arrange
+        invoiceParser.setEscalationPredictor(escalationPredictor);
+        EscalationPredictor.Prediction prediction = mock(EscalationPredictor.Prediction.class);
+        when(prediction.skipsStage1()).thenReturn(true);
+        when(escalationPredictor.predict("Gutschrift")).thenReturn(prediction);
+        when(extractor.extractWithRetry("Gutschrift")).thenReturn("{retry}");
+        when(calculator.calculate(any())).thenReturn(90);
+
+        // Act
+        invoiceParser.parse("Gutschrift");
+
+        // Assert
+        verify(extractor, never()).extract(any());
+        verify(extractor).extractWithRetry("Gutschrift");
+        verify(escalationPredictor, never()).record(any(), any(), anyBoolean());
+    }
+
+    @Test
+    @DisplayName("SPEKULATIV: Stufe 1 gewinnt, Stufe 2 wird abgebrochen und als verschwendet gezählt")
+    void testSpeculative_Stage1Wins_CancelsStage2() throws Exception {
+        // Arrange
+        invoiceParser.setSpeculativeExecution(true);
+        CompletableFuture<String> stage2 = new CompletableFuture<>(); // läuft noch
+        when(extractor.hasSpareSlots(2)).thenReturn(true);
+        when(extractor.extractAsync("Text")).thenReturn(CompletableFuture.completedFuture("{stufe1}"));
+        when(extractor.extractWithRetryAsync("Text")).thenReturn(stage2);
+        when(extractor.estimatePromptTokens("Text", 1)).thenReturn(80);
+        when(extractor.estimatePromptTokens("Text", 2)).thenReturn(100);
+        when(extractor.estimateTokens("{stufe1}")).thenReturn(20);
+        when(calculator.calculate(any())).thenReturn(90);
+
+        // Act
+        invoiceParser.parse("Text");
+
+        // Assert
+        assertTrue(stage2.isCancelled());
+        verify(extractor, never()).extract(any());
+        verify(extractor, never()).extractWithRetry(any());
+        assertEquals(1, invoiceParser.getSpeculativeExtractor().getStage1Wins());
+        assertEquals(0.5, invoiceParser.getSpeculativeExtractor().getWastedTokenRatio(), 0.001);
+    }
+
+    @Test
+    @DisplayName("SPEKULATIV: Beide Stufen scheitern - gezielter Retry statt zweitem vollen Retry")
+    void testSpeculative_BothFail_FallsThroughToTargetedRetry() throws Exception {
+        // Arrange
+        invoiceParser.setSpeculativeExecution(true);
+        when(extractor.hasSpareSlots(2)).thenReturn(true);
+        when(extractor.extractAsync("Text")).thenReturn(CompletableFuture.completedFuture("{stufe1}"));
+        when(extractor.extractWithRetryAsync("Text")).thenReturn(CompletableFuture.completedFuture("{stufe2}"));
+        when(calculator.calculate(any()))
+                .thenReturn(40)  // Stufe 1
+                .thenReturn(60)  // Stufe 2
+                .thenReturn(95); // nach gezieltem Retry
+        when(calculator.failedFields(any())).thenReturn(Set.of("net_amount"));
+        when(extractor.extractFieldAsync("Text", "net_amount"))
+                .thenReturn(CompletableFuture.completedFuture("{\"net_amount\":\"100,00€\"}"));
+
+        // Act
+        invoiceParser.parse("Text");
+
+        // Assert
+        verify(extractor).extractFieldAsync("Text", "net_amount");
+        verify(extractor, never()).extractWithRetry(any());
+        verify(extractor, never()).validateAndRecalculate(any(), any(), any());
+    }
+
     // ==========================================
     // STUFE 3: Deep Validation
     // ==========================================
@@ -162,6 +353,26 @@ class InvoiceParserTest {
         verify(calculator, atLeast(3)).calculate(any());
     }
 
+    @Test
+    @DisplayName("STUFE 3: Sollte Positionen deterministisch durchrechnen statt das LLM zu fragen")
+    void testStage3_LineItemsFound_SkipsLlmValidation() throws Exception {
+        // Arrange
+        String text = "Positionen Rechnung";
+        invoiceParser.setLineItemCalculator(lineItemCalculator);
+        when(extractor.extract(any())).thenReturn("{}");
+        when(extractor.extractWithRetry(any())).thenReturn("{}");
+        when(calculator.calculate(any())).thenReturn(40);
+        when(lineItemCalculator.recalculate(eq(text), any(), any()))
+            .thenReturn(new ValidationResult("169,98€", "197,72€", false, "high"));
+
+        // Act
+        invoiceParser.parse(text);
+
+        // Assert
+        verify(lineItemCalculator).recalculate(eq(text), any(), any());
+        verify(extractor, never()).validateAndRecalculate(any(), any(), any());
+    }
+
     @Test
     @DisplayName("STUFE 3: Sollte Validation überspringen, wenn Score okay ist (z.B. 60)")
     void testStage3_SkipIfScoreIsMediocre() throws Exception {
@@ -209,6 +420,33 @@ class InvoiceParserTest {
         verify(extractor).performQualityCheck(eq(text), any());
     }
 
+    @Test
+    @DisplayName("STUFE 3+4: Kombinierte Validierung braucht nur einen LLM-Aufruf")
+    void testStage3And4_Combined_SingleRoundTrip() throws Exception {
+        // Arrange
+        String text = "Katastrophen Rechnung";
+        invoiceParser.setCombinedValidation(true);
+        when(extractor.extract(any())).thenReturn("{}");
+        when(extractor.extractWithRetry(any())).thenReturn("{}");
+        when(calculator.calculate(any())).thenReturn(30);
+
+        ValidationResult valRes = mock(ValidationResult.class);
+        when(valRes.matches()).thenReturn(true);
+        QualityCheckResult qualityRes = mock(QualityCheckResult.class);
+        when(qualityRes.isAllCorrect()).thenReturn(true);
+        when(extractor.validateAndCheck(eq(text), any())).thenReturn("{kombiniert}");
+        when(parser.parseCombinedValidation("{kombiniert}"))
+            .thenReturn(new LlmResponseParser.CombinedValidationResult(valRes, qualityRes));
+
+        // Act
+        invoiceParser.parse(text);
+
+        // Assert
+        verify(extractor).validateAndCheck(eq(text), any());
+        verify(extractor, never()).validateAndRecalculate(any(), any(), any());
+        verify(extractor, never()).performQualityCheck(any(), any());
+    }
+
     // ==========================================
     // Error Handling
     // ==========================================
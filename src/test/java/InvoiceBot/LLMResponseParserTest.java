@@ -83,4 +83,38 @@ class LlmResponseParserTest {
         // Bei deinem aktuellen Parser (void merge) wird alles auf null gesetzt, wenn das JSON leer ist.
         assertNull(data.getInvoiceNumber()); 
     }
-}
\ No newline at end of file
+
+    @Test
+    void testParseCombinedValidation_ReturnsBothResults() {
+        // Arrange
+        String json = """
+            {
+              "recalculation": {
+                "positions_found": [],
+                "recalculated_net": "169.98 EUR",
+                "recalculated_gross": "197,72€",
+                "has_mixed_tax_rates": true,
+                "calculation_matches": false,
+                "confidence": "high"
+              },
+              "quality_check": {
+                "all_correct": false,
+                "issues_found": [{"field": "net_amount", "issue": "Zwischensumme", "should_be": "169,98€"}],
+                "confidence": "high",
+                "recommendation": "use_corrections"
+              }
+            }
+            """;
+
+        // Act
+        LlmResponseParser.CombinedValidationResult result = parser.parseCombinedValidation(json);
+
+        // Assert
+        assertEquals("169,98€", result.getValidation().getRecalculatedNet());
+        assertFalse(result.getValidation().matches());
+        assertTrue(result.getValidation().hasHighConfidence());
+        assertFalse(result.getQualityCheck().isAllCorrect());
+        assertTrue(result.getQualityCheck().shouldUseCorrections());
+        assertEquals(1, result.getQualityCheck().getIssues().size());
+    }
+}
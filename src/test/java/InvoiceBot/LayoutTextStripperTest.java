@@ -0,0 +1,104 @@
+package InvoiceBot;
+
+import InvoiceBot.parser.PdfTextExtractor;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LayoutTextStripperTest {
+
+    @Test
+    @DisplayName("LAYOUT: Beschriftung und weit rechts stehender Betrag werden zum Schlüssel-Wert-Paar")
+    void testKeyValue_LabelAndAmountOnSameLine() throws Exception {
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(doc, page)) {
+                showText(content, 50, 750, "Rechnungsnummer: RE-1");
+                showText(content, 50, 600, "Nettobetrag");
+                showText(content, 400, 600, "169,98 EUR");
+            }
+
+            // Act
+            List<String> lines = lines(PdfTextExtractor.extract(doc, true));
+
+            // Assert
+            assertEquals(List.of("Rechnungsnummer: RE-1", "Nettobetrag: 169,98 EUR"), lines);
+        }
+    }
+
+    @Test
+    @DisplayName("LAYOUT: Tabellenspalten bleiben ausgerichtet, auch wenn eine Zelle fehlt")
+    void testTable_ColumnsAlignedAcrossRows() throws Exception {
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(doc, page)) {
+                showRow(content, 700, "Pos", "Beschreibung", "Menge", "USt", "Gesamt");
+                showRow(content, 685, "1", "Kaffee 500g", "2", "7 %", "37,96");
+                // Versand ohne Menge - der Steuersatz darf nicht in die Mengen-Spalte rutschen
+                showRow(content, 670, "2", "Versand", null, "19 %", "5,00");
+            }
+
+            // Act
+            List<String> lines = lines(PdfTextExtractor.extract(doc, true));
+
+            // Assert
+            assertEquals(List.of(
+                "Pos | Beschreibung | Menge | USt | Gesamt",
+                "1 | Kaffee 500g | 2 | 7 % | 37,96",
+                "2 | Versand |  | 19 % | 5,00"), lines);
+        }
+    }
+
+    @Test
+    @DisplayName("LAYOUT: Jede Seite endet wie beim Fließtext mit einem Seitenumbruch")
+    void testPages_EndWithFormFeed() throws Exception {
+        try (PDDocument doc = new PDDocument()) {
+            for (String text : new String[] {"Seite 1", "Seite 2"}) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(doc, page)) {
+                    showText(content, 50, 700, text);
+                }
+            }
+
+            // Act
+            String text = PdfTextExtractor.extract(doc, true);
+
+            // Assert
+            assertEquals(2, PdfTextExtractor.pageCount(text));
+            assertTrue(text.indexOf("Seite 1") < text.indexOf("\f"));
+            assertTrue(text.endsWith("Seite 2\n\f"));
+        }
+    }
+
+    private static final float[] COLUMNS = {50, 90, 300, 380, 480};
+
+    private static void showRow(PDPageContentStream content, float y, String... cells) throws Exception {
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != null) {
+                showText(content, COLUMNS[i], y, cells[i]);
+            }
+        }
+    }
+
+    private static void showText(PDPageContentStream content, float x, float y, String text) throws Exception {
+        content.beginText();
+        content.setFont(PDType1Font.HELVETICA, 10);
+        content.newLineAtOffset(x, y);
+        content.showText(text);
+        content.endText();
+    }
+
+    private static List<String> lines(String text) {
+        return text.replace("\f", "").lines().filter(line -> !line.isBlank()).toList();
+    }
+}
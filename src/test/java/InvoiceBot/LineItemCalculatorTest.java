@@ -0,0 +1,107 @@
+package InvoiceBot;
+
+import InvoiceBot.llm.LlmResponseParser.ValidationResult;
+import InvoiceBot.validation.LineItemCalculator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineItemCalculatorTest {
+
+    private final LineItemCalculator calculator = new LineItemCalculator();
+
+    @Test
+    @DisplayName("POSITIONEN: Gemischte Steuersätze werden pro Satz summiert")
+    void testRecalculate_MixedRates() {
+        // Arrange
+        String text = """
+            Pos Beschreibung Menge Einzelpreis USt Gesamt
+            1 Kaffee 500g 2 x 18,98 7% 37,96
+            2 Bürostuhl 1 132,02 19 % 132,02
+            Nettobetrag 169,98 €
+            MwSt 7% 2,66 €
+            MwSt 19% 25,08 €
+            Gesamtbetrag 197,72 €
+            """;
+
+        // Act
+        ValidationResult result = calculator.recalculate(text, "169,98€", "197,72€");
+
+        // Assert: Brutto = 37,96 × 1,07 + 132,02 × 1,19 (nicht 169,98 × einheitlicher Satz)
+        assertNotNull(result);
+        assertEquals("169,98€", result.getRecalculatedNet());
+        assertEquals("197,72€", result.getRecalculatedGross());
+        assertTrue(result.matches());
+        assertTrue(result.hasHighConfidence());
+    }
+
+    @Test
+    @DisplayName("POSITIONEN: Netto- und Bruttospalte - der Nettowert zählt")
+    void testRecalculate_NetAndGrossColumns() {
+        // Arrange
+        String text = """
+            Wartung März 100,00 19% 119,00
+            Hosting 1.000,00 19% 1.190,00
+            Bei Zahlung innerhalb 10 Tagen 3% Skonto
+            """;
+
+        // Act
+        ValidationResult result = calculator.recalculate(text, "150,00€", null);
+
+        // Assert
+        assertNotNull(result);
+        assertEquals("1.100,00€", result.getRecalculatedNet());
+        assertEquals("1.309,00€", result.getRecalculatedGross());
+        assertFalse(result.matches(), "Extrahierter Nettobetrag weicht ab");
+    }
+
+    @Test
+    @DisplayName("POSITIONEN: Ohne Positionstabelle kein Ergebnis (Fallback aufs LLM)")
+    void testRecalculate_NoLineItems_ReturnsNull() {
+        // Arrange
+        String text = """
+            Muster GmbH
+            Rechnungsnummer: RE-1
+            Gesamtbetrag 119,00 €
+            """;
+
+        // Act & Assert
+        assertNull(calculator.recalculate(text, "100,00€", "119,00€"));
+    }
+
+    @Test
+    @DisplayName("POSITIONEN: Eine einzelne Zeile mit Prozentangabe ist keine Tabelle (Fallback aufs LLM)")
+    void testRecalculate_SingleStrayPercentLine_ReturnsNull() {
+        // Arrange
+        String text = """
+            Muster GmbH
+            Wir gewähren 5% auf alle Artikel ab 100,00 €
+            Gesamtbetrag 119,00 €
+            """;
+
+        // Act & Assert
+        assertNull(calculator.recalculate(text, "100,00€", "119,00€"));
+    }
+
+    @Test
+    @DisplayName("POSITIONEN: Positionen mit 'Steuer' im Namen zählen mit, Steuerzeilen nicht")
+    void testRecalculate_SummaryWordsOnlyAsWholeWords() {
+        // Arrange
+        String text = """
+            Buchhaltung Januar 19% 100,00
+            Steuerberatung Januar 19% 500,00
+            Nettobetrag 600,00 €
+            zzgl. Umsatzsteuer 19% 114,00 €
+            """;
+
+        // Act
+        ValidationResult result = calculator.recalculate(text, "600,00€", "714,00€");
+
+        // Assert
+        assertNotNull(result);
+        assertEquals("600,00€", result.getRecalculatedNet());
+        assertEquals("714,00€", result.getRecalculatedGross());
+        assertTrue(result.matches());
+    }
+}
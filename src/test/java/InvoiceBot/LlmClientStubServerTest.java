@@ -0,0 +1,414 @@
+package InvoiceBot;
+
+import InvoiceBot.llm.EndpointBalancer;
+import InvoiceBot.llm.LlmClient;
+import InvoiceBot.llm.LlmExtractor;
+import InvoiceBot.llm.LlmResponseCache;
+import InvoiceBot.llm.ResponseSchema;
+import InvoiceBot.model.InvoiceData;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testet den LlmClient gegen lokale Stub-Server (kein LM Studio nötig).
+ */
+class LlmClientStubServerTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final List<String> requestBodies = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    @DisplayName("ASYNC: sendPromptAsync liefert den bereinigten Inhalt")
+    void testSendPromptAsync_ReturnsContent() throws Exception {
+        // Arrange
+        String baseUrl = startStubServer("```json\\n{\\\"invoice_number\\\":\\\"RE-1\\\"}\\n```", 0);
+        LlmClient client = new LlmClient(baseUrl, "stub-model");
+
+        // Act
+        String result = client.sendPromptAsync("Test").get(5, TimeUnit.SECONDS);
+
+        // Assert: Markdown-Fences wurden entfernt
+        assertEquals("{\"invoice_number\":\"RE-1\"}", result);
+    }
+
+    @Test
+    @DisplayName("ASYNC: Timeout beendet das Future mit TimeoutException")
+    void testSendPromptAsync_Timeout() {
+        // Arrange: Server antwortet erst nach 2 Sekunden
+        String baseUrl = startStubServer("{}", 2000);
+        LlmClient client = new LlmClient(baseUrl, "stub-model");
+
+        // Act
+        CompletableFuture<String> future = client.sendPromptAsync("Test", 200, TimeUnit.MILLISECONDS);
+
+        // Assert
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, exception.getCause());
+    }
+
+    @Test
+    @DisplayName("ASYNC: cancel() bricht das Future ab")
+    void testSendPromptAsync_Cancel() {
+        String baseUrl = startStubServer("{}", 2000);
+        LlmClient client = new LlmClient(baseUrl, "stub-model");
+
+        CompletableFuture<String> future = client.sendPromptAsync("Test");
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    @DisplayName("STREAMING: Bricht nach der schließenden Klammer ab und ignoriert den Rest")
+    void testSendPromptStreaming_StopsAtClosingBrace() throws Exception {
+        // Arrange: Objekt kommt in Fragmenten, danach folgt unnötiger Text
+        String baseUrl = startStreamingStubServer(
+            "{\\\"invoice_number\\\": \\\"RE-", "7\\\", \\\"net_amount\\\": \\\"10 €\\\"}",
+            "\\n\\nHinweis: Diese Antwort wurde", " automatisch erzeugt.");
+        LlmClient client = new LlmClient(baseUrl, "stub-model");
+
+        // Act
+        String result = client.sendPromptStreaming("Test", List.of());
+
+        // Assert
+        assertEquals("{\"invoice_number\": \"RE-7\", \"net_amount\": \"10 €\"}", result);
+    }
+
+    @Test
+    @DisplayName("STREAMING: Bricht ab, sobald alle geforderten Felder vorhanden sind")
+    void testSendPromptStreaming_StopsWhenFieldsPresent() throws Exception {
+        String baseUrl = startStreamingStubServer(
+            "{\\\"invoice_number\\\": \\\"RE-7\\\",", " \\\"net_amount\\\": \\\"10\\\",", " \\\"comment\\\": \\\"lang...");
+        LlmClient client = new LlmClient(baseUrl, "stub-model");
+
+        String result = client.sendPromptStreaming("Test", List.of("invoice_number", "net_amount"));
+
+        assertEquals("{\"invoice_number\": \"RE-7\", \"net_amount\": \"10\"}", result);
+    }
+
+    @Test
+    @DisplayName("STREAMING: Abgeschnittenes JSON schlägt fehl und landet nicht im Cache")
+    void testSendPromptStreaming_TruncatedObject_NotCached(@TempDir Path tempDir) {
+        // Arrange: [DONE] kommt mitten im Objekt (z.B. max_tokens erreicht)
+        String baseUrl = startStreamingStubServer("{\\\"invoice_number\\\": \\\"RE-", "7\\\", \\\"net_");
+        LlmClient client = new LlmClient(baseUrl, "stub-model");
+        client.setResponseCache(new LlmResponseCache(tempDir.toString(), 1024 * 1024));
+
+        // Act & Assert: jeder Aufruf geht wieder an den Server
+        assertThrows(IllegalStateException.class, () -> client.sendPromptStreaming("Test", List.of()));
+        assertThrows(IllegalStateException.class, () -> client.sendPromptStreaming("Test", List.of()));
+        assertEquals(2, requestBodies.size());
+    }
+
+    @Test
+    @DisplayName("PREFIX: Prefill-Statistik aus dem letzten Chunk, auch wenn das JSON vorher fertig ist")
+    void testSendPromptStreaming_RecordsUsageAfterCompleteObject() throws Exception {
+        // Arrange: JSON ist nach dem zweiten Chunk vollständig, "usage" folgt erst im letzten
+        String baseUrl = startSseStubServer(List.of(
+            "{\"choices\":[{\"delta\":{\"content\":\"{\\\"invoice_number\\\": \"}}],\"usage\":null}",
+            "{\"choices\":[{\"delta\":{\"content\":\"\\\"RE-7\\\"}\"}}],\"usage\":null}",
+            "{\"choices\":[{\"delta\":{},\"finish_reason\":\"stop\"}],\"usage\":null}",
+            "{\"choices\":[],\"usage\":{\"prompt_tokens\":1000,\"prompt_tokens_details\":{\"cached_tokens\":800}}}"));
+        LlmClient client = new LlmClient(baseUrl, "stub-model");
+
+        // Act
+        String result = client.sendPromptStreaming("Test", List.of());
+
+        // Assert
+        assertEquals("{\"invoice_number\": \"RE-7\"}", result);
+        assertTrue(new JSONObject(requestBodies.get(0)).getJSONObject("stream_options").getBoolean("include_usage"));
+        assertEquals(1, client.getPrefillStats().getRequests());
+        assertEquals(800, client.getPrefillStats().getCachedTokens());
+    }
+
+    @Test
+    @DisplayName("CACHE: Nur gültige JSON-Objekte werden gecacht, kaputte Antworten erneut angefragt")
+    void testSendPrompt_CachesOnlyJsonObjects(@TempDir Path tempDir) throws Exception {
+        // Arrange
+        String broken = startStubServer("Entschuldigung, ich kann das nicht", 0);
+        String valid = startStubServer("{\\\"invoice_number\\\":\\\"RE-1\\\"}", 0);
+        LlmResponseCache cache = new LlmResponseCache(tempDir.toString(), 1024 * 1024);
+        LlmClient brokenClient = new LlmClient(broken, "stub-model");
+        brokenClient.setResponseCache(cache);
+        LlmClient validClient = new LlmClient(valid, "stub-model");
+        validClient.setResponseCache(cache);
+
+        // Act
+        brokenClient.sendPrompt("Kaputt");
+        brokenClient.sendPrompt("Kaputt");
+        validClient.sendPrompt("Gültig");
+        String cached = validClient.sendPrompt("Gültig");
+
+        // Assert: zwei Requests für die kaputte Antwort, einer für die gültige
+        assertEquals(3, requestBodies.size());
+        assertEquals(1, cache.size());
+        assertEquals("{\"invoice_number\":\"RE-1\"}", cached);
+    }
+
+    @Test
+    @DisplayName("SCHEMA: response_format wird nur bei aktivierter strukturierter Ausgabe gesendet")
+    void testSendPrompt_SendsResponseFormat() throws Exception {
+        // Arrange
+        String baseUrl = startStubServer("{}", 0);
+        LlmClient client = new LlmClient(baseUrl, "stub-model");
+
+        // Act: einmal ohne, einmal mit strukturierter Ausgabe
+        client.sendPrompt("Test", ResponseSchema.EXTRACTION);
+        client.setStructuredOutputEnabled(true);
+        client.sendPrompt("Test", ResponseSchema.EXTRACTION);
+
+        // Assert
+        assertEquals(2, requestBodies.size());
+        assertFalse(new JSONObject(requestBodies.get(0)).has("response_format"));
+        JSONObject format = new JSONObject(requestBodies.get(1)).getJSONObject("response_format");
+        assertEquals("json_schema", format.getString("type"));
+        assertEquals("invoice_extraction", format.getJSONObject("json_schema").getString("name"));
+    }
+
+    @Test
+    @DisplayName("ENDPUNKTE: Gleichzeitige Requests werden auf alle Server verteilt")
+    void testMultipleEndpoints_DistributesLoad() throws Exception {
+        // Arrange: zwei gleich schnelle Server
+        String first = startStubServer("A", 300);
+        String second = startStubServer("B", 300);
+        LlmClient client = new LlmClient(first + "," + second, "stub-model");
+
+        // Act
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(client.sendPromptAsync("Test " + i));
+        }
+        List<String> results = new ArrayList<>();
+        for (CompletableFuture<String> future : futures) {
+            results.add(future.get(5, TimeUnit.SECONDS));
+        }
+
+        // Assert: wenigste offene Requests -> je zwei pro Server
+        assertEquals(2, Collections.frequency(results, "A"));
+        assertEquals(2, Collections.frequency(results, "B"));
+    }
+
+    @Test
+    @DisplayName("ENDPUNKTE: Failover auf den nächsten Server, ausgefallener Server wird ungesund")
+    void testMultipleEndpoints_FailsOverWithoutLosingRequest() throws Exception {
+        // Arrange: erster Server ist nicht erreichbar
+        String dead = startStubServer("{}", 0);
+        servers.get(0).stop(0);
+        String alive = startStubServer("{\\\"invoice_number\\\":\\\"RE-9\\\"}", 0);
+        LlmClient client = new LlmClient(dead + ", " + alive, "stub-model");
+
+        // Act
+        String blocking = client.sendPrompt("Test");
+        String async = client.sendPromptAsync("Test 2").get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals("{\"invoice_number\":\"RE-9\"}", blocking);
+        assertEquals("{\"invoice_number\":\"RE-9\"}", async);
+        EndpointBalancer.Endpoint deadEndpoint = client.getEndpointBalancer().getEndpoints().get(0);
+        assertFalse(deadEndpoint.isHealthy());
+        assertEquals(1, deadEndpoint.getRequests(), "Ungesunder Server bekommt keine weiteren Requests");
+    }
+
+    @Test
+    @DisplayName("ENDPUNKTE: Health-Check über /v1/models markiert jeden Server einzeln")
+    void testIsServerReachable_ChecksAllEndpoints() {
+        // Arrange
+        String dead = startStubServer("{}", 0);
+        servers.get(0).stop(0);
+        String alive = startStubServer("{}", 0);
+        LlmClient client = new LlmClient(dead + "," + alive, "stub-model");
+
+        // Act
+        boolean reachable = client.isServerReachable();
+
+        // Assert
+        assertTrue(reachable);
+        List<EndpointBalancer.Endpoint> endpoints = client.getEndpointBalancer().getEndpoints();
+        assertFalse(endpoints.get(0).isHealthy());
+        assertTrue(endpoints.get(1).isHealthy());
+    }
+
+    @Test
+    @DisplayName("MODELLE: Stufe 1 nutzt das schnelle Modell, Eskalationen das große")
+    void testModelRouting_PerStage() throws Exception {
+        // Arrange
+        String baseUrl = startStubServer("{}", 0);
+        LlmClient client = new LlmClient(baseUrl, "stub-model");
+        client.setFastModel("small-q4");
+        client.setEscalationModel("large");
+        LlmExtractor extractor = new LlmExtractor(client);
+
+        // Act
+        extractor.extract("Rechnung RE-1");
+        extractor.extractAsync("Rechnung RE-2").get(5, TimeUnit.SECONDS);
+        extractor.extractWithRetry("Rechnung RE-3");
+        extractor.validateAndRecalculate("Rechnung RE-4", "100,00€", "119,00€");
+        extractor.performQualityCheck("Rechnung RE-5", new InvoiceData());
+
+        // Assert
+        List<String> models = requestBodies.stream()
+            .map(body -> new JSONObject(body).getString("model"))
+            .toList();
+        assertEquals(List.of("small-q4", "small-q4", "large", "large", "large"), models);
+    }
+
+    @Test
+    @DisplayName("MODELLE: Ohne Stufen-Konfiguration wird llm.model verwendet")
+    void testModelRouting_DefaultsToModelName() {
+        // Arrange
+        LlmClient client = new LlmClient("http://127.0.0.1:1", "stub-model");
+        client.setFastModel("");
+
+        // Act & Assert
+        assertEquals("stub-model", client.getFastModel());
+        assertEquals("stub-model", client.getEscalationModel());
+        assertEquals(1, client.getConfiguredModels().size());
+    }
+
+    @Test
+    @DisplayName("MODELLE: Verfügbarkeit über /v1/models, Warm-up mit einem Token")
+    void testModelAvailabilityAndWarmUp() {
+        // Arrange
+        String baseUrl = startStubServer("OK", 0);
+        LlmClient client = new LlmClient(baseUrl, "stub-model");
+
+        // Act & Assert
+        assertTrue(client.isModelAvailable("stub-model"));
+        assertFalse(client.isModelAvailable("missing-model"));
+        assertTrue(client.warmUp("stub-model"));
+        JSONObject warmUp = new JSONObject(requestBodies.get(0));
+        assertEquals("stub-model", warmUp.getString("model"));
+        assertEquals(1, warmUp.getInt("max_tokens"));
+    }
+
+    @Test
+    @DisplayName("PREFIX: Statische Anweisungen identisch, Rechnungstext zuletzt, cache_prompt gesetzt")
+    void testPromptLayout_StablePrefix() throws Exception {
+        // Arrange
+        String baseUrl = startStubServer("{}", 0);
+        LlmClient client = new LlmClient(baseUrl, "stub-model");
+        client.setPromptCacheEnabled(true);
+        LlmExtractor extractor = new LlmExtractor(client);
+        InvoiceData first = new InvoiceData();
+        first.setNetAmount("100,00€");
+        InvoiceData second = new InvoiceData();
+        second.setNetAmount("250,00€");
+
+        // Act
+        extractor.performQualityCheck("Muster GmbH Rechnung RE-1", first);
+        extractor.performQualityCheck("Beispiel AG Rechnung RE-2", second);
+
+        // Assert: gemeinsamer Prefix reicht über alle Anweisungen bis zu den variablen Werten
+        JSONObject firstBody = new JSONObject(requestBodies.get(0));
+        String firstPrompt = firstBody.getJSONArray("messages").getJSONObject(1).getString("content");
+        String secondPrompt = new JSONObject(requestBodies.get(1))
+            .getJSONArray("messages").getJSONObject(1).getString("content");
+        int shared = 0;
+        while (firstPrompt.charAt(shared) == secondPrompt.charAt(shared)) {
+            shared++;
+        }
+        assertTrue(firstPrompt.substring(0, shared).contains("CRITICAL RULES"));
+        assertTrue(firstPrompt.strip().endsWith("Muster GmbH Rechnung RE-1"));
+        assertTrue(firstBody.getBoolean("cache_prompt"));
+    }
+
+    /**
+     * Startet einen SSE-Stub, der die Fragmente als einzelne "data:"-Events sendet.
+     */
+    private String startStreamingStubServer(String... deltas) {
+        List<String> events = new ArrayList<>();
+        for (String delta : deltas) {
+            events.add("{\"choices\":[{\"delta\":{\"content\":\"" + delta + "\"}}]}");
+        }
+        return startSseStubServer(events);
+    }
+
+    /**
+     * Startet einen SSE-Stub, der die Chunks unverändert als "data:"-Events und danach [DONE] sendet.
+     */
+    private String startSseStubServer(List<String> events) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/v1/chat/completions", exchange -> {
+                requestBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                StringBuilder body = new StringBuilder();
+                for (String event : events) {
+                    body.append("data: ").append(event).append("\n\n");
+                }
+                body.append("data: [DONE]\n\n");
+                exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+                byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            });
+            server.start();
+            servers.add(server);
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Startet einen OpenAI-kompatiblen Stub auf einem freien Port.
+     */
+    private String startStubServer(String content, long delayMillis) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/v1/chat/completions", exchange -> {
+                requestBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                sleep(delayMillis);
+                String body = "{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"" + content + "\"}}]}";
+                respond(exchange, 200, body);
+            });
+            server.createContext("/v1/models", exchange -> respond(exchange, 200, "{\"data\":[{\"id\":\"stub-model\"}]}"));
+            server.start();
+            servers.add(server);
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
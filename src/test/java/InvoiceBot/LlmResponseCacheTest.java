@@ -0,0 +1,81 @@
+package InvoiceBot;
+
+import InvoiceBot.llm.LlmResponseCache;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlmResponseCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("CACHE: Gespeicherte Antwort wird wiedergefunden - auch nach Neustart")
+    void testPutAndGet_SurvivesRestart() {
+        // Arrange
+        LlmResponseCache cache = new LlmResponseCache(tempDir.toString(), 1024 * 1024);
+        String key = LlmResponseCache.key("llama", 0.1, "system", "Rechnung 123");
+
+        // Act
+        cache.put("llama", key, "{\"invoice_number\":\"123\"}");
+        LlmResponseCache reloaded = new LlmResponseCache(tempDir.toString(), 1024 * 1024);
+
+        // Assert
+        assertEquals(Optional.of("{\"invoice_number\":\"123\"}"), cache.get("llama", key));
+        assertEquals(Optional.of("{\"invoice_number\":\"123\"}"), reloaded.get("llama", key));
+    }
+
+    @Test
+    @DisplayName("CACHE: Schlüssel hängt von Modell, Temperatur und Prompts ab")
+    void testKey_DependsOnAllParts() {
+        String base = LlmResponseCache.key("llama", 0.1, "system", "prompt");
+
+        assertEquals(base, LlmResponseCache.key("llama", 0.1, "system", "prompt"));
+        assertNotEquals(base, LlmResponseCache.key("qwen", 0.1, "system", "prompt"));
+        assertNotEquals(base, LlmResponseCache.key("llama", 0.2, "system", "prompt"));
+        assertNotEquals(base, LlmResponseCache.key("llama", 0.1, "other", "prompt"));
+        assertNotEquals(base, LlmResponseCache.key("llama", 0.1, "system", "prompt!"));
+    }
+
+    @Test
+    @DisplayName("CACHE: Älteste Einträge werden bei Platzmangel verdrängt (LRU)")
+    void testEviction_LeastRecentlyUsed() {
+        // Arrange: Platz für genau zwei Einträge à 10 Bytes
+        LlmResponseCache cache = new LlmResponseCache(tempDir.toString(), 20);
+        cache.put("m", "a", "0123456789");
+        cache.put("m", "b", "0123456789");
+
+        // "a" benutzen -> "b" ist jetzt der älteste
+        assertTrue(cache.get("m", "a").isPresent());
+
+        // Act
+        cache.put("m", "c", "0123456789");
+
+        // Assert
+        assertTrue(cache.get("m", "a").isPresent());
+        assertFalse(cache.get("m", "b").isPresent());
+        assertTrue(cache.get("m", "c").isPresent());
+        assertEquals(20, cache.getTotalBytes());
+    }
+
+    @Test
+    @DisplayName("CACHE: Invalidierung entfernt nur Einträge des Modells")
+    void testInvalidateModel() {
+        LlmResponseCache cache = new LlmResponseCache(tempDir.toString(), 1024);
+        cache.put("llama-3.1", "a", "x");
+        cache.put("llama-3.1", "b", "y");
+        cache.put("qwen", "c", "z");
+
+        int removed = cache.invalidateModel("llama-3.1");
+
+        assertEquals(2, removed);
+        assertFalse(cache.get("llama-3.1", "a").isPresent());
+        assertTrue(cache.get("qwen", "c").isPresent());
+    }
+}
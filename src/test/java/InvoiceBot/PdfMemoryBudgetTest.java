@@ -0,0 +1,88 @@
+package InvoiceBot;
+
+import InvoiceBot.parser.PdfMemoryBudget;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfMemoryBudgetTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("SPEICHER: Kleine PDFs im Heap, große mit Temp-Datei und Obergrenze")
+    void testAcquire_LargeDocumentUsesTempFile() throws Exception {
+        // Arrange: Grenze 4 KB pro Dokument, Bedarf = 4 × Dateigröße
+        PdfMemoryBudget budget = new PdfMemoryBudget(1_000_000, 4096);
+        File small = createFile("small.pdf", 512);
+        File large = createFile("large.pdf", 10_000);
+
+        // Act
+        try (PdfMemoryBudget.Lease smallLease = budget.acquire(small);
+             PdfMemoryBudget.Lease largeLease = budget.acquire(large)) {
+
+            // Assert
+            assertEquals(2048, smallLease.getBytes());
+            assertEquals(4096, largeLease.getBytes(), "Großes Dokument reserviert nur die Obergrenze");
+            assertEquals(4096, largeLease.getMemoryUsageSetting().getMaxMainMemoryBytes());
+            assertEquals(6144, budget.getReservedBytes());
+        }
+        assertEquals(0, budget.getReservedBytes());
+        assertEquals(1, budget.getTempFileLoads());
+    }
+
+    @Test
+    @DisplayName("SPEICHER: Erschöpftes Budget blockiert, bis ein Dokument freigegeben ist")
+    void testAcquire_WaitsForBudget() throws Exception {
+        // Arrange: Budget reicht für genau ein Dokument
+        PdfMemoryBudget budget = new PdfMemoryBudget(3000, 1_000_000);
+        File first = createFile("first.pdf", 500);
+        File second = createFile("second.pdf", 500);
+        PdfMemoryBudget.Lease firstLease = budget.acquire(first);
+
+        // Act
+        CompletableFuture<PdfMemoryBudget.Lease> secondLease = CompletableFuture.supplyAsync(() -> {
+            try {
+                return budget.acquire(second);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(300);
+        boolean blocked = !secondLease.isDone();
+        firstLease.close();
+
+        // Assert
+        assertTrue(blocked, "Zweites PDF muss auf freies Budget warten");
+        secondLease.get(5, TimeUnit.SECONDS).close();
+        assertEquals(1, budget.getWaits());
+    }
+
+    @Test
+    @DisplayName("SPEICHER: Einzelnes Dokument über dem Budget wird trotzdem geladen")
+    void testAcquire_SingleOversizedDocument() throws Exception {
+        // Arrange
+        PdfMemoryBudget budget = new PdfMemoryBudget(100, 1_000_000);
+        File pdf = createFile("statement.pdf", 1000);
+
+        // Act & Assert
+        try (PdfMemoryBudget.Lease lease = budget.acquire(pdf)) {
+            assertEquals(4000, lease.getBytes());
+        }
+    }
+
+    private File createFile(String name, int size) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.write(file, new byte[size]);
+        return file.toFile();
+    }
+}
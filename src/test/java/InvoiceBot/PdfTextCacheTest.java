@@ -0,0 +1,80 @@
+package InvoiceBot;
+
+import InvoiceBot.parser.PdfTextCache;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfTextCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("TEXT-CACHE: Gespeicherter Text wird wiedergefunden - auch nach Neustart")
+    void testPutAndGet_SurvivesRestart() {
+        // Arrange
+        Path cacheDir = tempDir.resolve("cache");
+        PdfTextCache cache = new PdfTextCache(cacheDir.toString(), 1024 * 1024);
+        String text = "Rechnungsnummer: RE-1\nGesamtbetrag 119,00 €\f";
+
+        // Act
+        cache.put("abc", text);
+        PdfTextCache reloaded = new PdfTextCache(cacheDir.toString(), 1024 * 1024);
+
+        // Assert
+        assertEquals(Optional.of(text), cache.get("abc"));
+        assertEquals(Optional.of(text), reloaded.get("abc"));
+        assertFalse(cache.get("unbekannt").isPresent());
+    }
+
+    @Test
+    @DisplayName("TEXT-CACHE: Schlüssel ist der SHA-256 des Dateiinhalts, nicht der Dateiname")
+    void testHash_DependsOnContentOnly() throws Exception {
+        // Arrange
+        byte[] content = "%PDF-1.7 Rechnung".getBytes();
+        Path original = Files.write(tempDir.resolve("rechnung.pdf"), content);
+        Path duplicate = Files.write(tempDir.resolve("kopie (1).pdf"), content);
+        Path other = Files.write(tempDir.resolve("andere.pdf"), "%PDF-1.7 Gutschrift".getBytes());
+
+        // Act
+        String hash = PdfTextCache.hash(original.toFile());
+
+        // Assert
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)), hash);
+        assertEquals(hash, PdfTextCache.hash(duplicate.toFile()));
+        assertNotEquals(hash, PdfTextCache.hash(other.toFile()));
+    }
+
+    @Test
+    @DisplayName("TEXT-CACHE: Texte werden komprimiert, älteste Einträge bei Platzmangel verdrängt")
+    void testCompressionAndEviction() {
+        // Arrange: stark wiederholender Text komprimiert auf einen Bruchteil
+        String text = "Verbindung 0171 1234567 00:01:23 0,09 €\n".repeat(500);
+        PdfTextCache cache = new PdfTextCache(tempDir.toString(), 1024 * 1024);
+        cache.put("a", text);
+        long entryBytes = cache.getTotalBytes();
+        assertTrue(entryBytes < text.length() / 10, "gzip sollte den Text deutlich verkleinern");
+
+        PdfTextCache small = new PdfTextCache(tempDir.resolve("klein").toString(), entryBytes * 2);
+        small.put("a", text);
+        small.put("b", text);
+        assertTrue(small.get("a").isPresent()); // "b" ist jetzt der älteste
+
+        // Act
+        small.put("c", text);
+
+        // Assert
+        assertTrue(small.get("a").isPresent());
+        assertFalse(small.get("b").isPresent());
+        assertTrue(small.get("c").isPresent());
+    }
+}
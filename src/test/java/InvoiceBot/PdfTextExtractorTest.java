@@ -0,0 +1,143 @@
+package InvoiceBot;
+
+import InvoiceBot.parser.PdfMemoryBudget;
+import InvoiceBot.parser.PdfTextExtractor;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfTextExtractorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("SEITEN: Reihenfolge erste, letzte, dann der Rest")
+    void testPageOrder_FirstLastThenRest() {
+        assertEquals(List.of(1, 5, 2, 3, 4), PdfTextExtractor.pageOrder(5));
+        assertEquals(List.of(1, 2), PdfTextExtractor.pageOrder(2));
+        assertEquals(List.of(1), PdfTextExtractor.pageOrder(1));
+        assertTrue(PdfTextExtractor.pageOrder(0).isEmpty());
+    }
+
+    @Test
+    @DisplayName("SEITEN: Extraktion stoppt, sobald die Summen auf der letzten Seite gefunden sind")
+    void testExtractLazily_StopsWhenComplete() throws Exception {
+        try (PDDocument doc = createDocument(
+                "Rechnungsnummer: RE-1", "Verbindung 1", "Verbindung 2", "Verbindung 3", "Gesamtbetrag 119,00 EUR")) {
+            List<String> checked = new ArrayList<>();
+
+            // Act
+            String text = PdfTextExtractor.extractLazily(doc, partial -> {
+                checked.add(partial);
+                return partial.contains("Gesamtbetrag");
+            });
+
+            // Assert: nur Seite 1 und 5 gelesen, in Dokument-Reihenfolge
+            assertEquals(2, checked.size());
+            assertTrue(text.indexOf("RE-1") < text.indexOf("Gesamtbetrag"));
+            assertFalse(text.contains("Verbindung"));
+            assertEquals(2, text.chars().filter(c -> c == '\f').count());
+        }
+    }
+
+    @Test
+    @DisplayName("SEITEN: Ohne Abbruch entspricht das Ergebnis der vollständigen Extraktion")
+    void testExtractLazily_FallsBackToFullText() throws Exception {
+        try (PDDocument doc = createDocument("Seite A", "Seite B", "Seite C")) {
+            // Act
+            String lazy = PdfTextExtractor.extractLazily(doc, partial -> false);
+
+            // Assert
+            assertEquals(PdfTextExtractor.extract(doc), lazy);
+        }
+    }
+
+    @Test
+    @DisplayName("PARALLEL: Seitenbereiche werden in der richtigen Reihenfolge zusammengesetzt")
+    void testExtractParallel_KeepsPageOrder() throws Exception {
+        // Arrange: 25 Seiten -> mehrere Teilbereiche mit eigenem Dokument
+        String[] pageTexts = new String[25];
+        for (int i = 0; i < pageTexts.length; i++) {
+            pageTexts[i] = "Seite " + (i + 1);
+        }
+        File pdf = tempDir.resolve("lang.pdf").toFile();
+        String expected;
+        try (PDDocument doc = createDocument(pageTexts)) {
+            doc.save(pdf);
+            expected = PdfTextExtractor.extract(doc);
+        }
+
+        // Act
+        String parallel = PdfTextExtractor.extractParallel(pdf, pageTexts.length, null);
+
+        // Assert
+        assertEquals(expected, parallel);
+    }
+
+    @Test
+    @DisplayName("SEITEN: Mit Seitenlimit null, wenn erste und letzte Seite nicht reichen")
+    void testExtractLazily_MaxPagesReturnsNull() throws Exception {
+        try (PDDocument doc = createDocument("Seite A", "Seite B", "Seite C", "Seite D")) {
+            assertNull(PdfTextExtractor.extractLazily(doc, partial -> false, 2));
+        }
+    }
+
+    @Test
+    @DisplayName("PARALLEL: Nur die Lücke nach dem Seitenweise-Durchgang wird gelesen, mit Budget je Teilbereich")
+    void testExtractParallel_RemainingRangeWithBudget() throws Exception {
+        // Arrange: 25 Seiten, Seitenweise-Durchgang liest erste und letzte Seite
+        String[] texts = new String[25];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = "Seite " + (i + 1);
+        }
+        File pdf = tempDir.resolve("lang.pdf").toFile();
+        String expected;
+        String[] pageTexts = new String[texts.length];
+        try (PDDocument doc = createDocument(texts)) {
+            doc.save(pdf);
+            expected = PdfTextExtractor.extract(doc);
+            assertNull(PdfTextExtractor.extractLazily(doc, partial -> false, 2, false, pageTexts));
+        }
+        PdfMemoryBudget budget = new PdfMemoryBudget(1024L * 1024 * 1024, 64L * 1024 * 1024);
+
+        // Act
+        String middle = PdfTextExtractor.extractParallel(pdf, 2, texts.length - 1, budget, false);
+
+        // Assert: erste/letzte Seite aus dem ersten Durchgang + Mitte = vollständiger Text, Budget wieder frei
+        assertNotNull(pageTexts[0]);
+        assertNotNull(pageTexts[texts.length - 1]);
+        assertNull(pageTexts[1]);
+        assertEquals(expected, pageTexts[0] + middle + pageTexts[texts.length - 1]);
+        assertFalse(middle.contains("Seite 1\n"));
+        assertEquals(0, budget.getReservedBytes());
+        assertTrue(budget.getPeakReservedBytes() > 0);
+    }
+
+    private static PDDocument createDocument(String... pageTexts) throws Exception {
+        PDDocument doc = new PDDocument();
+        for (String pageText : pageTexts) {
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(doc, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 12);
+                content.newLineAtOffset(50, 700);
+                content.showText(pageText);
+                content.endText();
+            }
+        }
+        return doc;
+    }
+}
@@ -0,0 +1,54 @@
+package InvoiceBot;
+
+import InvoiceBot.llm.PrefillStats;
+import org.json.JSONObject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefillStatsTest {
+
+    @Test
+    @DisplayName("PREFILL: llama.cpp-Timings - gesparte Zeit aus Prefill-Zeit pro Token")
+    void testParse_LlamaCppTimings() {
+        // Arrange: 800 Tokens aus dem Cache, 200 neu berechnet in 100ms
+        JSONObject response = new JSONObject()
+            .put("timings", new JSONObject().put("prompt_n", 200).put("cache_n", 800).put("prompt_ms", 100.0));
+
+        // Act
+        PrefillStats.Sample sample = PrefillStats.parse(response);
+
+        // Assert
+        assertNotNull(sample);
+        assertEquals(1000, sample.getPromptTokens());
+        assertEquals(800, sample.getCachedTokens());
+        assertEquals(400.0, sample.getSavedMs(), 0.001);
+    }
+
+    @Test
+    @DisplayName("PREFILL: OpenAI-Usage - nur Token-Anteil, keine Zeit")
+    void testParse_OpenAiUsage() {
+        // Arrange
+        JSONObject response = new JSONObject()
+            .put("usage", new JSONObject()
+                .put("prompt_tokens", 1000)
+                .put("prompt_tokens_details", new JSONObject().put("cached_tokens", 512)));
+
+        // Act
+        PrefillStats.Sample sample = PrefillStats.parse(response);
+        PrefillStats stats = new PrefillStats();
+        stats.record(sample);
+
+        // Assert
+        assertEquals(512, sample.getCachedTokens());
+        assertEquals(0.0, sample.getSavedMs());
+        assertEquals(0.512, stats.getCacheRatio(), 0.0001);
+    }
+
+    @Test
+    @DisplayName("PREFILL: Ohne Angaben des Servers kein Messwert")
+    void testParse_NoData_ReturnsNull() {
+        assertNull(PrefillStats.parse(new JSONObject().put("choices", new org.json.JSONArray())));
+    }
+}
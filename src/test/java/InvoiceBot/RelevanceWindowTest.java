@@ -0,0 +1,71 @@
+package InvoiceBot;
+
+import InvoiceBot.llm.RelevanceWindow;
+import InvoiceBot.llm.TokenEstimator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelevanceWindowTest {
+
+    private final TokenEstimator estimator = new TokenEstimator(3.5);
+    private final RelevanceWindow window = new RelevanceWindow(estimator, 200);
+
+    @Test
+    @DisplayName("FENSTER: Kurzer Text bleibt unverändert")
+    void testShortTextUnchanged() {
+        String text = "Rechnung Nr. 1\nBetrag: 10,00 €";
+        assertEquals(text, window.apply(text));
+    }
+
+    @Test
+    @DisplayName("FENSTER: Summen am Ende bleiben erhalten, Fülltext und Boilerplate fliegen raus")
+    void testLongText_KeepsTotalsOnLastPage() {
+        // Arrange: Kopf, viel Fülltext, Summen ganz am Ende (früher nach 2000 Zeichen abgeschnitten)
+        StringBuilder text = new StringBuilder("Muster GmbH\nRechnungsnummer: RE-77\nRechnungsdatum: 01.02.2025\n");
+        for (int i = 0; i < 80; i++) {
+            text.append("Allgemeiner Hinweistext ohne Bezug zur Rechnung, Zeile ").append(i).append('\n');
+        }
+        text.append("Nettobetrag 1.000,00 €\nGesamtbetrag\n1.190,00 €\nIBAN DE00 1234 5678 Amtsgericht Berlin\n");
+
+        // Act
+        String result = window.apply(text.toString());
+
+        // Assert
+        assertTrue(result.contains("Rechnungsnummer: RE-77"));
+        assertTrue(result.contains("Nettobetrag 1.000,00 €"));
+        assertTrue(result.contains("Gesamtbetrag\n1.190,00 €"), "Beschriftung und Wert der Folgezeile gehören zusammen");
+        assertFalse(result.contains("Hinweistext"));
+        assertFalse(result.contains("IBAN"));
+        assertTrue(estimator.estimate(result) <= 200);
+    }
+
+    @Test
+    @DisplayName("FENSTER: Das Token-Budget wird nie überschritten")
+    void testBudgetRespected() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append("Position ").append(i).append(" Betrag 12,50 € am 01.01.2025\n");
+        }
+
+        String result = window.apply(text.toString());
+
+        assertTrue(estimator.estimate(result.replace("[...]", "")) <= 200);
+    }
+
+    @Test
+    @DisplayName("FENSTER: Modelle mit eigenem Budget bekommen ein eigenes Fenster")
+    void testModelBudgets_PerModelWindow() {
+        // Arrange
+        RelevanceWindow configured = new RelevanceWindow(estimator, 200);
+        configured.setModelBudgets("llama3.1:8b=100, qwen2.5-32b-instruct=1500:3.0");
+
+        // Act & Assert: Doppelpunkt im Modellnamen bleibt Teil des Namens
+        assertEquals(100, configured.forModel("llama3.1:8b").getBudgetTokens());
+        assertEquals(3.5, configured.forModel("llama3.1:8b").getEstimator().getCharsPerToken());
+        assertEquals(1500, configured.forModel("qwen2.5-32b-instruct").getBudgetTokens());
+        assertEquals(3.0, configured.forModel("qwen2.5-32b-instruct").getEstimator().getCharsPerToken());
+        assertSame(configured, configured.forModel("unbekannt"));
+    }
+}
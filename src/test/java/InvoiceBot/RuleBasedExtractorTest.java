@@ -0,0 +1,79 @@
+package InvoiceBot;
+
+import InvoiceBot.parser.RuleBasedExtractor;
+import org.json.JSONObject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleBasedExtractorTest {
+
+    private final RuleBasedExtractor extractor = new RuleBasedExtractor();
+
+    @Test
+    @DisplayName("REGELN: Typische deutsche Rechnung wird vollständig erkannt")
+    void testExtract_GermanInvoice() {
+        // Arrange
+        String text = """
+            Muster GmbH
+            Rechnungsnummer: RE-2024-0815
+            Lieferdatum: 02.03.2024
+            Rechnungsdatum: 05.03.2024
+            Leistungszeitraum: 01.02.2024 bis 29.02.2024
+            Nettobetrag 1.000,00 €
+            MwSt-Betrag 19% 190,00 €
+            Gesamtbetrag 1.190,00 EUR
+            """;
+
+        // Act
+        JSONObject json = new JSONObject(extractor.extract(text));
+
+        // Assert
+        assertEquals("RE-2024-0815", json.getString("invoice_number"));
+        assertEquals("05.03.2024", json.getString("invoice_date"));
+        assertEquals("1.000,00 €", json.getString("net_amount"));
+        assertEquals("1.190,00 EUR", json.getString("gross_amount"));
+        assertEquals("01.02.2024 - 29.02.2024", json.getString("service_period"));
+        assertFalse(json.has("company_name"), "Ohne 'Von:' bleibt der Firmenname dem LLM überlassen");
+    }
+
+    @Test
+    @DisplayName("REGELN: 'Von:' und einfacher 'Betrag' werden erkannt")
+    void testExtract_SimpleLabels() {
+        String text = "Rechnung Nr. NEW-ERA-2025\nDatum: 01.01.2025\nVon: Future Corp\nBetrag: 500,00 €\n";
+
+        JSONObject json = new JSONObject(extractor.extract(text));
+
+        assertEquals("NEW-ERA-2025", json.getString("invoice_number"));
+        assertEquals("Future Corp", json.getString("company_name"));
+        assertEquals("500,00 €", json.getString("gross_amount"));
+        assertFalse(json.has("net_amount"));
+    }
+
+    @Test
+    @DisplayName("REGELN: Steuerbetrag wird nicht als Bruttobetrag erkannt")
+    void testExtract_TaxAmountIsNotGross() {
+        JSONObject json = new JSONObject(extractor.extract("MwSt-Betrag: 19,00 €\nSteuerbetrag 19,00 €"));
+
+        assertFalse(json.has("gross_amount"));
+    }
+
+    @Test
+    @DisplayName("REGELN: Steuerbetrag mit Leerzeichen wird nicht als Bruttobetrag erkannt")
+    void testExtract_SpacedTaxAmountIsNotGross() {
+        for (String line : new String[] {"MwSt Betrag 19,00 €", "USt. Betrag: 19,00 €", "Steuer Betrag 19,00 €",
+                                         "Umsatzsteuer Betrag 19,00 €"}) {
+            JSONObject json = new JSONObject(extractor.extract("Betrag 119,00 €\n" + line));
+
+            assertEquals("119,00 €", json.optString("gross_amount"), line);
+        }
+    }
+
+    @Test
+    @DisplayName("REGELN: Leerer Text liefert leeres JSON")
+    void testExtract_EmptyText() {
+        assertEquals("{}", extractor.extract(""));
+        assertEquals("{}", extractor.extract(null));
+    }
+}
@@ -0,0 +1,71 @@
+package InvoiceBot;
+
+import InvoiceBot.llm.LlmResponseParser;
+import InvoiceBot.llm.StreamingJsonCollector;
+import org.json.JSONObject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingJsonCollectorTest {
+
+    @Test
+    @DisplayName("STREAM: Alle sechs Felder ohne weiteren Key - Abschluss vor der schließenden Klammer")
+    void testAppend_AllFieldsWithoutTrailingKey_ClosesEarly() {
+        // Arrange: strenges Extraktions-Schema - nach dem letzten Feld folgt "}", kein Komma
+        StreamingJsonCollector collector = new StreamingJsonCollector(LlmResponseParser.INVOICE_FIELDS);
+        String[] fragments = {
+            "{\"invoice_number\": \"RE-1\", \"invoice_date\": \"01.01.2025\", ",
+            "\"company_name\": \"Muster GmbH\", \"net_amount\": \"100,00 €\", ",
+            "\"gross_amount\": \"119,00 €\", \"service_period\": \"01.12.2024",
+            " - 31.12.2024\""
+        };
+
+        // Act
+        boolean complete = false;
+        for (String fragment : fragments) {
+            complete = collector.append(fragment);
+        }
+
+        // Assert
+        assertTrue(complete);
+        assertTrue(collector.isClosedEarly());
+        assertEquals("01.12.2024 - 31.12.2024", new JSONObject(collector.getResult()).getString("service_period"));
+    }
+
+    @Test
+    @DisplayName("STREAM: Zahl auf oberster Ebene ist erst mit folgendem Leerraum abgeschlossen")
+    void testAppend_NumberValue_WaitsForDelimiter() {
+        StreamingJsonCollector collector = new StreamingJsonCollector(List.of("a", "b"));
+
+        assertFalse(collector.append("{\"a\": \"x\", \"b\": 12"));
+        assertTrue(collector.append("3 "));
+
+        assertEquals(123, new JSONObject(collector.getResult()).getInt("b"));
+    }
+
+    @Test
+    @DisplayName("STREAM: Fehlendes Feld - erst die schließende Klammer beendet das Objekt")
+    void testAppend_MissingField_WaitsForClosingBrace() {
+        StreamingJsonCollector collector = new StreamingJsonCollector(List.of("a", "b"));
+
+        assertFalse(collector.append("{\"a\": \"x\", \"c\": [1, 2]"));
+        assertTrue(collector.append("}"));
+
+        assertFalse(collector.isClosedEarly());
+        assertEquals("{\"a\": \"x\", \"c\": [1, 2]}", collector.getResult());
+    }
+
+    @Test
+    @DisplayName("STREAM: Abgebrochenes Objekt ist nicht vollständig")
+    void testAppend_Truncated_NotComplete() {
+        StreamingJsonCollector collector = new StreamingJsonCollector(LlmResponseParser.INVOICE_FIELDS);
+
+        collector.append("{\"invoice_number\": \"RE-1\", \"invoice_date\": \"01.0");
+
+        assertFalse(collector.isComplete());
+    }
+}
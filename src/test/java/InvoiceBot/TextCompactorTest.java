@@ -0,0 +1,52 @@
+package InvoiceBot;
+
+import InvoiceBot.llm.TokenEstimator;
+import InvoiceBot.parser.TextCompactor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextCompactorTest {
+
+    private final TextCompactor compactor = new TextCompactor(new TokenEstimator(3.5));
+
+    @Test
+    @DisplayName("KOMPAKT: Kopf-/Fußzeilen jeder Seite bleiben nur einmal erhalten")
+    void testRepeatedHeadersRemoved() {
+        // Arrange: zwei Seiten mit identischem Kopf und Seitenzahl im Fuß
+        String text = "Muster GmbH   Hauptstr. 1\nRechnung RE-1\nPos 1 Beratung 100,00 €\nSeite 1 von 2\f"
+                    + "Muster GmbH   Hauptstr. 1\nRechnung RE-1\nGesamtbetrag 119,00 €\nSeite 2 von 2\f";
+
+        // Act
+        String result = compactor.compact(text);
+
+        // Assert: Seitenumbruch bleibt, Kopfzeilen der zweiten Seite sind weg
+        assertEquals("Muster GmbH Hauptstr. 1\nRechnung RE-1\nPos 1 Beratung 100,00 €\fGesamtbetrag 119,00 €", result);
+    }
+
+    @Test
+    @DisplayName("KOMPAKT: Boilerplate wird entfernt, Betragszeilen bleiben")
+    void testBoilerplateRemoved() {
+        String text = "Rechnung\n\n\nIBAN: DE00 1234 5678\nAmtsgericht Berlin HRB 12345\nNetto 100,00 €\n"
+                    + "Es gelten unsere AGB.";
+
+        String result = compactor.compact(text);
+
+        assertEquals("Rechnung\nNetto 100,00 €", result);
+    }
+
+    @Test
+    @DisplayName("KOMPAKT: Lange Beschreibungen werden gekürzt, Zeilen mit Betrag nicht")
+    void testLongDescriptionsTruncated() {
+        String description = "Sehr lange Leistungsbeschreibung ".repeat(10);
+        String position = description + "49,99 €";
+
+        String result = compactor.compact(description + "\n" + position);
+
+        String[] lines = result.split("\n");
+        assertEquals(121, lines[0].length());
+        assertTrue(lines[0].endsWith("…"));
+        assertEquals(position.strip(), lines[1]);
+    }
+}
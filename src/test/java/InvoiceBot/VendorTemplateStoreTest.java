@@ -0,0 +1,131 @@
+package InvoiceBot;
+
+import InvoiceBot.model.InvoiceData;
+import InvoiceBot.parser.VendorTemplateStore;
+import org.json.JSONObject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VendorTemplateStoreTest {
+
+    private static final String JANUARY = """
+        Telekom Deutschland GmbH
+        Landgrabenweg 151
+        Rechnung Januar 2025
+        Rechnungsnummer 1234567890
+        Datum 15.01.2025
+        Betrag netto
+        42,01 €
+        Umsatzsteuer 19% 7,98 €
+        Rechnungsbetrag 49,99 €
+        """;
+
+    private static final String FEBRUARY = """
+        Telekom Deutschland GmbH
+        Landgrabenweg 151
+        Rechnung Februar 2025
+        Rechnungsnummer 2234567891
+        Datum 15.02.2025
+        Betrag netto
+        50,00 €
+        Umsatzsteuer 19% 9,50 €
+        Rechnungsbetrag 59,50 €
+        """;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("VORLAGE: Gelernte Beschriftungen werden beim nächsten Monat angewendet")
+    void testLearnAndApply_NextMonth() {
+        // Arrange
+        VendorTemplateStore store = new VendorTemplateStore(tempDir.resolve("templates.json").toString());
+        store.learn(JANUARY, januaryData());
+
+        // Act
+        Optional<String> json = store.apply(FEBRUARY);
+
+        // Assert
+        assertTrue(json.isPresent(), "Gleicher Lieferant sollte erkannt werden (Monatsname ignoriert)");
+        JSONObject result = new JSONObject(json.get());
+        assertEquals("Telekom Deutschland GmbH", result.getString("company_name"));
+        assertEquals("2234567891", result.getString("invoice_number"));
+        assertEquals("15.02.2025", result.getString("invoice_date"));
+        assertEquals("50,00 €", result.getString("net_amount"));     // Wert in der Zeile unter der Beschriftung
+        assertEquals("59,50 €", result.getString("gross_amount"));
+    }
+
+    @Test
+    @DisplayName("VORLAGE: Unbekannter Lieferant liefert kein Ergebnis")
+    void testApply_UnknownVendor() {
+        VendorTemplateStore store = new VendorTemplateStore(tempDir.resolve("templates.json").toString());
+        store.learn(JANUARY, januaryData());
+
+        assertTrue(store.apply("Stadtwerke Musterstadt\nRechnungsnummer 1\n").isEmpty());
+    }
+
+    @Test
+    @DisplayName("VORLAGE: Vorlagen überleben einen Neustart")
+    void testPersistence() {
+        String file = tempDir.resolve("templates.json").toString();
+        new VendorTemplateStore(file).learn(JANUARY, januaryData());
+
+        VendorTemplateStore reloaded = new VendorTemplateStore(file);
+
+        assertEquals(1, reloaded.size());
+        assertTrue(reloaded.apply(FEBRUARY).isPresent());
+    }
+
+    @Test
+    @DisplayName("VORLAGE: Nicht wiedergefundene Felder behalten ihre gelernte Beschriftung")
+    void testLearn_MergesWithPreviousLabels() {
+        // Arrange: Februar wurde ohne Nettobetrag akzeptiert
+        VendorTemplateStore store = new VendorTemplateStore(tempDir.resolve("templates.json").toString());
+        store.learn(JANUARY, januaryData());
+        InvoiceData february = new InvoiceData();
+        february.setInvoiceNumber("2234567891");
+        february.setInvoiceDate("15.02.2025");
+        february.setGrossAmount("59,50€");
+
+        // Act
+        store.learn(FEBRUARY, february);
+
+        // Assert
+        JSONObject result = new JSONObject(store.apply(FEBRUARY).orElseThrow());
+        assertEquals("50,00 €", result.getString("net_amount"));
+        assertEquals("Telekom Deutschland GmbH", result.getString("company_name"));
+    }
+
+    @Test
+    @DisplayName("VORLAGE: Unveränderte Vorlage schreibt die Datei nicht erneut")
+    void testLearn_UnchangedTemplateNotSaved() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("templates.json");
+        VendorTemplateStore store = new VendorTemplateStore(file.toString());
+        store.learn(JANUARY, januaryData());
+        assertTrue(Files.deleteIfExists(file));
+
+        // Act: gleiche Beschriftungen wie im Januar
+        store.learn(JANUARY, januaryData());
+
+        // Assert
+        assertFalse(Files.exists(file));
+    }
+
+    private static InvoiceData januaryData() {
+        InvoiceData data = new InvoiceData();
+        data.setCompanyName("Telekom Deutschland GmbH");
+        data.setInvoiceNumber("1234567890");
+        data.setInvoiceDate("15.01.2025");
+        data.setNetAmount("42,01€");
+        data.setGrossAmount("49,99€");
+        return data;
+    }
+}